@@ -0,0 +1,36 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import java.io.IOException;
+
+/**
+ * Turns cache values into the bytes stored in Redis and back.
+ */
+public interface CacheCodec {
+
+  /**
+   * Encode a value.
+   * @throws IllegalStateException if the value cannot be encoded
+   */
+  byte[] encode(Object value);
+
+  /**
+   * Decode bytes[offset, offset + length) produced by {@link #encode} with the same codec.
+   * @throws IOException if the bytes are corrupt or were written in another format
+   */
+  <T> T decode(byte[] bytes, int offset, int length, Class<T> type) throws IOException;
+
+  /**
+   * Decode bytes produced by {@link #encode} with the same codec.
+   * @throws IOException if the bytes are corrupt or were written in another format
+   */
+  default <T> T decode(byte[] bytes, Class<T> type) throws IOException {
+    return decode(bytes, 0, bytes.length, type);
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch estimating how often keys were seen, in fixed memory and without locks.
+ *
+ * <p>Every key increments one counter in each of four rows, and its estimate is the smallest of
+ * them, so estimates are never below the true count and only overestimate on hash collisions.
+ * Once {@code sampleSize} keys have been added all counters are halved, so estimates follow
+ * recent traffic. Increments that race with halving may be lost; estimates are approximate.
+ */
+public class FrequencySketch {
+
+  private static final long[] SEEDS = {
+      0x97cb3127L, 0xc3a5c85cL, 0x9e3779b9L, 0x85ebca6bL};
+
+  private final AtomicLongArray counters;
+  private final int widthMask;
+  private final long sampleSize;
+  private final AtomicLong additions = new AtomicLong();
+  private final AtomicBoolean halving = new AtomicBoolean();
+  private final AtomicInteger halvings = new AtomicInteger();
+
+  /**
+   * Creates an empty sketch.
+   * @param width counters per row, rounded up to a power of two
+   * @param sampleSize number of additions after which all counters are halved
+   */
+  public FrequencySketch(int width, long sampleSize) {
+    if (width <= 0 || sampleSize <= 0) {
+      throw new IllegalArgumentException("Invalid sketch size " + width + "/" + sampleSize);
+    }
+    int roundedWidth = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+    this.counters = new AtomicLongArray(SEEDS.length * roundedWidth);
+    this.widthMask = roundedWidth - 1;
+    this.sampleSize = sampleSize;
+  }
+
+  /**
+   * Count one occurrence of a key.
+   * @return estimated number of occurrences of the key, this one included
+   */
+  public long add(String key) {
+    int hash = key.hashCode();
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < SEEDS.length; row++) {
+      estimate = Math.min(estimate, counters.incrementAndGet(indexOf(hash, row)));
+    }
+    if (additions.incrementAndGet() >= sampleSize) {
+      halve();
+    }
+    return estimate;
+  }
+
+  /**
+   * Estimate how often a key was seen.
+   */
+  public long estimate(String key) {
+    int hash = key.hashCode();
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < SEEDS.length; row++) {
+      estimate = Math.min(estimate, counters.get(indexOf(hash, row)));
+    }
+    return estimate;
+  }
+
+  /**
+   * Get the number of keys added, halved along with the counters.
+   */
+  public long getAdditions() {
+    return additions.get();
+  }
+
+  /**
+   * Get the number of times the counters were halved so far.
+   */
+  public int getHalvings() {
+    return halvings.get();
+  }
+
+  private void halve() {
+    if (!halving.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      if (additions.get() < sampleSize) {
+        return;
+      }
+      for (int i = 0; i < counters.length(); i++) {
+        long count = counters.get(i);
+        counters.compareAndSet(i, count, count / 2);
+      }
+      additions.set(additions.get() / 2);
+      halvings.incrementAndGet();
+    } finally {
+      halving.set(false);
+    }
+  }
+
+  private int indexOf(int hash, int row) {
+    long mixed = (hash + SEEDS[row]) * 0x9e3779b97f4a7c15L;
+    mixed ^= mixed >>> 32;
+    return row * (widthMask + 1) + ((int) mixed & widthMask);
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Approximate most frequent keys of a stream, on top of a {@link FrequencySketch}.
+ *
+ * <p>Besides the sketch, it keeps up to {@code capacity} candidate keys. A key becomes a
+ * candidate while there is room, or when its estimate beats the smallest estimate of the
+ * candidates kept by the last trim. Once there are twice as many candidates as the capacity, they
+ * are trimmed back to the capacity with the highest estimates, by whichever thread gets there
+ * first; the others do not wait for it.
+ */
+public class HeavyHitters {
+
+  private final FrequencySketch sketch;
+  private final int capacity;
+  private final ConcurrentHashMap<String, Boolean> candidates = new ConcurrentHashMap<>();
+  private final AtomicBoolean trimming = new AtomicBoolean();
+  // Smallest estimate of the candidates kept by the last trim, and the halvings of the sketch
+  // at the time.
+  private volatile Admission admission = new Admission(0, 0);
+
+  /**
+   * Creates an empty tracker.
+   * @param capacity number of most frequent keys kept
+   * @param sketch sketch counting every key
+   */
+  public HeavyHitters(int capacity, FrequencySketch sketch) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity);
+    }
+    this.capacity = capacity;
+    this.sketch = sketch;
+  }
+
+  /**
+   * Count one occurrence of a key.
+   */
+  public void add(String key) {
+    long estimate = sketch.add(key);
+    if (candidates.containsKey(key)) {
+      return;
+    }
+    if (candidates.size() < capacity || estimate > admission.currentEstimate(sketch)) {
+      candidates.put(key, Boolean.TRUE);
+      if (candidates.size() >= 2 * capacity) {
+        trim();
+      }
+    }
+  }
+
+  /**
+   * Estimate how often a key was seen.
+   */
+  public long estimate(String key) {
+    return sketch.estimate(key);
+  }
+
+  /**
+   * Get the most frequent keys with their estimated number of occurrences, most frequent first.
+   */
+  public Map<String, Long> findTop(int limit) {
+    Map<String, Long> top = new LinkedHashMap<>();
+    estimatesOfCandidates().entrySet().stream()
+        .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+        .limit(limit)
+        .forEach(candidate -> top.put(candidate.getKey(), candidate.getValue()));
+    return top;
+  }
+
+  private void trim() {
+    if (!trimming.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      Map<String, Long> kept = findTop(capacity);
+      candidates.keySet().retainAll(kept.keySet());
+      admission = new Admission(
+          kept.values().stream().mapToLong(Long::longValue).min().orElse(0),
+          sketch.getHalvings());
+    } finally {
+      trimming.set(false);
+    }
+  }
+
+  private Map<String, Long> estimatesOfCandidates() {
+    Map<String, Long> estimates = new LinkedHashMap<>();
+    for (String key : candidates.keySet()) {
+      estimates.put(key, sketch.estimate(key));
+    }
+    return estimates;
+  }
+
+  private static class Admission {
+
+    private final long estimate;
+    private final int halvings;
+
+    Admission(long estimate, int halvings) {
+      this.estimate = estimate;
+      this.halvings = halvings;
+    }
+
+    // The estimate, halved as many times as the sketch was since.
+    long currentEstimate(FrequencySketch sketch) {
+      return estimate >> Math.min(sketch.getHalvings() - halvings, Long.SIZE - 1);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Jackson backed codec, writing either JSON text or its binary equivalent, Smile.
+ *
+ * <p>Smile keeps the JSON data model but stores numbers in binary and refers back to property
+ * names and short strings it has already written, so lists of restaurants shrink to roughly half
+ * their JSON size and decode faster. Readers and writers are built once per type and shared, as
+ * they are immutable and thread safe.
+ */
+public class JacksonCacheCodec implements CacheCodec {
+
+  private final ObjectMapper objectMapper;
+  private final ObjectWriter writer;
+  private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+  private JacksonCacheCodec(JsonFactory jsonFactory) {
+    this.objectMapper = new ObjectMapper(jsonFactory)
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    this.writer = objectMapper.writer();
+  }
+
+  /**
+   * Codec writing JSON text.
+   */
+  public static JacksonCacheCodec json() {
+    return new JacksonCacheCodec(new JsonFactory());
+  }
+
+  /**
+   * Codec writing Smile, the binary JSON format.
+   */
+  public static JacksonCacheCodec smile() {
+    return new JacksonCacheCodec(new SmileFactory());
+  }
+
+  @Override
+  public byte[] encode(Object value) {
+    try {
+      return writer.writeValueAsBytes(value);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Unable to encode " + value.getClass().getSimpleName(), e);
+    }
+  }
+
+  @Override
+  public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) throws IOException {
+    return readers.computeIfAbsent(type, objectMapper::readerFor)
+        .readValue(bytes, offset, length);
+  }
+
+}
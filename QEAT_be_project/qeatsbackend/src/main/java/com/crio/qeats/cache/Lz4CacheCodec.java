@@ -0,0 +1,91 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * Compresses the output of another codec with LZ4 once it reaches a size threshold.
+ *
+ * <p>Every value starts with a format byte. Values below the threshold, or that do not get
+ * smaller, are stored as is after it; compressed values are followed by their uncompressed length
+ * and the LZ4 block. Bytes with an unknown format byte, e.g. entries written by an older version,
+ * fail to decode.
+ */
+public class Lz4CacheCodec implements CacheCodec {
+
+  private static final byte RAW = 1;
+  private static final byte LZ4 = 2;
+  private static final int HEADER_BYTES = 1 + Integer.BYTES;
+
+  private final CacheCodec codec;
+  private final int thresholdInBytes;
+  private final LZ4Compressor compressor;
+  private final LZ4SafeDecompressor decompressor;
+
+  /**
+   * Wraps a codec.
+   * @param codec codec producing the bytes to compress
+   * @param thresholdInBytes smallest encoded value that gets compressed, or 0 to never compress
+   */
+  public Lz4CacheCodec(CacheCodec codec, int thresholdInBytes) {
+    LZ4Factory factory = LZ4Factory.fastestInstance();
+    this.codec = codec;
+    this.thresholdInBytes = thresholdInBytes > 0 ? thresholdInBytes : Integer.MAX_VALUE;
+    this.compressor = factory.fastCompressor();
+    this.decompressor = factory.safeDecompressor();
+  }
+
+  @Override
+  public byte[] encode(Object value) {
+    byte[] bytes = codec.encode(value);
+    if (bytes.length >= thresholdInBytes) {
+      byte[] compressed = new byte[HEADER_BYTES + compressor.maxCompressedLength(bytes.length)];
+      int length = compressor.compress(bytes, 0, bytes.length, compressed, HEADER_BYTES);
+      if (HEADER_BYTES + length < 1 + bytes.length) {
+        ByteBuffer.wrap(compressed).put(LZ4).putInt(bytes.length);
+        return Arrays.copyOf(compressed, HEADER_BYTES + length);
+      }
+    }
+    byte[] raw = new byte[1 + bytes.length];
+    raw[0] = RAW;
+    System.arraycopy(bytes, 0, raw, 1, bytes.length);
+    return raw;
+  }
+
+  @Override
+  public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) throws IOException {
+    if (length > 0 && bytes[offset] == RAW) {
+      return codec.decode(bytes, offset + 1, length - 1, type);
+    }
+    if (length < HEADER_BYTES || bytes[offset] != LZ4) {
+      throw new IOException("Unknown cache entry format");
+    }
+    int uncompressedLength = ByteBuffer.wrap(bytes, offset + 1, Integer.BYTES).getInt();
+    if (uncompressedLength < 0) {
+      throw new IOException("Corrupt cache entry");
+    }
+    byte[] uncompressed;
+    try {
+      uncompressed = decompressor.decompress(bytes, offset + HEADER_BYTES,
+          length - HEADER_BYTES, uncompressedLength);
+    } catch (LZ4Exception e) {
+      throw new IOException("Corrupt cache entry", e);
+    }
+    if (uncompressed.length != uncompressedLength) {
+      throw new IOException("Corrupt cache entry");
+    }
+    return codec.decode(uncompressed, type);
+  }
+
+}
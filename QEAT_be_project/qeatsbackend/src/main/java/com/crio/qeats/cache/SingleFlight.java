@@ -0,0 +1,68 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Runs at most one call per key at a time: callers asking for a key while a call for it is in
+ * flight wait for that call and get its result, or its exception, instead of making their own.
+ * Results are not kept once the call completed, so the next caller makes a new call.
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+  /**
+   * Result of a call for the key, made by whichever caller finds none in flight for it.
+   */
+  public V execute(K key, Supplier<V> call) {
+    return execute(key, call, null);
+  }
+
+  /**
+   * Result of a call for the key, made by whichever caller finds none in flight for it.
+   * @param shared run before waiting when a call for the key was already in flight, or null
+   */
+  public V execute(K key, Supplier<V> call, Runnable shared) {
+    CompletableFuture<V> result = new CompletableFuture<>();
+    CompletableFuture<V> callInFlight = calls.putIfAbsent(key, result);
+    if (callInFlight != null) {
+      if (shared != null) {
+        shared.run();
+      }
+      return await(callInFlight);
+    }
+
+    try {
+      V value = call.get();
+      result.complete(value);
+      return value;
+    } catch (RuntimeException e) {
+      result.completeExceptionally(e);
+      throw e;
+    } finally {
+      calls.remove(key, result);
+    }
+  }
+
+  private static <V> V await(CompletableFuture<V> call) {
+    try {
+      return call.join();
+    } catch (CompletionException e) {
+      // Waiters fail the same way the call did.
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.configs;
+
+import com.crio.qeats.cache.CacheCodec;
+import com.crio.qeats.cache.JacksonCacheCodec;
+import com.crio.qeats.cache.Lz4CacheCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CacheCodecConfiguration {
+
+  /**
+   * Codec of the values stored in Redis.
+   * @param format json or smile
+   * @param compressionThresholdInBytes values at least this large are LZ4 compressed; 0 disables
+   *     compression
+   */
+  @Bean
+  public CacheCodec cacheCodec(@Value("${qeats.cache.codec:smile}") String format,
+      @Value("${qeats.cache.compression-threshold-bytes:1024}") int compressionThresholdInBytes) {
+    CacheCodec codec;
+    switch (format) {
+      case "json":
+        codec = JacksonCacheCodec.json();
+        break;
+      case "smile":
+        codec = JacksonCacheCodec.smile();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown cache codec " + format);
+    }
+    return new Lz4CacheCodec(codec, compressionThresholdInBytes);
+  }
+
+}
@@ -1,14 +1,36 @@
 package com.crio.qeats.configs;
 
+import com.crio.qeats.utils.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.time.Duration;
+import java.util.function.Function;
 import javax.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
-
-
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Jedis pool of the cache, along with its health.
+ *
+ * <p>Availability is a flag kept up to date by a PING every
+ * {@code qeats.redis.health-check-interval-ms}, so requests do not probe Redis themselves.
+ * Commands run through {@link #execute} also feed a {@link CircuitBreaker}: after
+ * {@code qeats.redis.circuit-breaker.failure-threshold} connection failures or timeouts in a row
+ * the cache is reported unavailable, and commands are rejected without going to Redis, for
+ * {@code qeats.redis.circuit-breaker.open-duration-ms}; callers go straight to the database.
+ * Connections time out after {@code qeats.redis.socket-timeout-ms}, and borrowing one waits at
+ * most {@code qeats.redis.max-wait-ms}, so a hung Redis slows requests down by that much at most.
+ */
+@Log4j2
 @Component
 public class RedisConfiguration {
 
@@ -22,7 +44,29 @@ public class RedisConfiguration {
 
 
   private int redisPort;
-  private JedisPool jedisPool;
+  private volatile JedisPool jedisPool;
+
+  @Value("${qeats.redis.connect-timeout-ms:500}")
+  private int connectTimeoutInMillis;
+
+  @Value("${qeats.redis.socket-timeout-ms:200}")
+  private int socketTimeoutInMillis;
+
+  @Value("${qeats.redis.max-wait-ms:200}")
+  private long maxWaitInMillis;
+
+  @Value("${qeats.redis.circuit-breaker.failure-threshold:5}")
+  private int failureThreshold;
+
+  @Value("${qeats.redis.circuit-breaker.open-duration-ms:10000}")
+  private long openDurationInMillis;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private volatile boolean available;
+  private volatile CircuitBreaker circuitBreaker;
+  private Counter circuitOpenings;
 
 
   @Value("${spring.redis.port}")
@@ -37,30 +81,80 @@ public class RedisConfiguration {
    */
   @PostConstruct
   public void initCache() {
-    final JedisPoolConfig poolConfig = buildPoolConfig();
+    circuitBreaker = new CircuitBreaker(failureThreshold, openDurationInMillis);
+    circuitOpenings = meterRegistry.counter("qeats.redis.circuit.openings");
+    meterRegistry.gauge("qeats.redis.available", this,
+        redisConfiguration -> redisConfiguration.available ? 1 : 0);
+    meterRegistry.gauge("qeats.redis.circuit.open", this,
+        redisConfiguration -> redisConfiguration.circuitBreaker.getState()
+            == CircuitBreaker.State.CLOSED ? 0 : 1);
     try {
-      jedisPool = new JedisPool(poolConfig, redisHost, redisPort);
+      jedisPool = buildPool();
     } catch (Exception e) {
       e.printStackTrace();
     }
+    checkHealth();
   }
 
 
   /**
    * Checks is cache is intiailized and available.
-   * TIP: This would generally mean checking via {@link JedisPool}
+   * Uses the result of the last health check and the circuit breaker, without going to Redis
+   * or claiming the trial call of a half open circuit breaker.
    * @return true / false if cache is available or not.
    */
   public boolean isCacheAvailable() {
-    if (jedisPool == null) {
-      return false;
+    return jedisPool != null && available && circuitBreaker.allowsRequest();
+  }
+
+  /**
+   * PING Redis and remember whether it answered.
+   */
+  @Scheduled(fixedDelayString = "${qeats.redis.health-check-interval-ms:1000}")
+  public void checkHealth() {
+    JedisPool pool = jedisPool;
+    boolean healthy = false;
+    if (pool != null) {
+      try (Jedis jedis = pool.getResource()) {
+        healthy = "PONG".equals(jedis.ping());
+      } catch (JedisException e) {
+        if (available) {
+          log.warn("Redis health check failed", e);
+        }
+      }
     }
-    try (Jedis jedis = this.getJedisPool().getResource()) {
-      return true;
-    } catch (Exception e) {
-      return false;
+    if (healthy != available) {
+      log.info("Redis is now {}", healthy ? "available" : "unavailable");
     }
+    available = healthy;
+  }
 
+  /**
+   * Run commands on a pooled connection, unless the circuit breaker is open. While it is half
+   * open, only the trial call runs. Connection failures and timeouts count towards opening the
+   * circuit breaker, and any run that reached Redis closes it.
+   * @throws JedisConnectionException if the circuit breaker is open or Redis could not be reached
+   * @throws JedisException if a command failed
+   */
+  public <T> T execute(Function<Jedis, T> commands) {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      throw new JedisConnectionException("Redis circuit breaker is open");
+    }
+    try (Jedis jedis = getJedisPool().getResource()) {
+      T result = commands.apply(jedis);
+      circuitBreaker.recordSuccess();
+      return result;
+    } catch (JedisConnectionException e) {
+      if (circuitBreaker.recordFailure()) {
+        circuitOpenings.increment();
+        log.warn("Redis circuit breaker opened", e);
+      }
+      throw e;
+    } catch (RuntimeException e) {
+      // Redis answered, the commands failed on their own.
+      circuitBreaker.recordSuccess();
+      throw e;
+    }
   }
 
 
@@ -74,6 +168,7 @@ public class RedisConfiguration {
       jedisPool.destroy();
       jedisPool = null;
     }
+    available = false;
   }
 
 
@@ -83,8 +178,7 @@ public class RedisConfiguration {
     }
 
     try {
-      final JedisPoolConfig poolConfig = buildPoolConfig();
-      jedisPool = new JedisPool(poolConfig, redisHost, redisPort);
+      jedisPool = buildPool();
     } catch (Exception e) {
       // We don't want to do anything for if cache initialization fails.
       e.printStackTrace();
@@ -93,18 +187,33 @@ public class RedisConfiguration {
     return jedisPool;
   }
 
-  private static JedisPoolConfig buildPoolConfig() {
+  /**
+   * Open a connection outside the pool and without a socket timeout, for blocking commands such
+   * as SUBSCRIBE. The caller closes it.
+   */
+  public Jedis openBlockingConnection() {
+    return new Jedis(redisHost, redisPort, connectTimeoutInMillis, 0);
+  }
+
+  private JedisPool buildPool() {
+    return new JedisPool(buildPoolConfig(), redisHost, redisPort, connectTimeoutInMillis,
+        socketTimeoutInMillis, null, Protocol.DEFAULT_DATABASE, null, false, null, null, null);
+  }
+
+  private JedisPoolConfig buildPoolConfig() {
     final JedisPoolConfig poolConfig = new JedisPoolConfig();
     poolConfig.setMaxTotal(128);
     poolConfig.setMaxIdle(128);
     poolConfig.setMinIdle(16);
-    poolConfig.setTestOnBorrow(true);
-    poolConfig.setTestOnReturn(true);
+    // Connections are checked by the health check and while idle, not on every borrow.
+    poolConfig.setTestOnBorrow(false);
+    poolConfig.setTestOnReturn(false);
     poolConfig.setTestWhileIdle(true);
     poolConfig.setMinEvictableIdleTimeMillis(Duration.ofSeconds(60).toMillis());
     poolConfig.setTimeBetweenEvictionRunsMillis(Duration.ofSeconds(30).toMillis());
     poolConfig.setNumTestsPerEvictionRun(3);
     poolConfig.setBlockWhenExhausted(true);
+    poolConfig.setMaxWaitMillis(maxWaitInMillis);
     return poolConfig;
   }
 }
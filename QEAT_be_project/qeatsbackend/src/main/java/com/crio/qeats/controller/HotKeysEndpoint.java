@@ -0,0 +1,42 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.controller;
+
+import com.crio.qeats.repositoryservices.AccessFrequencyTracker;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint listing the most looked up geohash cells and search strings, with their
+ * estimated number of lookups, at /actuator/hotkeys?limit=20.
+ */
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeysEndpoint {
+
+  private static final int DEFAULT_LIMIT = 20;
+
+  @Autowired
+  private AccessFrequencyTracker accessFrequencyTracker;
+
+  /**
+   * Lists up to limit cells and searches, 20 by default.
+   */
+  @ReadOperation
+  public Map<String, Map<String, Long>> hotKeys(@Nullable Integer limit) {
+    int maxKeys = limit == null ? DEFAULT_LIMIT : limit;
+    Map<String, Map<String, Long>> hotKeys = new LinkedHashMap<>();
+    hotKeys.put("cells", accessFrequencyTracker.findTopCells(maxKeys));
+    hotKeys.put("searches", accessFrequencyTracker.findTopSearches(maxKeys));
+    return hotKeys;
+  }
+}
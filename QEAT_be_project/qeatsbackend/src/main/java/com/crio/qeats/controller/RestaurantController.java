@@ -9,30 +9,38 @@ package com.crio.qeats.controller;
 import com.crio.qeats.dto.Restaurant;
 import com.crio.qeats.exchanges.GetRestaurantsRequest;
 import com.crio.qeats.exchanges.GetRestaurantsResponse;
-import com.crio.qeats.repositories.RestaurantRepository;
-import com.crio.qeats.exchanges.GetRestaurantsRequest;
-import com.crio.qeats.exchanges.GetRestaurantsResponse;
+import com.crio.qeats.repositoryservices.AccessFrequencyTracker;
 import com.crio.qeats.services.RestaurantService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalTime;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
 import javax.validation.Valid;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 
-import java.util.List;
-
 // TODO: CRIO_TASK_MODULE_RESTAURANTSAPI
 // Implement Controller using Spring annotations.
 // Remember, annotations have various "targets". They can be class level, method level or others.
 import org.springframework.web.bind.annotation.DeleteMapping;
-import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Log4j2
 @RestController
@@ -47,27 +55,63 @@ public class RestaurantController {
   public static final String POST_ORDER_API = "/order";
   public static final String GET_ORDERS_API = "/orders";
 
+  // Streaming response format: one JSON restaurant per line.
+  public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+  // Carries the cursor of the next page on paginated streaming responses.
+  public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
   @Autowired
   private RestaurantService restaurantService;
 
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private AccessFrequencyTracker accessFrequencyTracker;
+
+  // Answer plain nearby lookups with pre-serialized responses when the restaurants are cached.
+  @Value("${qeats.nearby.response-cache.enabled:false}")
+  private boolean responseCacheEnabled;
+
+  // Serializes streamed restaurants the way the JSON responses are.
+  private ObjectWriter restaurantWriter;
+
+  @PostConstruct
+  public void initRestaurantWriter() {
+    restaurantWriter = objectMapper.writerFor(Restaurant.class)
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+  }
+
   @GetMapping(RESTAURANT_API_ENDPOINT +  RESTAURANTS_API)
-  public ResponseEntity<GetRestaurantsResponse> getRestaurants(
+  public ResponseEntity<?> getRestaurants(
       @Valid GetRestaurantsRequest getRestaurantsRequest) {
+    recordAccess(getRestaurantsRequest);
 
-    GetRestaurantsResponse getRestaurantsResponse = null;
-    if (getRestaurantsRequest.getSearchFor() != null){
-      getRestaurantsResponse = 
-              restaurantService.findRestaurantsBySearchQuery(getRestaurantsRequest, LocalTime.now());
+    if (responseCacheEnabled && getRestaurantsRequest.getSearchFor() == null
+        && !getRestaurantsRequest.isPaginated()) {
+      byte[] body = restaurantService.findAllRestaurantsCloseByAsJson(getRestaurantsRequest,
+          LocalTime.now());
+      if (body != null) {
+        log.info("getRestaurants served {} bytes for {}", body.length, getRestaurantsRequest);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+      }
     }
+
     log.info("getRestaurants called with {}", getRestaurantsRequest);
-    getRestaurantsResponse = 
-            restaurantService.findAllRestaurantsCloseBy(getRestaurantsRequest, LocalTime.now());
+    GetRestaurantsResponse getRestaurantsResponse;
+    if (getRestaurantsRequest.getSearchFor() != null) {
+      getRestaurantsResponse =
+          restaurantService.findRestaurantsBySearchQuery(getRestaurantsRequest, LocalTime.now());
+    } else {
+      getRestaurantsResponse =
+          restaurantService.findAllRestaurantsCloseBy(getRestaurantsRequest, LocalTime.now());
+    }
     log.info("getRestaurants returned {}", getRestaurantsResponse);
 
     if (getRestaurantsResponse != null && !getRestaurantsResponse.getRestaurants().isEmpty()){
       List<Restaurant> restaurants = getRestaurantsResponse.getRestaurants();
       for (int i = 0; i < restaurants.size(); i++) {
-        restaurants.get(i).setName(restaurants.get(i).getName().replace("é", "?"));
+        sanitizeName(restaurants.get(i));
       }
       getRestaurantsResponse.setRestaurants(restaurants);
     }
@@ -75,6 +119,75 @@ public class RestaurantController {
     return ResponseEntity.ok().body(getRestaurantsResponse);
   }
 
+  /**
+   * Streaming variant of {@link #getRestaurants} for clients that accept application/x-ndjson.
+   * Every restaurant is written as one line of JSON as soon as the lookup finds it, without
+   * building the whole response first. Searches and paginated requests get their results the
+   * same way once they are complete, paginated ones with the cursor of the next page in the
+   * X-Next-Cursor header.
+   */
+  @GetMapping(path = RESTAURANT_API_ENDPOINT + RESTAURANTS_API, produces = NDJSON_MEDIA_TYPE)
+  public ResponseEntity<StreamingResponseBody> streamRestaurants(
+      @Valid GetRestaurantsRequest getRestaurantsRequest) {
+    log.info("streamRestaurants called with {}", getRestaurantsRequest);
+    recordAccess(getRestaurantsRequest);
+    LocalTime currentTime = LocalTime.now();
+
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(NDJSON_MEDIA_TYPE));
+    if (getRestaurantsRequest.getSearchFor() != null || getRestaurantsRequest.isPaginated()) {
+      GetRestaurantsResponse getRestaurantsResponse = getRestaurantsRequest.getSearchFor() != null
+          ? restaurantService.findRestaurantsBySearchQuery(getRestaurantsRequest, currentTime)
+          : restaurantService.findAllRestaurantsCloseBy(getRestaurantsRequest, currentTime);
+      if (getRestaurantsResponse.getNextCursor() != null) {
+        response.header(NEXT_CURSOR_HEADER, getRestaurantsResponse.getNextCursor());
+      }
+      return response.body(outputStream -> writeRestaurants(outputStream,
+          getRestaurantsResponse.getRestaurants()::forEach));
+    }
+
+    return response.body(outputStream -> writeRestaurants(outputStream,
+        action -> restaurantService.forEachRestaurantCloseBy(getRestaurantsRequest, currentTime,
+            action)));
+  }
+
+  private void writeRestaurants(OutputStream outputStream,
+      Consumer<Consumer<Restaurant>> restaurants) throws IOException {
+    int[] written = {0};
+    try (JsonGenerator generator = restaurantWriter.getFactory().createGenerator(outputStream)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.setRootValueSeparator(null);
+      restaurants.accept(restaurant -> {
+        sanitizeName(restaurant);
+        try {
+          restaurantWriter.writeValue(generator, restaurant);
+          generator.writeRaw('\n');
+          // Get the first restaurant out right away, then leave flushing to the buffer.
+          if (written[0]++ == 0) {
+            generator.flush();
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    log.info("streamRestaurants wrote {} restaurants", written[0]);
+  }
+
+  private void recordAccess(GetRestaurantsRequest getRestaurantsRequest) {
+    accessFrequencyTracker.recordLookup(getRestaurantsRequest.getLatitude(),
+        getRestaurantsRequest.getLongitude());
+    if (getRestaurantsRequest.getSearchFor() != null) {
+      accessFrequencyTracker.recordSearch(getRestaurantsRequest.getSearchFor());
+    }
+  }
+
+  private static void sanitizeName(Restaurant restaurant) {
+    restaurant.setName(GetRestaurantsResponse.sanitizeName(restaurant.getName()));
+  }
+
   // TIP(MODULE_MENUAPI): Model Implementation for getting menu given a restaurantId.
   // Get the Menu for the given restaurantId
   // API URI: /qeats/v1/menu?restaurantId=11
@@ -8,6 +8,7 @@
 package com.crio.qeats.dto;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.ArrayList;
 import java.util.List;
 import javax.validation.constraints.NotNull;
@@ -49,5 +50,20 @@ public class Restaurant {
 
   @NotNull
   private List<String> attributes = new ArrayList<>();
-  
+
+  // Distance in kms from the location in the request; only set on paginated responses.
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Double distance;
+
+  /**
+   * Copy of another restaurant, including its own copy of the attributes.
+   */
+  public Restaurant(Restaurant restaurant) {
+    this(restaurant.id, restaurant.restaurantId, restaurant.name, restaurant.city,
+        restaurant.imageUrl, restaurant.latitude, restaurant.longitude, restaurant.opensAt,
+        restaurant.closesAt,
+        restaurant.attributes == null ? null : new ArrayList<>(restaurant.attributes),
+        restaurant.distance);
+  }
+
 }
@@ -6,6 +6,8 @@
 
 package com.crio.qeats.exchanges;
 
+import com.crio.qeats.utils.NearestRestaurants;
+import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
@@ -25,10 +27,25 @@ public class GetRestaurantsRequest {
   @Max(value = 180, message = "must be equal or less than 45")  
   private Double longitude;
   private String searchFor;
+  // Page size; when neither limit nor cursor is given, every restaurant is returned unsorted.
+  @Min(value = 1, message = "must be equal or greater than 1")
+  @Max(value = 100, message = "must be equal or less than 100")
+  private Integer limit;
+  // nextCursor of the previous page.
+  private String cursor;
 
   public GetRestaurantsRequest(double d, double e) {
     this.latitude = d;
     this.longitude = e;
   }
 
+  public boolean isPaginated() {
+    return limit != null || cursor != null;
+  }
+
+  @AssertTrue(message = "must be a cursor returned by a previous page")
+  private boolean isCursorValid() {
+    return cursor == null || NearestRestaurants.isValidCursor(cursor);
+  }
+
 }
@@ -7,6 +7,7 @@
 package com.crio.qeats.exchanges;
 
 import com.crio.qeats.dto.Restaurant;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import org.springframework.cache.annotation.Cacheable;
 
@@ -24,10 +25,25 @@ public class GetRestaurantsResponse {
 
   List<Restaurant> restaurants;
 
+  // Cursor of the next page of a paginated response, null on the last page.
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  String nextCursor;
+
+  public GetRestaurantsResponse(List<Restaurant> restaurants) {
+    this.restaurants = restaurants;
+  }
+
   public List<Restaurant> getRestaurants(){
     return this.restaurants;
   }
 
+  /**
+   * Restaurant name as sent in responses; clients cannot display "é" yet.
+   */
+  public static String sanitizeName(String name) {
+    return name.replace("é", "?");
+  }
+
 }
 // TODO: CRIO_TASK_MODULE_RESTAURANTSAPI
 //  Implement GetRestaurantsResponse.
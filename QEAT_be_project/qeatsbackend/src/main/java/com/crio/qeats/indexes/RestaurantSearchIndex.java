@@ -0,0 +1,331 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.indexes;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.utils.GeoUtils;
+import com.crio.qeats.utils.OpeningHours;
+import java.text.Normalizer;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Immutable inverted index of the restaurant catalog, from normalized tokens to restaurants, used
+ * to answer searches without querying the database.
+ *
+ * <p>Each {@link Field} has a dictionary of distinct values: restaurant names, cuisines, and the
+ * names and attributes of the items on the menus. Values are normalized by {@link #tokenize}.
+ * The tokens of a field are kept sorted, each with the sorted ids of the values containing it, and
+ * every value has the sorted rows of the restaurants it belongs to. A value matches a query when
+ * every token of the query is a prefix of one of its tokens, so the tokens a query token stands
+ * for are a contiguous range of the dictionary found by binary search, instead of a scan of every
+ * value. A value equal to the query is an exact match, anything else a partial one.
+ *
+ * <p>{@link #search} ranks every restaurant by its best match in one pass, in the order of the
+ * {@code RestaurantService} search contract; restaurants of the same rank are ordered by id. The
+ * open-now and radius filters only run on the rows that matched.
+ */
+@Log4j2
+public class RestaurantSearchIndex {
+
+  /**
+   * Source of a match, in the order the search contract ranks them.
+   */
+  public enum Field {
+    NAME(true), ATTRIBUTE(false), ITEM_NAME(true), ITEM_ATTRIBUTE(false);
+
+    // Whether exact matches are ranked before partial ones.
+    private final boolean exactFirst;
+
+    Field(boolean exactFirst) {
+      this.exactFirst = exactFirst;
+    }
+  }
+
+  private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+  private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  // Row columns.
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final OpeningHours[] openingHours;
+  private final Restaurant[] restaurants;
+
+  private final Map<Field, Postings> postings = new EnumMap<>(Field.class);
+
+  /**
+   * Builds the index.
+   * @param restaurantList restaurants to index; entries without coordinates are skipped
+   * @param itemsByRestaurantId items on the menu of each restaurant
+   */
+  public RestaurantSearchIndex(List<Restaurant> restaurantList,
+      Map<String, List<Item>> itemsByRestaurantId) {
+    List<Restaurant> located = new ArrayList<>();
+    for (Restaurant restaurant : restaurantList) {
+      if (restaurant.getLatitude() != null && restaurant.getLongitude() != null) {
+        located.add(restaurant);
+      }
+    }
+    located.sort(Comparator.comparing(Restaurant::getRestaurantId));
+
+    int size = located.size();
+    latitudes = new double[size];
+    longitudes = new double[size];
+    openingHours = new OpeningHours[size];
+    restaurants = new Restaurant[size];
+
+    Map<Field, PostingsBuilder> builders = new EnumMap<>(Field.class);
+    for (Field field : Field.values()) {
+      builders.put(field, new PostingsBuilder());
+    }
+    for (int row = 0; row < size; row++) {
+      Restaurant restaurant = located.get(row);
+      latitudes[row] = restaurant.getLatitude();
+      longitudes[row] = restaurant.getLongitude();
+      openingHours[row] = openingHoursOf(restaurant);
+      restaurants[row] = new Restaurant(restaurant);
+
+      builders.get(Field.NAME).add(restaurant.getName(), row);
+      for (String attribute : listOf(restaurant.getAttributes())) {
+        builders.get(Field.ATTRIBUTE).add(attribute, row);
+      }
+      for (Item item : itemsByRestaurantId.getOrDefault(restaurant.getRestaurantId(),
+          Collections.emptyList())) {
+        builders.get(Field.ITEM_NAME).add(item.getName(), row);
+        for (String attribute : listOf(item.getAttributes())) {
+          builders.get(Field.ITEM_ATTRIBUTE).add(attribute, row);
+        }
+      }
+    }
+    builders.forEach((field, builder) -> postings.put(field, builder.build()));
+  }
+
+  /**
+   * Number of restaurants held by the index.
+   */
+  public int size() {
+    return restaurants.length;
+  }
+
+  /**
+   * Split text into lower case tokens without accents, on anything that is not a letter or a
+   * digit.
+   * @return tokens in the order they appear, or an empty list for null or blank text
+   */
+  public static List<String> tokenize(String text) {
+    if (text == null) {
+      return Collections.emptyList();
+    }
+    String normalized = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFKD))
+        .replaceAll("").toLowerCase(Locale.ROOT);
+    List<String> tokens = new ArrayList<>();
+    for (String token : SEPARATORS.split(normalized)) {
+      if (!token.isEmpty()) {
+        tokens.add(token);
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * Get copies of the open restaurants within the serving radius that have a value of the field
+   * matching the query. For names, restaurants with a value equal to the query come first;
+   * restaurants are ordered by id otherwise.
+   * @param currentTime time at which the restaurants have to be open, or null for any time
+   */
+  public List<Restaurant> findOpenRestaurants(Field field, String query, double latitude,
+      double longitude, LocalTime currentTime, double servingRadiusInKms) {
+    List<String> tokens = tokenize(query);
+    if (tokens.isEmpty()) {
+      return new ArrayList<>();
+    }
+    return filter(match(field, tokens), latitude, longitude, currentTime, servingRadiusInKms);
+  }
+
+  /**
+   * Get copies of the open restaurants within the serving radius matching the query on any field,
+   * each once, ranked by its best match: exact name matches, partial name matches, cuisines,
+   * exact item name matches, partial item name matches and finally item attributes. Restaurants
+   * of the same rank are ordered by id.
+   * @param currentTime time at which the restaurants have to be open, or null for any time
+   */
+  public List<Restaurant> search(String query, double latitude, double longitude,
+      LocalTime currentTime, double servingRadiusInKms) {
+    List<String> tokens = tokenize(query);
+    if (tokens.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    List<BitSet> ranks = new ArrayList<>();
+    for (Field field : Field.values()) {
+      ranks.addAll(match(field, tokens));
+    }
+    BitSet ranked = new BitSet(size());
+    for (BitSet rows : ranks) {
+      rows.andNot(ranked);
+      ranked.or(rows);
+    }
+    return filter(ranks, latitude, longitude, currentTime, servingRadiusInKms);
+  }
+
+  // Rows matching the tokens on the field, exact matches and partial ones apart when they are
+  // ranked apart.
+  private List<BitSet> match(Field field, List<String> tokens) {
+    Postings fieldPostings = postings.get(field);
+    BitSet values = null;
+    for (String token : new LinkedHashSet<>(tokens)) {
+      BitSet tokenValues = fieldPostings.valuesWithPrefix(token);
+      if (values == null) {
+        values = tokenValues;
+      } else {
+        values.and(tokenValues);
+      }
+      if (values.isEmpty()) {
+        break;
+      }
+    }
+
+    BitSet exactRows = new BitSet(size());
+    BitSet otherRows = new BitSet(size());
+    Integer exactValue = fieldPostings.valueIds.get(String.join(" ", tokens));
+    if (field.exactFirst && exactValue != null && values.get(exactValue)) {
+      values.clear(exactValue);
+      for (int row : fieldPostings.rowsByValue[exactValue]) {
+        exactRows.set(row);
+      }
+    }
+    for (int value = values.nextSetBit(0); value >= 0; value = values.nextSetBit(value + 1)) {
+      for (int row : fieldPostings.rowsByValue[value]) {
+        otherRows.set(row);
+      }
+    }
+    otherRows.andNot(exactRows);
+    return field.exactFirst ? Arrays.asList(exactRows, otherRows)
+        : Collections.singletonList(otherRows);
+  }
+
+  private List<Restaurant> filter(List<BitSet> ranks, double latitude, double longitude,
+      LocalTime currentTime, double servingRadiusInKms) {
+    List<Restaurant> found = new ArrayList<>();
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        servingRadiusInKms);
+    for (BitSet rows : ranks) {
+      for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+        if ((currentTime == null
+            || openingHours[row] != null && openingHours[row].isOpenAt(currentTime))
+            && radiusFilter.contains(latitudes[row], longitudes[row])) {
+          found.add(new Restaurant(restaurants[row]));
+        }
+      }
+    }
+    return found;
+  }
+
+  private static List<String> listOf(List<String> values) {
+    return values == null ? Collections.emptyList() : values;
+  }
+
+  private static OpeningHours openingHoursOf(Restaurant restaurant) {
+    try {
+      return OpeningHours.parse(restaurant.getOpensAt(), restaurant.getClosesAt());
+    } catch (DateTimeParseException | NullPointerException e) {
+      log.warn("Ignoring invalid opening hours {} - {} of restaurant {}", restaurant.getOpensAt(),
+          restaurant.getClosesAt(), restaurant.getRestaurantId());
+      return null;
+    }
+  }
+
+  // Postings of one field.
+  private static class Postings {
+
+    // Normalized value, its tokens joined by single spaces, to its id.
+    private final Map<String, Integer> valueIds;
+    // Sorted tokens, and the values containing each of them.
+    private final String[] tokens;
+    private final int[][] valuesByToken;
+    private final int[][] rowsByValue;
+
+    Postings(Map<String, Integer> valueIds, String[] tokens, int[][] valuesByToken,
+        int[][] rowsByValue) {
+      this.valueIds = valueIds;
+      this.tokens = tokens;
+      this.valuesByToken = valuesByToken;
+      this.rowsByValue = rowsByValue;
+    }
+
+    BitSet valuesWithPrefix(String prefix) {
+      BitSet values = new BitSet(rowsByValue.length);
+      int index = Arrays.binarySearch(tokens, prefix);
+      for (int i = index < 0 ? -index - 1 : index;
+          i < tokens.length && tokens[i].startsWith(prefix); i++) {
+        for (int value : valuesByToken[i]) {
+          values.set(value);
+        }
+      }
+      return values;
+    }
+  }
+
+  private static class PostingsBuilder {
+
+    private final Map<String, Integer> valueIds = new HashMap<>();
+    private final SortedMap<String, Set<Integer>> valuesByToken = new TreeMap<>();
+    private final List<Set<Integer>> rowsByValue = new ArrayList<>();
+
+    void add(String text, int row) {
+      List<String> tokens = tokenize(text);
+      if (tokens.isEmpty()) {
+        return;
+      }
+      Integer value = valueIds.get(String.join(" ", tokens));
+      if (value == null) {
+        value = rowsByValue.size();
+        valueIds.put(String.join(" ", tokens), value);
+        rowsByValue.add(new TreeSet<>());
+        for (String token : tokens) {
+          valuesByToken.computeIfAbsent(token, key -> new TreeSet<>()).add(value);
+        }
+      }
+      rowsByValue.get(value).add(row);
+    }
+
+    Postings build() {
+      String[] tokens = valuesByToken.keySet().toArray(new String[0]);
+      int[][] tokenValues = new int[tokens.length][];
+      for (int i = 0; i < tokens.length; i++) {
+        tokenValues[i] = toArray(valuesByToken.get(tokens[i]));
+      }
+      int[][] valueRows = new int[rowsByValue.size()][];
+      for (int value = 0; value < valueRows.length; value++) {
+        valueRows[value] = toArray(rowsByValue.get(value));
+      }
+      return new Postings(valueIds, tokens, tokenValues, valueRows);
+    }
+
+    private static int[] toArray(Set<Integer> sorted) {
+      return sorted.stream().mapToInt(Integer::intValue).toArray();
+    }
+  }
+}
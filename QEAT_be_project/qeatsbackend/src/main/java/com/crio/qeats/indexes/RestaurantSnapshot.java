@@ -0,0 +1,306 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.indexes;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.utils.GeoUtils;
+import com.crio.qeats.utils.NearestRestaurants;
+import com.crio.qeats.utils.OpeningHours;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Immutable, column oriented copy of the restaurant catalog used to answer nearby lookups.
+ *
+ * <p>Every restaurant is a row. Coordinates and opening hours live in primitive arrays indexed by
+ * row, and the {@link Restaurant} DTOs in a parallel table, so the radius and open-now filters
+ * read nothing but primitives and never allocate for a candidate that is rejected. Rows are
+ * ordered by the cell of a uniform latitude/longitude grid they fall in, so the rows of a cell
+ * are contiguous and a query only walks the cells that overlap its serving circle.
+ *
+ * <p>Opening hours are parsed once, when the snapshot is built. For every 15 minute slot of the
+ * day the snapshot keeps two bitsets over the rows: restaurants open for the whole slot, and
+ * restaurants that open or close somewhere inside it. The open-now filter is then a bitmap AND of
+ * the current slot with the row range of a cell, and only boundary rows compare exact times.
+ */
+@Log4j2
+public class RestaurantSnapshot {
+
+  private static final double EARTH_RADIUS_IN_KMS = 6371.0;
+  private static final short NOT_AVAILABLE = -1;
+  private static final int MINUTES_PER_SLOT = 15;
+  private static final int SLOTS_PER_DAY = OpeningHours.MINUTES_PER_DAY / MINUTES_PER_SLOT;
+
+  private final double cellSizeInDegrees;
+  private final int rows;
+  private final int columns;
+
+  // Row columns.
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final short[] opensAt;
+  private final short[] closesAt;
+  private final Restaurant[] restaurants;
+
+  // Non empty grid cells, sorted, and the first row of each; cellStarts has a trailing sentinel.
+  private final long[] cellKeys;
+  private final int[] cellStarts;
+
+  // Row bitsets per slot of the day, slot s occupying words [s * words, (s + 1) * words).
+  private final int words;
+  private final long[] openThroughoutSlot;
+  private final long[] openingOrClosingInSlot;
+
+  /**
+   * Builds the snapshot.
+   * @param restaurantList restaurants to index; entries without coordinates are skipped
+   * @param cellSizeInDegrees edge of a grid cell, in degrees of latitude and longitude
+   */
+  public RestaurantSnapshot(List<Restaurant> restaurantList, double cellSizeInDegrees) {
+    if (!(cellSizeInDegrees > 0 && cellSizeInDegrees <= 90)) {
+      throw new IllegalArgumentException("Invalid grid cell size " + cellSizeInDegrees);
+    }
+    this.cellSizeInDegrees = cellSizeInDegrees;
+    this.rows = (int) Math.ceil(180 / cellSizeInDegrees);
+    this.columns = (int) Math.ceil(360 / cellSizeInDegrees);
+
+    List<Restaurant> located = new ArrayList<>();
+    for (Restaurant restaurant : restaurantList) {
+      if (restaurant.getLatitude() != null && restaurant.getLongitude() != null) {
+        located.add(restaurant);
+      }
+    }
+    located.sort(Comparator.comparingLong(restaurant ->
+        cellOf(row(restaurant.getLatitude()), column(restaurant.getLongitude()))));
+
+    int size = located.size();
+    latitudes = new double[size];
+    longitudes = new double[size];
+    opensAt = new short[size];
+    closesAt = new short[size];
+    restaurants = new Restaurant[size];
+
+    long[] keys = new long[size];
+    int[] starts = new int[size + 1];
+    int cellCount = 0;
+    for (int row = 0; row < size; row++) {
+      Restaurant restaurant = located.get(row);
+      latitudes[row] = restaurant.getLatitude();
+      longitudes[row] = restaurant.getLongitude();
+      OpeningHours openingHours = openingHoursOf(restaurant);
+      opensAt[row] = openingHours == null ? NOT_AVAILABLE : (short) openingHours.getOpensAt();
+      closesAt[row] = openingHours == null ? NOT_AVAILABLE : (short) openingHours.getClosesAt();
+      restaurants[row] = new Restaurant(restaurant);
+
+      long cell = cellOf(row(latitudes[row]), column(longitudes[row]));
+      if (cellCount == 0 || keys[cellCount - 1] != cell) {
+        keys[cellCount] = cell;
+        starts[cellCount] = row;
+        cellCount++;
+      }
+    }
+    starts[cellCount] = size;
+    cellKeys = Arrays.copyOf(keys, cellCount);
+    cellStarts = Arrays.copyOf(starts, cellCount + 1);
+
+    words = (size + 63) >>> 6;
+    openThroughoutSlot = new long[SLOTS_PER_DAY * words];
+    openingOrClosingInSlot = new long[SLOTS_PER_DAY * words];
+    for (int row = 0; row < size; row++) {
+      if (opensAt[row] == NOT_AVAILABLE) {
+        continue;
+      }
+      for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+        int from = slot * MINUTES_PER_SLOT;
+        int to = from + MINUTES_PER_SLOT;
+        int word = slot * words + (row >>> 6);
+        if (OpeningHours.isOpenThroughout(opensAt[row], closesAt[row], from, to)) {
+          openThroughoutSlot[word] |= 1L << (row & 63);
+        } else if (OpeningHours.isOpenDuring(opensAt[row], closesAt[row], from, to)) {
+          openingOrClosingInSlot[word] |= 1L << (row & 63);
+        }
+      }
+    }
+  }
+
+  /**
+   * Number of restaurants held by the snapshot.
+   */
+  public int size() {
+    return restaurants.length;
+  }
+
+  /**
+   * Find the restaurants that are open and strictly within the given radius of a location.
+   * @param latitude latitude of the location
+   * @param longitude longitude of the location
+   * @param currentTime time at which the restaurants have to be open
+   * @param radiusInKms search radius
+   * @return copies of the matching restaurants, in no particular order
+   */
+  public List<Restaurant> findOpenRestaurantsWithinRadius(double latitude, double longitude,
+      LocalTime currentTime, double radiusInKms) {
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        radiusInKms);
+    List<Restaurant> result = new ArrayList<>();
+    forEachRowWithinRadius(latitude, longitude, currentTime, radiusInKms, radiusFilter,
+        row -> result.add(new Restaurant(restaurants[row])));
+    return result;
+  }
+
+  /**
+   * Find the restaurants strictly within the given radius of a location, open or not.
+   * @return copies of the matching restaurants, in no particular order
+   */
+  public List<Restaurant> findRestaurantsWithinRadius(double latitude, double longitude,
+      double radiusInKms) {
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        radiusInKms);
+    List<Restaurant> result = new ArrayList<>();
+    forEachRowWithinRadius(latitude, longitude, null, radiusInKms, radiusFilter,
+        row -> result.add(new Restaurant(restaurants[row])));
+    return result;
+  }
+
+  /**
+   * Same as {@link #findOpenRestaurantsWithinRadius}, but hands each restaurant to the action as
+   * soon as it is found.
+   * @param action called with a copy of every matching restaurant
+   */
+  public void forEachOpenRestaurantWithinRadius(double latitude, double longitude,
+      LocalTime currentTime, double radiusInKms, Consumer<Restaurant> action) {
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        radiusInKms);
+    forEachRowWithinRadius(latitude, longitude, currentTime, radiusInKms, radiusFilter,
+        row -> action.accept(new Restaurant(restaurants[row])));
+  }
+
+  /**
+   * Collect the page of open restaurants strictly within the given radius of a location. Only
+   * the restaurants admitted into the page are copied.
+   * @param nearestRestaurants page to add copies of the matching restaurants to
+   */
+  public void findNearestOpenRestaurants(double latitude, double longitude,
+      LocalTime currentTime, double radiusInKms, NearestRestaurants nearestRestaurants) {
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        radiusInKms);
+    forEachRowWithinRadius(latitude, longitude, currentTime, radiusInKms, radiusFilter,
+        row -> {
+          double distanceInKm = radiusFilter.distanceInKm(latitudes[row], longitudes[row]);
+          if (nearestRestaurants.admits(distanceInKm, restaurants[row].getRestaurantId())) {
+            Restaurant restaurant = new Restaurant(restaurants[row]);
+            restaurant.setDistance(distanceInKm);
+            nearestRestaurants.offer(restaurant);
+          }
+        });
+  }
+
+  // Rows within the radius that are open at currentTime, or all of them if it is null.
+  private void forEachRowWithinRadius(double latitude, double longitude,
+      LocalTime currentTime, double radiusInKms, GeoUtils.RadiusFilter radiusFilter,
+      IntConsumer action) {
+    if (cellKeys.length == 0 || radiusInKms <= 0) {
+      return;
+    }
+
+    boolean anyTime = currentTime == null;
+    int minute = anyTime ? 0 : OpeningHours.minuteOfDay(currentTime);
+    boolean onTheMinute = anyTime || OpeningHours.isOnTheMinute(currentTime);
+    int slotOffset = (minute / MINUTES_PER_SLOT) * words;
+    int[] openRows = new int[64];
+
+    // Bounding box of the serving circle, see
+    // http://janmatuschek.de/LatitudeLongitudeBoundingCoordinates
+    double angularRadius = radiusInKms / EARTH_RADIUS_IN_KMS;
+    double latitudeDelta = Math.toDegrees(angularRadius);
+    double minLatitude = latitude - latitudeDelta;
+    double maxLatitude = latitude + latitudeDelta;
+
+    int firstColumn = 0;
+    int columnCount = columns;
+    double sinOfLongitudeDelta = Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+    if (minLatitude > -90 && maxLatitude < 90 && sinOfLongitudeDelta < 1) {
+      double longitudeDelta = Math.toDegrees(Math.asin(sinOfLongitudeDelta));
+      if (2 * longitudeDelta + cellSizeInDegrees < 360) {
+        firstColumn = column(longitude - longitudeDelta);
+        columnCount = Math.floorMod(column(longitude + longitudeDelta) - firstColumn, columns) + 1;
+      }
+    }
+
+    int maxRow = row(maxLatitude);
+    for (int gridRow = row(minLatitude); gridRow <= maxRow; gridRow++) {
+      for (int i = 0; i < columnCount; i++) {
+        int cell = Arrays.binarySearch(cellKeys, cellOf(gridRow, (firstColumn + i) % columns));
+        if (cell < 0) {
+          continue;
+        }
+        int start = cellStarts[cell];
+        int end = cellStarts[cell + 1];
+        for (int word = start >>> 6; word <= (end - 1) >>> 6; word++) {
+          long inCell = rangeMask(word, start, end);
+          long boundary = anyTime ? 0 : openingOrClosingInSlot[slotOffset + word] & inCell;
+          long candidates = anyTime ? inCell
+              : (openThroughoutSlot[slotOffset + word] & inCell) | boundary;
+          int openCount = 0;
+          while (candidates != 0) {
+            int bit = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+            int row = (word << 6) + bit;
+            if ((boundary & (1L << bit)) == 0
+                || OpeningHours.isOpen(opensAt[row], closesAt[row], minute, onTheMinute)) {
+              openRows[openCount++] = row;
+            }
+          }
+
+          int matches = radiusFilter.retainWithinRadius(latitudes, longitudes, openRows,
+              openCount);
+          for (int match = 0; match < matches; match++) {
+            action.accept(openRows[match]);
+          }
+        }
+      }
+    }
+  }
+
+  // Bits of the given word that belong to rows [start, end).
+  private static long rangeMask(int word, int start, int end) {
+    int first = Math.max(start - (word << 6), 0);
+    int last = Math.min(end - (word << 6), 64);
+    long upTo = last == 64 ? -1L : (1L << last) - 1;
+    return upTo & (-1L << first);
+  }
+
+  private static OpeningHours openingHoursOf(Restaurant restaurant) {
+    try {
+      return OpeningHours.parse(restaurant.getOpensAt(), restaurant.getClosesAt());
+    } catch (DateTimeParseException | NullPointerException e) {
+      log.warn("Ignoring invalid opening hours {} - {} of restaurant {}", restaurant.getOpensAt(),
+          restaurant.getClosesAt(), restaurant.getRestaurantId());
+      return null;
+    }
+  }
+
+  private int row(double latitude) {
+    int row = (int) Math.floor((latitude + 90) / cellSizeInDegrees);
+    return Math.max(0, Math.min(rows - 1, row));
+  }
+
+  private int column(double longitude) {
+    return Math.floorMod((int) Math.floor((longitude + 180) / cellSizeInDegrees), columns);
+  }
+
+  private long cellOf(int row, int column) {
+    return (long) row * columns + column;
+  }
+}
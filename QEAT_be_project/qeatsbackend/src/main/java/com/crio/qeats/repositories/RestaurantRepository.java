@@ -8,6 +8,7 @@ package com.crio.qeats.repositories;
 
 import com.crio.qeats.dto.Restaurant;
 import com.crio.qeats.models.RestaurantEntity;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.mongodb.repository.MongoRepository;
@@ -25,5 +26,7 @@ public interface RestaurantRepository extends MongoRepository<RestaurantEntity,
 
 	@Query("{restaurantId: { $in: ?0 } })")
   	List<RestaurantEntity> findRestaurantsByid(List<String> restaurantId);
+
+	List<RestaurantEntity> findByRestaurantIdIn(Collection<String> restaurantIds);
 }
 
@@ -0,0 +1,99 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import ch.hsr.geohash.GeoHash;
+import com.crio.qeats.cache.FrequencySketch;
+import com.crio.qeats.cache.HeavyHitters;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Approximate lookup counts of geohash cells and search strings, so caches can tell hot keys
+ * from cold ones.
+ *
+ * <p>Both are counted in fixed memory by a {@link FrequencySketch} with a {@link HeavyHitters}
+ * list of the {@code qeats.hot-keys.capacity} most frequent keys. Counts are halved every
+ * {@code qeats.hot-keys.sample-size} lookups, so they follow recent traffic.
+ */
+@Component
+public class AccessFrequencyTracker {
+
+  @Value("${qeats.hot-keys.capacity:1000}")
+  private int capacity;
+
+  @Value("${qeats.hot-keys.sketch-width:16384}")
+  private int sketchWidth;
+
+  @Value("${qeats.hot-keys.sample-size:1000000}")
+  private long sampleSize;
+
+  private FrequencySketch cellSketch;
+  private HeavyHitters cells;
+  private HeavyHitters queries;
+
+  /**
+   * Creates the sketches.
+   */
+  @PostConstruct
+  public void initSketches() {
+    cellSketch = new FrequencySketch(sketchWidth, sampleSize);
+    cells = new HeavyHitters(capacity, cellSketch);
+    queries = new HeavyHitters(capacity, new FrequencySketch(sketchWidth, sampleSize));
+  }
+
+  /**
+   * Count a nearby lookup around the given location.
+   */
+  public void recordLookup(double latitude, double longitude) {
+    cells.add(GeoHash.geoHashStringWithCharacterPrecision(latitude, longitude,
+        NearbyRestaurantsCache.GEOHASH_PRECISION));
+  }
+
+  /**
+   * Count a search, ignoring case and surrounding whitespace.
+   */
+  public void recordSearch(String searchFor) {
+    queries.add(normalize(searchFor));
+  }
+
+  /**
+   * Estimate the number of lookups of the cell with the given geohash.
+   */
+  public long estimateCellLookups(String geoHash) {
+    return cells.estimate(geoHash);
+  }
+
+  /**
+   * Estimate the number of lookups of all cells, on the same scale as those of single cells.
+   */
+  public long getCellLookups() {
+    return cellSketch.getAdditions();
+  }
+
+  /**
+   * Get the geohashes of the most looked up cells with their estimated lookups, most looked up
+   * first.
+   */
+  public Map<String, Long> findTopCells(int limit) {
+    return cells.findTop(limit);
+  }
+
+  /**
+   * Get the most frequent search strings with their estimated count, most frequent first.
+   */
+  public Map<String, Long> findTopSearches(int limit) {
+    return queries.findTop(limit);
+  }
+
+  private static String normalize(String searchFor) {
+    return searchFor.trim().toLowerCase(Locale.ROOT);
+  }
+}
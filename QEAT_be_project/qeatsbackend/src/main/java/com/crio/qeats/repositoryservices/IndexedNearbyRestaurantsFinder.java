@@ -0,0 +1,194 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.indexes.RestaurantSnapshot;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.utils.NearestRestaurants;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.inject.Provider;
+import lombok.extern.log4j.Log4j2;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Answers nearby lookups from an in-memory {@link RestaurantSnapshot}.
+ * The snapshot is built from the restaurants collection at startup and rebuilt periodically; a
+ * rebuild swaps the whole snapshot at once, so readers never see a half-built one. Restaurants
+ * other instances saw change, as listed by {@link RestaurantsInvalidatedEvent}s, are patched in
+ * every {@code qeats.nearby.index.invalidation-delay-ms}, all those of a burst of events at once.
+ */
+@Log4j2
+@Service
+@ConditionalOnProperty(name = "qeats.nearby.backend", havingValue = "index")
+public class IndexedNearbyRestaurantsFinder implements NearbyRestaurantsFinder {
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private Provider<ModelMapper> modelMapperProvider;
+
+  @Value("${qeats.nearby.index.cell-size-degrees:0.05}")
+  private double cellSizeInDegrees;
+
+  @Autowired
+  private ApplicationEventPublisher applicationEventPublisher;
+
+  private volatile RestaurantSnapshot snapshot;
+  private Map<String, Restaurant> restaurantsById;
+
+  // Invalidations received since they were last applied; guarded by itself.
+  private final Set<String> invalidatedRestaurantIds = new LinkedHashSet<>();
+  private boolean rebuildRequested;
+
+  /**
+   * Rebuild the snapshot from the restaurants collection, and publish a
+   * {@link RestaurantsChangedEvent} listing the restaurants that changed since the previous
+   * build, if any.
+   */
+  @PostConstruct
+  @Scheduled(initialDelayString = "${qeats.nearby.index.refresh-interval-ms:300000}",
+      fixedDelayString = "${qeats.nearby.index.refresh-interval-ms:300000}")
+  public synchronized void refreshIndex() {
+    long startTimeInMillis = System.currentTimeMillis();
+    ModelMapper modelMapper = modelMapperProvider.get();
+    List<Restaurant> restaurants = new ArrayList<Restaurant>();
+    for (RestaurantEntity restaurantEntity : restaurantRepository.findAll()) {
+      restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
+    }
+    Map<String, Restaurant> previousRestaurantsById = restaurantsById;
+    restaurantsById = new HashMap<>();
+    for (Restaurant restaurant : restaurants) {
+      restaurantsById.put(restaurant.getRestaurantId(), restaurant);
+    }
+    snapshot = new RestaurantSnapshot(restaurants, cellSizeInDegrees);
+    log.info("Indexed {} restaurants in {} ms", snapshot.size(),
+        System.currentTimeMillis() - startTimeInMillis);
+    if (previousRestaurantsById == null) {
+      return;
+    }
+
+    List<Restaurant> previousRestaurants = new ArrayList<>();
+    List<Restaurant> currentRestaurants = new ArrayList<>();
+    for (Restaurant restaurant : restaurantsById.values()) {
+      Restaurant previous = previousRestaurantsById.remove(restaurant.getRestaurantId());
+      if (!Objects.equals(previous, restaurant)) {
+        currentRestaurants.add(restaurant);
+        if (previous != null) {
+          previousRestaurants.add(previous);
+        }
+      }
+    }
+    // Whatever is left was removed.
+    previousRestaurants.addAll(previousRestaurantsById.values());
+    if (!previousRestaurants.isEmpty() || !currentRestaurants.isEmpty()) {
+      applicationEventPublisher.publishEvent(
+          new RestaurantsChangedEvent(this, previousRestaurants, currentRestaurants));
+    }
+  }
+
+  /**
+   * Note the restaurants another instance saw change, or that everything may have changed if
+   * they are not listed, for {@link #applyInvalidations}.
+   */
+  @EventListener
+  public void onRestaurantsInvalidated(RestaurantsInvalidatedEvent event) {
+    synchronized (invalidatedRestaurantIds) {
+      if (event.isListed()) {
+        invalidatedRestaurantIds.addAll(event.getRestaurantIds());
+      } else {
+        rebuildRequested = true;
+      }
+    }
+  }
+
+  /**
+   * Patch the snapshot with the restaurants invalidated since the last call, read again from the
+   * restaurants collection in one query, or rebuild it if any invalidation did not list them.
+   * The patch is not published again, since the other instances already did.
+   */
+  @Scheduled(initialDelayString = "${qeats.nearby.index.invalidation-delay-ms:200}",
+      fixedDelayString = "${qeats.nearby.index.invalidation-delay-ms:200}")
+  public void applyInvalidations() {
+    List<String> restaurantIds;
+    boolean rebuild;
+    synchronized (invalidatedRestaurantIds) {
+      restaurantIds = new ArrayList<>(invalidatedRestaurantIds);
+      rebuild = rebuildRequested;
+      invalidatedRestaurantIds.clear();
+      rebuildRequested = false;
+    }
+    if (rebuild) {
+      refreshIndex();
+    } else if (!restaurantIds.isEmpty()) {
+      patchIndex(restaurantIds);
+    }
+  }
+
+  private synchronized void patchIndex(List<String> restaurantIds) {
+    if (restaurantsById == null) {
+      return;
+    }
+    ModelMapper modelMapper = modelMapperProvider.get();
+    Map<String, Restaurant> patchedRestaurantsById = new HashMap<>(restaurantsById);
+    patchedRestaurantsById.keySet().removeAll(restaurantIds);
+    for (RestaurantEntity restaurantEntity
+        : restaurantRepository.findByRestaurantIdIn(restaurantIds)) {
+      Restaurant restaurant = modelMapper.map(restaurantEntity, Restaurant.class);
+      patchedRestaurantsById.put(restaurant.getRestaurantId(), restaurant);
+    }
+    restaurantsById = patchedRestaurantsById;
+    snapshot = new RestaurantSnapshot(new ArrayList<>(patchedRestaurantsById.values()),
+        cellSizeInDegrees);
+  }
+
+  @Override
+  public List<Restaurant> findOpenRestaurantsCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms) {
+    return snapshot.findOpenRestaurantsWithinRadius(latitude, longitude, currentTime,
+        servingRadiusInKms);
+  }
+
+  @Override
+  public List<Restaurant> findRestaurantsCloseBy(Double latitude, Double longitude,
+      Double radiusInKms) {
+    return snapshot.findRestaurantsWithinRadius(latitude, longitude, radiusInKms);
+  }
+
+  @Override
+  public void forEachOpenRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> action) {
+    snapshot.forEachOpenRestaurantWithinRadius(latitude, longitude, currentTime,
+        servingRadiusInKms, action);
+  }
+
+  @Override
+  public void findNearestOpenRestaurants(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, NearestRestaurants nearestRestaurants) {
+    snapshot.findNearestOpenRestaurants(latitude, longitude, currentTime, servingRadiusInKms,
+        nearestRestaurants);
+  }
+
+}
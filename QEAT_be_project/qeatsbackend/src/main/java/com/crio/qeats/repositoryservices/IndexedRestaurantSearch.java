@@ -0,0 +1,114 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.indexes.RestaurantSearchIndex;
+import com.crio.qeats.models.ItemEntity;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.ItemRepository;
+import com.crio.qeats.repositories.MenuRepository;
+import com.crio.qeats.repositories.RestaurantRepository;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.inject.Provider;
+import lombok.extern.log4j.Log4j2;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Answers restaurant searches from an in-memory {@link RestaurantSearchIndex}, instead of
+ * querying the restaurants, menus and items collections on every search.
+ * The index is built from those collections at startup and rebuilt periodically; a rebuild swaps
+ * the whole index at once, so readers never see a half-built one. Menu items are indexed with the
+ * name and attributes of their document in the items collection when there is one.
+ */
+@Log4j2
+@Service
+@ConditionalOnProperty(name = "qeats.search.backend", havingValue = "index")
+public class IndexedRestaurantSearch {
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private MenuRepository menuRepository;
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  @Autowired
+  private Provider<ModelMapper> modelMapperProvider;
+
+  private volatile RestaurantSearchIndex index;
+
+  /**
+   * Rebuild the index from the restaurants, menus and items collections.
+   */
+  @PostConstruct
+  @Scheduled(initialDelayString = "${qeats.search.index.refresh-interval-ms:300000}",
+      fixedDelayString = "${qeats.search.index.refresh-interval-ms:300000}")
+  public synchronized void refreshIndex() {
+    long startTimeInMillis = System.currentTimeMillis();
+    ModelMapper modelMapper = modelMapperProvider.get();
+    List<Restaurant> restaurants = new ArrayList<>();
+    for (RestaurantEntity restaurantEntity : restaurantRepository.findAll()) {
+      restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
+    }
+
+    Map<String, ItemEntity> itemEntitiesByItemId = new HashMap<>();
+    for (ItemEntity itemEntity : itemRepository.findAll()) {
+      itemEntitiesByItemId.put(itemEntity.getItemId(), itemEntity);
+    }
+    Map<String, List<Item>> itemsByRestaurantId = new HashMap<>();
+    for (MenuEntity menuEntity : menuRepository.findAll()) {
+      List<Item> items = itemsByRestaurantId.computeIfAbsent(menuEntity.getRestaurantId(),
+          restaurantId -> new ArrayList<>());
+      for (Item item : menuEntity.getItems()) {
+        ItemEntity itemEntity = itemEntitiesByItemId.get(item.getItemId());
+        if (itemEntity != null) {
+          item = new Item(item.getId(), item.getItemId(), itemEntity.getName(),
+              item.getImageUrl(), itemEntity.getAttributes(), item.getPrice());
+        }
+        items.add(item);
+      }
+    }
+
+    index = new RestaurantSearchIndex(restaurants, itemsByRestaurantId);
+    log.info("Indexed {} restaurants for search in {} ms", index.size(),
+        System.currentTimeMillis() - startTimeInMillis);
+  }
+
+  /**
+   * Get the open restaurants within the serving radius that match the search string on the
+   * given field, see {@link RestaurantSearchIndex#findOpenRestaurants}.
+   */
+  public List<Restaurant> findRestaurants(RestaurantSearchIndex.Field field, Double latitude,
+      Double longitude, String searchString, LocalTime currentTime, Double servingRadiusInKms) {
+    return index.findOpenRestaurants(field, searchString, latitude, longitude, currentTime,
+        servingRadiusInKms);
+  }
+
+  /**
+   * Get the open restaurants within the serving radius that match the search string on any field,
+   * ranked as the search contract requires, see {@link RestaurantSearchIndex#search}.
+   */
+  public List<Restaurant> search(Double latitude, Double longitude, String searchString,
+      LocalTime currentTime, Double servingRadiusInKms) {
+    return index.search(searchString, latitude, longitude, currentTime, servingRadiusInKms);
+  }
+
+}
@@ -0,0 +1,348 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.indexes.RestaurantSearchIndex;
+import com.crio.qeats.indexes.RestaurantSearchIndex.Field;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.utils.GeoUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Denormalized view from the tokens of the item names and attributes on the menus to the
+ * restaurants serving them, along with their coordinates, so item searches find the restaurants
+ * close by without joining the items, menus and restaurants collections.
+ *
+ * <p>The view is built from the menus and restaurants collections at startup, then kept up to
+ * date incrementally: a menu saved or deleted through Spring Data only updates the entries of its
+ * restaurant, and restaurants this instance or another one saw change get their coordinates
+ * patched. A restaurant has a single menu. Changes made to the database directly are not seen,
+ * so {@link #checkConsistency} compares the view with a rebuild every
+ * {@code qeats.search.item-view.check-interval-ms} and replaces it when they differ.
+ */
+@Log4j2
+@Component
+@ConditionalOnProperty(name = "qeats.search.item-view.enabled", havingValue = "true")
+public class ItemRestaurantView extends AbstractMongoEventListener<MenuEntity> {
+
+  @Autowired
+  private MenuRepository menuRepository;
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private volatile Entries entries;
+  private Counter repairs;
+
+  @PostConstruct
+  public void init() {
+    repairs = meterRegistry.counter("qeats.search.item-view.repairs");
+    rebuild();
+  }
+
+  /**
+   * Replace the view with one built from the menus and restaurants collections.
+   */
+  public synchronized void rebuild() {
+    entries = load();
+    log.info("Built the item view of {} restaurants, {} keys", entries.keysByRestaurantId.size(),
+        entries.restaurantsByKey.size());
+  }
+
+  /**
+   * Get the ids of the restaurants within the radius with an item matching every token of the
+   * search string on the given field.
+   * @param field {@link Field#ITEM_NAME} or {@link Field#ITEM_ATTRIBUTE}
+   * @return restaurant ids in increasing order
+   */
+  public List<String> findRestaurantIdsCloseBy(Field field, String searchString,
+      double latitude, double longitude, double radiusInKms) {
+    if (field != Field.ITEM_NAME && field != Field.ITEM_ATTRIBUTE) {
+      throw new IllegalArgumentException("Not an item field " + field);
+    }
+    Set<String> keys = new HashSet<>();
+    for (String token : RestaurantSearchIndex.tokenize(searchString)) {
+      keys.add(key(field, token));
+    }
+    Entries current = entries;
+    Map<String, Location> candidates = null;
+    for (String key : keys) {
+      Map<String, Location> restaurants = current.restaurantsByKey.get(key);
+      if (restaurants == null) {
+        return new ArrayList<>();
+      } else if (candidates == null || restaurants.size() < candidates.size()) {
+        // Checks the other keys of the restaurants with the rarest one.
+        candidates = restaurants;
+      }
+    }
+    if (candidates == null) {
+      return new ArrayList<>();
+    }
+
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        radiusInKms);
+    Set<String> found = new TreeSet<>();
+    candidates.forEach((restaurantId, location) -> {
+      Set<String> restaurantKeys = current.keysByRestaurantId.get(restaurantId);
+      if (restaurantKeys != null && restaurantKeys.containsAll(keys)
+          && radiusFilter.contains(location.getLatitude(), location.getLongitude())) {
+        found.add(restaurantId);
+      }
+    });
+    return new ArrayList<>(found);
+  }
+
+  @Override
+  public void onAfterSave(AfterSaveEvent<MenuEntity> event) {
+    MenuEntity menuEntity = event.getSource();
+    synchronized (this) {
+      entries.putMenu(menuEntity.getId(), menuEntity.getRestaurantId(),
+          keysOf(menuEntity.getItems()));
+    }
+  }
+
+  @Override
+  public void onAfterDelete(AfterDeleteEvent<MenuEntity> event) {
+    Object menuId = event.getDocument() == null ? null : event.getDocument().get("_id");
+    synchronized (this) {
+      if (menuId instanceof Document || menuId == null) {
+        // Deleted by a query, the menus are unknown.
+        entries = load();
+      } else {
+        entries.removeMenu(menuId.toString());
+      }
+    }
+  }
+
+  /**
+   * Move the restaurants this instance saw change.
+   */
+  @EventListener
+  public synchronized void onRestaurantsChanged(RestaurantsChangedEvent event) {
+    if (!event.isListed()) {
+      rebuild();
+      return;
+    }
+    for (Restaurant restaurant : event.getPreviousRestaurants()) {
+      entries.moveRestaurant(restaurant.getRestaurantId(), null);
+    }
+    for (Restaurant restaurant : event.getCurrentRestaurants()) {
+      entries.moveRestaurant(restaurant.getRestaurantId(),
+          locationOf(restaurant.getLatitude(), restaurant.getLongitude()));
+    }
+  }
+
+  /**
+   * Move the restaurants another instance saw change, reading them again.
+   */
+  @EventListener
+  public void onRestaurantsInvalidated(RestaurantsInvalidatedEvent event) {
+    if (!event.isListed()) {
+      rebuild();
+      return;
+    }
+    List<RestaurantEntity> restaurantEntities =
+        restaurantRepository.findByRestaurantIdIn(event.getRestaurantIds());
+    synchronized (this) {
+      for (String restaurantId : event.getRestaurantIds()) {
+        entries.moveRestaurant(restaurantId, null);
+      }
+      for (RestaurantEntity restaurantEntity : restaurantEntities) {
+        entries.moveRestaurant(restaurantEntity.getRestaurantId(),
+            locationOf(restaurantEntity.getLatitude(), restaurantEntity.getLongitude()));
+      }
+    }
+  }
+
+  /**
+   * Compare the view with one rebuilt from the database. Saves are held while comparing.
+   * @return the keys and restaurants that differ, empty if the view is consistent
+   */
+  public synchronized List<String> checkConsistency() {
+    Entries expected = load();
+    List<String> differences = new ArrayList<>();
+    Set<String> keys = new TreeSet<>(expected.restaurantsByKey.keySet());
+    keys.addAll(entries.restaurantsByKey.keySet());
+    for (String key : keys) {
+      Map<String, Location> expectedRestaurants =
+          expected.restaurantsByKey.getOrDefault(key, Collections.emptyMap());
+      Map<String, Location> actualRestaurants =
+          entries.restaurantsByKey.getOrDefault(key, Collections.emptyMap());
+      if (!expectedRestaurants.equals(actualRestaurants)) {
+        differences.add(key + ": expected " + new TreeMap<>(expectedRestaurants) + " but was "
+            + new TreeMap<>(actualRestaurants));
+      }
+    }
+    if (!expected.keysByRestaurantId.equals(entries.keysByRestaurantId)) {
+      differences.add("restaurant keys: expected " + expected.keysByRestaurantId
+          + " but was " + entries.keysByRestaurantId);
+    }
+    return differences;
+  }
+
+  /**
+   * Replace the view with a rebuild when it is not consistent with the database.
+   * @return whether the view was replaced
+   */
+  @Scheduled(initialDelayString = "${qeats.search.item-view.check-interval-ms:600000}",
+      fixedDelayString = "${qeats.search.item-view.check-interval-ms:600000}")
+  public synchronized boolean repair() {
+    List<String> differences = checkConsistency();
+    if (differences.isEmpty()) {
+      return false;
+    }
+    log.warn("Item view differs from the database on {} keys, rebuilding it, first {}",
+        differences.size(), differences.get(0));
+    repairs.increment();
+    entries = load();
+    return true;
+  }
+
+  private Entries load() {
+    Entries loaded = new Entries();
+    for (MenuEntity menuEntity : menuRepository.findAll()) {
+      loaded.putMenu(menuEntity.getId(), menuEntity.getRestaurantId(),
+          keysOf(menuEntity.getItems()));
+    }
+    for (RestaurantEntity restaurantEntity : restaurantRepository.findAll()) {
+      loaded.moveRestaurant(restaurantEntity.getRestaurantId(),
+          locationOf(restaurantEntity.getLatitude(), restaurantEntity.getLongitude()));
+    }
+    return loaded;
+  }
+
+  private static Set<String> keysOf(List<Item> items) {
+    Set<String> keys = new HashSet<>();
+    for (Item item : items == null ? Collections.<Item>emptyList() : items) {
+      for (String token : RestaurantSearchIndex.tokenize(item.getName())) {
+        keys.add(key(Field.ITEM_NAME, token));
+      }
+      for (String attribute : item.getAttributes() == null
+          ? Collections.<String>emptyList() : item.getAttributes()) {
+        for (String token : RestaurantSearchIndex.tokenize(attribute)) {
+          keys.add(key(Field.ITEM_ATTRIBUTE, token));
+        }
+      }
+    }
+    return keys;
+  }
+
+  private static Location locationOf(Double latitude, Double longitude) {
+    return latitude == null || longitude == null ? null : Location.of(latitude, longitude);
+  }
+
+  private static String key(Field field, String token) {
+    return field.name() + ":" + token;
+  }
+
+  /**
+   * Coordinates of a restaurant.
+   */
+  @Value(staticConstructor = "of")
+  static class Location {
+
+    double latitude;
+    double longitude;
+  }
+
+  // Entries of the view, changed by one writer at a time while searches read them.
+  private static class Entries {
+
+    // Restaurants with a location, by key.
+    private final Map<String, Map<String, Location>> restaurantsByKey = new ConcurrentHashMap<>();
+    // Keys of every restaurant with a menu, located or not.
+    private final Map<String, Set<String>> keysByRestaurantId = new ConcurrentHashMap<>();
+    private final Map<String, Location> locations = new HashMap<>();
+    private final Map<String, String> restaurantIdsByMenuId = new HashMap<>();
+
+    void putMenu(String menuId, String restaurantId, Set<String> keys) {
+      String previousRestaurantId = restaurantIdsByMenuId.put(menuId, restaurantId);
+      if (previousRestaurantId != null && !previousRestaurantId.equals(restaurantId)) {
+        putKeys(previousRestaurantId, Collections.emptySet());
+      }
+      putKeys(restaurantId, keys);
+    }
+
+    void removeMenu(String menuId) {
+      String restaurantId = restaurantIdsByMenuId.remove(menuId);
+      if (restaurantId != null) {
+        putKeys(restaurantId, Collections.emptySet());
+      }
+    }
+
+    void moveRestaurant(String restaurantId, Location location) {
+      if (location == null) {
+        locations.remove(restaurantId);
+      } else {
+        locations.put(restaurantId, location);
+      }
+      Set<String> keys = keysByRestaurantId.getOrDefault(restaurantId, Collections.emptySet());
+      update(restaurantId, keys, keys);
+    }
+
+    private void putKeys(String restaurantId, Set<String> keys) {
+      Set<String> previousKeys =
+          keysByRestaurantId.getOrDefault(restaurantId, Collections.emptySet());
+      if (keys.isEmpty()) {
+        keysByRestaurantId.remove(restaurantId);
+      } else {
+        keysByRestaurantId.put(restaurantId, Collections.unmodifiableSet(keys));
+      }
+      update(restaurantId, previousKeys, keys);
+    }
+
+    // Removes the restaurant from the previous keys, and adds it to the current ones if located.
+    private void update(String restaurantId, Collection<String> previousKeys,
+        Collection<String> keys) {
+      for (String key : previousKeys) {
+        restaurantsByKey.computeIfPresent(key, (ignored, restaurants) -> {
+          restaurants.remove(restaurantId);
+          return restaurants.isEmpty() ? null : restaurants;
+        });
+      }
+      Location location = locations.get(restaurantId);
+      if (location != null) {
+        for (String key : keys) {
+          restaurantsByKey.computeIfAbsent(key, ignored -> new ConcurrentHashMap<>())
+              .put(restaurantId, location);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.GeoUtils;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.inject.Provider;
+import lombok.extern.log4j.Log4j2;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Pushes the radius filter into MongoDB with a {@code $nearSphere} query on the GeoJSON
+ * {@code location} of each restaurant, backed by a 2dsphere index.
+ *
+ * <p>The location is set from the latitude and longitude whenever the application saves a
+ * restaurant, and restaurants written to the database some other way are brought in line by
+ * {@link #backfillLocations}.
+ */
+@Log4j2
+@Service
+@ConditionalOnProperty(name = "qeats.nearby.backend", havingValue = "mongo")
+public class MongoGeoNearbyRestaurantsFinder extends AbstractMongoEventListener<RestaurantEntity>
+    implements NearbyRestaurantsFinder {
+
+  private static final String LOCATION_FIELD = "location";
+
+  // Mongo measures spherical distances with a slightly larger earth radius than our Haversine
+  // implementation, so ask for a little more and apply the exact radius check here.
+  private static final double SEARCH_RADIUS_SLACK = 1.01;
+
+  @Autowired
+  private MongoTemplate mongoTemplate;
+
+  @Autowired
+  private Provider<ModelMapper> modelMapperProvider;
+
+  /**
+   * Creates the 2dsphere index on restaurants.location if it is not there yet.
+   */
+  @PostConstruct
+  public void ensureIndex() {
+    mongoTemplate.indexOps(RestaurantEntity.class).ensureIndex(
+        new GeospatialIndex(LOCATION_FIELD).typed(GeoSpatialIndexType.GEO_2DSPHERE));
+    backfillLocations();
+  }
+
+  @Override
+  public void onBeforeConvert(BeforeConvertEvent<RestaurantEntity> event) {
+    RestaurantEntity restaurantEntity = event.getSource();
+    restaurantEntity.setLocation(locationOf(restaurantEntity));
+  }
+
+  /**
+   * Restaurants are loaded into the database with plain latitude/longitude fields, and may be
+   * moved by updating just those. Copy them into the GeoJSON point of every document whose point
+   * is missing or differs from them, so it is found by the 2dsphere index where it now is.
+   */
+  @Scheduled(initialDelayString = "${qeats.nearby.mongo.backfill-interval-ms:300000}",
+      fixedDelayString = "${qeats.nearby.mongo.backfill-interval-ms:300000}")
+  public void backfillLocations() {
+    Query query = new Query();
+    query.fields().include("latitude").include("longitude").include(LOCATION_FIELD);
+
+    BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.UNORDERED,
+        RestaurantEntity.class);
+    int updates = 0;
+    try (CloseableIterator<RestaurantEntity> restaurantEntities = mongoTemplate.stream(query,
+        RestaurantEntity.class)) {
+      while (restaurantEntities.hasNext()) {
+        RestaurantEntity restaurantEntity = restaurantEntities.next();
+        GeoJsonPoint location = locationOf(restaurantEntity);
+        if (location == null || location.equals(restaurantEntity.getLocation())) {
+          continue;
+        }
+        bulkOperations.updateOne(Query.query(Criteria.where("_id").is(restaurantEntity.getId())),
+            Update.update(LOCATION_FIELD, location));
+        updates++;
+      }
+    }
+
+    if (updates > 0) {
+      bulkOperations.execute();
+      log.info("Updated the GeoJSON location of {} restaurants", updates);
+    }
+  }
+
+  // Null if the restaurant has no coordinates.
+  private static GeoJsonPoint locationOf(RestaurantEntity restaurantEntity) {
+    if (restaurantEntity.getLatitude() == null || restaurantEntity.getLongitude() == null) {
+      return null;
+    }
+    return new GeoJsonPoint(restaurantEntity.getLongitude(), restaurantEntity.getLatitude());
+  }
+
+  @Override
+  public List<Restaurant> findOpenRestaurantsCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms) {
+    List<Restaurant> restaurants = new ArrayList<Restaurant>();
+    forEachOpenRestaurantCloseBy(latitude, longitude, currentTime, servingRadiusInKms,
+        restaurants::add);
+    return restaurants;
+  }
+
+  @Override
+  public List<Restaurant> findRestaurantsCloseBy(Double latitude, Double longitude,
+      Double radiusInKms) {
+    ModelMapper modelMapper = modelMapperProvider.get();
+    List<Restaurant> restaurants = new ArrayList<Restaurant>();
+    for (RestaurantEntity restaurantEntity : mongoTemplate.find(nearQuery(latitude, longitude,
+        radiusInKms), RestaurantEntity.class)) {
+      if (GeoUtils.findDistanceInKm(latitude, longitude, restaurantEntity.getLatitude(),
+          restaurantEntity.getLongitude()) < radiusInKms) {
+        restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
+      }
+    }
+    return restaurants;
+  }
+
+  /**
+   * Streams the query results off the cursor, so restaurants reach the action while later
+   * batches are still being read.
+   */
+  @Override
+  public void forEachOpenRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> action) {
+    ModelMapper modelMapper = modelMapperProvider.get();
+    try (CloseableIterator<RestaurantEntity> restaurantEntities = mongoTemplate.stream(
+        nearQuery(latitude, longitude, servingRadiusInKms), RestaurantEntity.class)) {
+      while (restaurantEntities.hasNext()) {
+        RestaurantEntity restaurantEntity = restaurantEntities.next();
+        if (RestaurantRepositoryServiceImpl.isOpenNow(currentTime, restaurantEntity)
+            && GeoUtils.findDistanceInKm(latitude, longitude, restaurantEntity.getLatitude(),
+                restaurantEntity.getLongitude()) < servingRadiusInKms) {
+          action.accept(modelMapper.map(restaurantEntity, Restaurant.class));
+        }
+      }
+    }
+  }
+
+  private static Query nearQuery(Double latitude, Double longitude, Double radiusInKms) {
+    return new Query(Criteria.where(LOCATION_FIELD)
+        .nearSphere(new GeoJsonPoint(longitude, latitude))
+        .maxDistance(radiusInKms * 1000 * SEARCH_RADIUS_SLACK));
+  }
+
+}
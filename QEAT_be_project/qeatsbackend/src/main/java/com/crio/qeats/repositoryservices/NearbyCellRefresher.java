@@ -0,0 +1,108 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the background refreshes of stale cells of the {@link NearbyRestaurantsCache}.
+ *
+ * <p>Refreshes run on {@code qeats.nearby.cache.refresh.threads} daemon threads, with up to
+ * {@code qeats.nearby.cache.refresh.queue-size} of them queued. At most one refresh per cell is
+ * queued or running at a time, and refreshes that do not fit in the queue are dropped, so a later
+ * read queues them again. Queued and rejected refreshes are published to Micrometer.
+ */
+@Log4j2
+@Component
+public class NearbyCellRefresher {
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${qeats.nearby.cache.refresh.threads:2}")
+  private int refreshThreads;
+
+  @Value("${qeats.nearby.cache.refresh.queue-size:100}")
+  private int refreshQueueSize;
+
+  private final Set<String> refreshesInFlight = ConcurrentHashMap.newKeySet();
+  private ExecutorService refreshExecutor;
+  private Counter refreshes;
+  private Counter refreshesRejected;
+
+  /**
+   * Creates the executor and registers the metrics.
+   */
+  @PostConstruct
+  public void initExecutor() {
+    AtomicInteger threadNumber = new AtomicInteger();
+    refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0,
+        TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(refreshQueueSize), runnable -> {
+          Thread thread = new Thread(runnable,
+              "nearby-cache-refresh-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    refreshes = meterRegistry.counter("qeats.nearby.cache.refreshes", "result", "queued");
+    refreshesRejected = meterRegistry.counter("qeats.nearby.cache.refreshes",
+        "result", "rejected");
+  }
+
+  /**
+   * Stops the background refreshes.
+   */
+  @PreDestroy
+  public void shutdownRefreshes() {
+    refreshExecutor.shutdownNow();
+  }
+
+  /**
+   * Queue a refresh of the cell with the given geohash, unless one is already queued or running
+   * for it or the queue is full. Refreshes that fail are logged.
+   */
+  public void refresh(String key, Runnable refresh) {
+    if (!refreshesInFlight.add(key)) {
+      return;
+    }
+    try {
+      refreshExecutor.execute(() -> {
+        try {
+          refresh.run();
+        } catch (RuntimeException e) {
+          log.warn("Unable to refresh nearby restaurants of cell {}", key, e);
+        } finally {
+          refreshesInFlight.remove(key);
+        }
+      });
+      refreshes.increment();
+    } catch (RejectedExecutionException e) {
+      // Too many refreshes queued; a later read will try again.
+      refreshesInFlight.remove(key);
+      refreshesRejected.increment();
+    }
+  }
+
+  // Number of cells with a refresh queued or running.
+  int refreshesInFlight() {
+    return refreshesInFlight.size();
+  }
+}
@@ -0,0 +1,444 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import com.crio.qeats.cache.SingleFlight;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.globals.GlobalConstants;
+import com.crio.qeats.utils.GeoUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Two level cache of nearby restaurants, one entry per precision 7 geohash cell: a bounded
+ * in-process cache in front of Redis.
+ *
+ * <p>An entry holds every restaurant within reach of any point of its cell, open or not, along
+ * with their opening hours in minutes of the day. The open-now and exact radius filters run on
+ * every read against the location and time of the request, so one entry answers requests from
+ * anywhere in the cell, at any time of the day and for any serving radius it was built for.
+ *
+ * <p>Entries of neighbouring cells overlap almost entirely, so Redis does not store them.
+ * It stores the restaurants located in each storage cell, a geohash cell of
+ * {@code qeats.nearby.cache.storage-precision} characters, laid out by the
+ * {@link RestaurantCellStore}, and an entry is assembled from the storage cells its circle
+ * overlaps. The missing ones are loaded with a single finder query around them and written back
+ * in one pipeline. A storage cell with a restaurant missing in Redis counts as missing.
+ * Restaurants of an entry are ordered by restaurant id.
+ *
+ * <p>Storage cells have a soft and a hard TTL. Redis drops a storage cell and its restaurants
+ * after the hard TTL, {@link GlobalConstants#REDIS_ENTRY_EXPIRY_IN_SECONDS}. Once the soft TTL
+ * of one of its storage cells has passed, an entry is still served, and the first read after
+ * that queues a reload of its stale storage cells on the {@link NearbyCellRefresher}, which
+ * then replaces the entry. Cells that keep being read are refreshed in the background before they
+ * expire, and cells nobody reads are left to expire. Both TTLs are shortened by a random
+ * fraction, up to {@code qeats.nearby.cache.ttl-jitter}, so storage cells loaded together do not
+ * all expire together.
+ *
+ * <p>Local entries expire a fixed time after they were assembled. That TTL is capped at the hard
+ * TTL, and an entry served locally is at most the Redis expiry plus the local TTL old. Entries
+ * overlapping restaurants that another instance saw change are dropped sooner, as soon as a
+ * {@link RestaurantsInvalidatedEvent} lists them.
+ * Once the local cache is 90% full, only cells with at least
+ * {@code qeats.nearby.cache.local.admission-min-lookups} lookups counted by the
+ * {@link AccessFrequencyTracker} are added to it. Hits and misses of the local cache and of the
+ * storage cells in Redis are published to Micrometer.
+ *
+ * <p>Misses are coalesced by a {@link SingleFlight}: concurrent requests for a cell that is not
+ * cached locally wait for a single load instead of each going to Redis and the finder. Across
+ * instances, storage cells missing in Redis can be loaded under {@link StorageCellLeases}, so only
+ * one instance loads a storage cell.
+ */
+@Log4j2
+@Component
+public class NearbyRestaurantsCache {
+
+  public static final int GEOHASH_PRECISION = 7;
+
+
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+
+  @Autowired
+  private NearbyRestaurantsFinder nearbyRestaurantsFinder;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private RestaurantCellStore restaurantCellStore;
+
+  @Autowired
+  private StorageCellLeases storageCellLeases;
+
+  @Autowired
+  private NearbyCellRefresher nearbyCellRefresher;
+
+  @Autowired
+  private AccessFrequencyTracker accessFrequencyTracker;
+
+  @Value("${qeats.nearby.cache.max-serving-radius-km:5.0}")
+  private double maxServingRadiusInKms;
+
+  @Value("${qeats.nearby.cache.local.maximum-size:10000}")
+  private long localMaximumSize;
+
+  @Value("${qeats.nearby.cache.local.ttl-seconds:60}")
+  private long localTtlInSeconds;
+
+  @Value("${qeats.nearby.cache.local.admission-min-lookups:2}")
+  private long admissionMinLookups;
+
+  @Value("${qeats.nearby.cache.soft-ttl-seconds:600}")
+  private long softTtlInSeconds;
+
+  @Value("${qeats.nearby.cache.ttl-jitter:0.1}")
+  private double ttlJitter;
+
+  private final SingleFlight<String, RestaurantCell> loads = new SingleFlight<>();
+  private Cache<String, RestaurantCell> localCache;
+  private Counter redisHits;
+  private Counter redisMisses;
+  private Counter coalescedLoads;
+  private Counter localRejections;
+  // Bumped on every invalidation, so entries assembled before one are not put back.
+  private final AtomicLong localGeneration = new AtomicLong();
+
+  /**
+   * Creates the local cache and registers the metrics of both levels.
+   */
+  @PostConstruct
+  public void initLocalCache() {
+    long ttlInSeconds = Math.min(localTtlInSeconds,
+        GlobalConstants.REDIS_ENTRY_EXPIRY_IN_SECONDS);
+    localCache = CacheBuilder.newBuilder()
+        .maximumSize(localMaximumSize)
+        .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+    GuavaCacheMetrics.monitor(meterRegistry, localCache, "qeats.nearby.cache.local");
+    localRejections = meterRegistry.counter("qeats.nearby.cache.local.rejections");
+    redisHits = meterRegistry.counter("qeats.nearby.cache.redis", "result", "hit");
+    redisMisses = meterRegistry.counter("qeats.nearby.cache.redis", "result", "miss");
+    coalescedLoads = meterRegistry.counter("qeats.nearby.cache.coalesced");
+  }
+
+  /**
+   * Drop every entry of the local cache; Redis is left alone.
+   */
+  public void invalidateLocal() {
+    localGeneration.incrementAndGet();
+    localCache.invalidateAll();
+  }
+
+  /**
+   * Drop the local entries once restaurants changed, and update the listed restaurants in Redis.
+   */
+  @EventListener
+  public void onRestaurantsChanged(RestaurantsChangedEvent event) {
+    invalidateLocal();
+    if (!event.isListed() || !redisConfiguration.isCacheAvailable()) {
+      return;
+    }
+    try {
+      redisConfiguration.execute(jedis -> {
+        restaurantCellStore.updateRestaurants(jedis, event.getPreviousRestaurants(),
+            event.getCurrentRestaurants());
+        return null;
+      });
+    } catch (JedisException e) {
+      // The storage cells expire on their own.
+      log.warn("Unable to update changed restaurants in the nearby restaurants cache", e);
+    }
+  }
+
+  /**
+   * Drop the local entries assembled from the storage cells of restaurants another instance saw
+   * change, or every local entry if they are not listed. Redis was updated by that instance.
+   */
+  @EventListener
+  public void onRestaurantsInvalidated(RestaurantsInvalidatedEvent event) {
+    int storagePrecision = restaurantCellStore.getStoragePrecision();
+    if (!event.isListed() || storagePrecision > GEOHASH_PRECISION) {
+      invalidateLocal();
+      return;
+    }
+    Set<String> restaurantIds = new HashSet<>(event.getRestaurantIds());
+    Set<String> storageKeys = event.getGeoHashes().stream()
+        .map(geoHash -> geoHash.substring(0, storagePrecision))
+        .collect(Collectors.toSet());
+    localGeneration.incrementAndGet();
+    localCache.asMap().entrySet().removeIf(entry -> {
+      RestaurantCell cell = entry.getValue();
+      if (cell.getRestaurants().stream()
+          .anyMatch(restaurant -> restaurantIds.contains(restaurant.getRestaurantId()))) {
+        return true;
+      }
+      WGS84Point center = GeoHash.fromGeohashString(entry.getKey()).getBoundingBoxCenterPoint();
+      return GeoUtils.findCoveringGeoHashes(center.getLatitude(), center.getLongitude(),
+          cell.getRadiusInKms(), storagePrecision).stream().anyMatch(storageKeys::contains);
+    });
+  }
+
+  /**
+   * Get the list of open restaurants within the specified serving radius, loading the cell of
+   * the location from the finder on a miss.
+   * @return list of open restaurants within the specified radius, in the order of the finder
+   */
+  public List<Restaurant> findOpenRestaurantsCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms) {
+    return findCell(latitude, longitude, servingRadiusInKms)
+        .findOpenRestaurantsCloseBy(latitude, longitude, currentTime, servingRadiusInKms);
+  }
+
+  /**
+   * Get the cached candidates of the cell of a location, loading them from the finder on a miss.
+   * Concurrent misses on the same cell share one load. The cell is shared and must not be
+   * modified.
+   * @param servingRadiusInKms largest serving radius the candidates have to cover
+   */
+  public RestaurantCell findCell(Double latitude, Double longitude, Double servingRadiusInKms) {
+    GeoHash geoHash = GeoHash.withCharacterPrecision(latitude, longitude, GEOHASH_PRECISION);
+    String key = geoHash.toBase32();
+    double radiusInKms = candidateRadius(geoHash, servingRadiusInKms);
+
+    RestaurantCell cell = localCache.getIfPresent(key);
+    if (covers(cell, radiusInKms)) {
+      refreshIfStale(geoHash, cell);
+      return cell;
+    }
+
+    boolean[] shared = {false};
+    cell = loads.execute(key, () -> fetch(geoHash, servingRadiusInKms), () -> {
+      shared[0] = true;
+      coalescedLoads.increment();
+    });
+    if (shared[0] && !covers(cell, radiusInKms)) {
+      // The load in flight was for a smaller serving radius.
+      return fetch(geoHash, servingRadiusInKms);
+    }
+    return cell;
+  }
+
+  /**
+   * Make sure the cell with the given geohash is cached for the serving radius and none of its
+   * storage cells will be stale at the given time, loading them from the finder otherwise.
+   * @return true if storage cells had to be loaded
+   */
+  public boolean warmCell(String key, Double servingRadiusInKms, long freshUntilInMillis) {
+    boolean[] loaded = {false};
+    long generation = localGeneration.get();
+    RestaurantCell cell = assemble(GeoHash.fromGeohashString(key), servingRadiusInKms,
+        freshUntilInMillis, loaded);
+    putLocal(key, cell, generation, true);
+    return loaded[0];
+  }
+
+  private RestaurantCell fetch(GeoHash geoHash, double servingRadiusInKms) {
+    long generation = localGeneration.get();
+    RestaurantCell cell = assemble(geoHash, servingRadiusInKms, Long.MIN_VALUE, new boolean[1]);
+    putLocal(geoHash.toBase32(), cell, generation, true);
+    refreshIfStale(geoHash, cell);
+    return cell;
+  }
+
+  // Keeps cells that are rarely looked up out of a nearly full local cache, so they do not evict
+  // hot ones; they are still served from Redis.
+  private void putLocal(String key, RestaurantCell cell, long generation, boolean admit) {
+    if (localGeneration.get() != generation) {
+      return;
+    }
+    if (!admit || localCache.size() < localMaximumSize * 9 / 10
+        || accessFrequencyTracker.estimateCellLookups(key) >= admissionMinLookups) {
+      localCache.put(key, cell);
+    } else {
+      localRejections.increment();
+    }
+  }
+
+  // Reads the storage cells overlapping the circle of the cell, loads those missing or stale at
+  // the given time and merges them into the entry of the cell.
+  private RestaurantCell assemble(GeoHash geoHash, double servingRadiusInKms,
+      long freshUntilInMillis, boolean[] loaded) {
+    WGS84Point center = geoHash.getBoundingBoxCenterPoint();
+    double radiusInKms = candidateRadius(geoHash,
+        Math.max(servingRadiusInKms, maxServingRadiusInKms));
+    List<String> keys = GeoUtils.findCoveringGeoHashes(center.getLatitude(),
+        center.getLongitude(), radiusInKms, restaurantCellStore.getStoragePrecision());
+
+    Map<String, RestaurantCell> cells = redisConfiguration.execute(jedis -> {
+      Map<String, RestaurantCell> stored = restaurantCellStore.readAll(jedis, keys);
+      redisHits.increment(stored.size());
+      redisMisses.increment(keys.size() - stored.size());
+      List<String> expired = keys.stream()
+          .filter(key -> !stored.containsKey(key)
+              || stored.get(key).getRefreshAt() <= freshUntilInMillis)
+          .collect(Collectors.toList());
+      if (!expired.isEmpty()) {
+        loaded[0] = true;
+        stored.putAll(storageCellLeases.isEnabled()
+            ? storageCellLeases.loadUnderLease(jedis, expired, stored,
+                keysToLoad -> loadAndStore(jedis, keysToLoad))
+            : loadAndStore(jedis, expired));
+      }
+      return stored;
+    });
+    return merge(center, radiusInKms, keys, cells);
+  }
+
+  private Map<String, RestaurantCell> loadAndStore(Jedis jedis, Collection<String> keys) {
+    Map<String, RestaurantCell> cells = load(keys);
+    restaurantCellStore.storeAll(jedis, cells);
+    return cells;
+  }
+
+  // Queues a reload of the stale storage cells of an entry, unless Redis is degraded.
+  private void refreshIfStale(GeoHash geoHash, RestaurantCell cell) {
+    if (System.currentTimeMillis() < cell.getRefreshAt()
+        || !redisConfiguration.isCacheAvailable()) {
+      return;
+    }
+    double servingRadiusInKms = cell.getRadiusInKms() - halfDiagonal(geoHash);
+    nearbyCellRefresher.refresh(geoHash.toBase32(), () -> refresh(geoHash, servingRadiusInKms));
+  }
+
+  private void refresh(GeoHash geoHash, double servingRadiusInKms) {
+    long generation = localGeneration.get();
+    RestaurantCell cell = assemble(geoHash, servingRadiusInKms, System.currentTimeMillis(),
+        new boolean[1]);
+    // The entry was read before, so it is replaced without admission.
+    putLocal(geoHash.toBase32(), cell, generation, false);
+  }
+
+  // Shortens a TTL by a random fraction of up to the configured jitter.
+  private long jittered(long ttl) {
+    return Math.round(ttl * (1 - ttlJitter * ThreadLocalRandom.current().nextDouble()));
+  }
+
+  private static boolean covers(RestaurantCell cell, double radiusInKms) {
+    return cell != null && cell.getRadiusInKms() >= radiusInKms;
+  }
+
+  // Loads storage cells with one finder query around all of them, then sorts the restaurants
+  // found into the storage cells they are located in.
+  private Map<String, RestaurantCell> load(Collection<String> keys) {
+    BoundingBox boundingBox = null;
+    Map<String, List<Restaurant>> restaurantsByKey = new HashMap<>();
+    for (String key : keys) {
+      BoundingBox cellBoundingBox = GeoHash.fromGeohashString(key).getBoundingBox();
+      if (boundingBox == null) {
+        boundingBox = new BoundingBox(cellBoundingBox);
+      } else {
+        boundingBox.expandToInclude(cellBoundingBox);
+      }
+      restaurantsByKey.put(key, new ArrayList<>());
+    }
+    WGS84Point center = boundingBox.getCenterPoint();
+    for (Restaurant restaurant : nearbyRestaurantsFinder.findRestaurantsCloseBy(
+        center.getLatitude(), center.getLongitude(), farthestCorner(center, boundingBox))) {
+      List<Restaurant> restaurants = restaurantsByKey.get(
+          restaurantCellStore.storageKey(restaurant));
+      if (restaurants != null) {
+        restaurants.add(restaurant);
+      }
+    }
+
+    Map<String, RestaurantCell> cells = new HashMap<>();
+    restaurantsByKey.forEach((key, restaurants) -> cells.put(key, RestaurantCell.ofStorageCell(
+        restaurants,
+        System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(jittered(softTtlInSeconds)))));
+    return cells;
+  }
+
+  // Merges storage cells into the candidates within the radius of the center, ordered by
+  // restaurant id so the order does not depend on how the circle splits into storage cells.
+  private static RestaurantCell merge(WGS84Point center, double radiusInKms, List<String> keys,
+      Map<String, RestaurantCell> cells) {
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(center.getLatitude(),
+        center.getLongitude(), radiusInKms);
+    List<RestaurantCell> parts = new ArrayList<>();
+    // Restaurant id to the storage cell and index of the restaurant in it.
+    SortedMap<String, int[]> candidates = new TreeMap<>();
+    long refreshAt = Long.MAX_VALUE;
+    for (String key : keys) {
+      RestaurantCell part = cells.get(key);
+      parts.add(part);
+      refreshAt = Math.min(refreshAt, part.getRefreshAt());
+      for (int i = 0; i < part.getRestaurants().size(); i++) {
+        Restaurant restaurant = part.getRestaurants().get(i);
+        if (radiusFilter.contains(restaurant.getLatitude(), restaurant.getLongitude())) {
+          // A restaurant that moved stays in its old storage cell until that one is reloaded.
+          candidates.putIfAbsent(restaurant.getRestaurantId(), new int[] {parts.size() - 1, i});
+        }
+      }
+    }
+
+    List<Restaurant> restaurants = new ArrayList<>(candidates.size());
+    int[] opensAt = new int[candidates.size()];
+    int[] closesAt = new int[candidates.size()];
+    for (int[] candidate : candidates.values()) {
+      RestaurantCell part = parts.get(candidate[0]);
+      opensAt[restaurants.size()] = part.getOpensAt()[candidate[1]];
+      closesAt[restaurants.size()] = part.getClosesAt()[candidate[1]];
+      restaurants.add(part.getRestaurants().get(candidate[1]));
+    }
+    RestaurantCell cell = new RestaurantCell(radiusInKms, restaurants, opensAt, closesAt);
+    cell.setRefreshAt(refreshAt);
+    return cell;
+  }
+
+  /**
+   * Radius around the center of the cell that covers the serving circle of every point in it.
+   */
+  public static double candidateRadius(GeoHash geoHash, double servingRadiusInKms) {
+    return servingRadiusInKms + halfDiagonal(geoHash);
+  }
+
+  private static double halfDiagonal(GeoHash geoHash) {
+    return farthestCorner(geoHash.getBoundingBoxCenterPoint(), geoHash.getBoundingBox());
+  }
+
+  private static double farthestCorner(WGS84Point center, BoundingBox boundingBox) {
+    double distanceInKms = 0;
+    for (double latitude : new double[] {boundingBox.getMinLat(), boundingBox.getMaxLat()}) {
+      for (double longitude : new double[] {boundingBox.getMinLon(), boundingBox.getMaxLon()}) {
+        distanceInKms = Math.max(distanceInKms, GeoUtils.findDistanceInKm(
+            center.getLatitude(), center.getLongitude(), latitude, longitude));
+      }
+    }
+    return distanceInKms;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.utils.NearestRestaurants;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Backend used by {@link RestaurantRepositoryServiceImpl} to look up nearby restaurants in the
+ * primary data store. Exactly one implementation is active, chosen by the
+ * {@code qeats.nearby.backend} property.
+ */
+public interface NearbyRestaurantsFinder {
+
+  /**
+   * Get the list of open restaurants within the specified serving radius.
+   * @param latitude coordinates near which we have to search for restaurant
+   * @param longitude coordinates near which we have to search for restaurant
+   * @param currentTime current time
+   * @param servingRadiusInKms serving radius
+   * @return list of open restaurants within the specified radius or
+   *     empty list if there is none
+   */
+  List<Restaurant> findOpenRestaurantsCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms);
+
+  /**
+   * Get the list of restaurants within the specified radius, whether they are open or not.
+   * @param latitude coordinates near which we have to search for restaurant
+   * @param longitude coordinates near which we have to search for restaurant
+   * @param radiusInKms search radius
+   * @return list of restaurants within the specified radius or empty list if there is none
+   */
+  List<Restaurant> findRestaurantsCloseBy(Double latitude, Double longitude, Double radiusInKms);
+
+  /**
+   * Same criteria as {@link #findOpenRestaurantsCloseBy}, but hands each restaurant to the action
+   * as soon as it is found. Backends that produce restaurants incrementally should override this.
+   * @param action called with every matching restaurant
+   */
+  default void forEachOpenRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> action) {
+    findOpenRestaurantsCloseBy(latitude, longitude, currentTime, servingRadiusInKms)
+        .forEach(action);
+  }
+
+  /**
+   * Collect one page of the open restaurants within the specified serving radius, closest first.
+   * Backends that can skip restaurants outside the page before building them should override
+   * this.
+   * @param nearestRestaurants page to add the restaurants to, along with their distance
+   */
+  default void findNearestOpenRestaurants(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, NearestRestaurants nearestRestaurants) {
+    nearestRestaurants.offerAll(latitude, longitude,
+        findOpenRestaurantsCloseBy(latitude, longitude, currentTime, servingRadiusInKms));
+  }
+
+}
@@ -0,0 +1,386 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import com.crio.qeats.cache.CacheCodec;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.utils.GeoUtils;
+import com.crio.qeats.utils.OpeningHours;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import javax.inject.Provider;
+import lombok.extern.log4j.Log4j2;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Keeps the coordinates of every restaurant in a Redis geo index, a sorted set scored like
+ * GEOADD does, with the restaurants themselves in a hash next to it.
+ *
+ * <p>A lookup reads the score ranges of the few geohash cells, at least as large as the radius,
+ * around the location, just like GEORADIUS. The cells are read with ZRANGEBYSCORE instead, so the
+ * index also works on Redis versions older than 3.2, which have no geo commands, and the
+ * restaurants within the radius are read with a single HMGET. Opening hours are checked here.
+ *
+ * <p>The index is loaded from the restaurants collection at startup. It is then kept in sync
+ * every {@code qeats.nearby.redis-geo.sync-interval-ms} by writing only the restaurants that
+ * changed since the previous sync, and a {@link RestaurantsChangedEvent} lists them. Lookups
+ * scan the collection while the index is not loaded or Redis is not available.
+ */
+@Log4j2
+@Service
+@ConditionalOnProperty(name = "qeats.nearby.backend", havingValue = "redis-geo")
+public class RedisGeoNearbyRestaurantsFinder implements NearbyRestaurantsFinder {
+
+  static final String GEO_KEY = "geo:restaurants";
+  static final String DETAILS_KEY = "geo:restaurants:details";
+
+  // Range and precision of the scores of GEOADD, 26 bits per coordinate.
+  private static final double MIN_LATITUDE = -85.05112878;
+  private static final double MAX_LATITUDE = 85.05112878;
+  private static final int MAX_STEP = 26;
+  private static final double KMS_PER_DEGREE = 111.195;
+  // Scores locate restaurants to within a meter, so candidates are kept on their score with this
+  // much slack and checked against their exact coordinates.
+  private static final double SCORE_SLACK_IN_KMS = 0.001;
+
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private Provider<ModelMapper> modelMapperProvider;
+
+  @Autowired
+  private CacheCodec cacheCodec;
+
+  @Autowired
+  private ApplicationEventPublisher applicationEventPublisher;
+
+  private Map<String, Restaurant> restaurantsById;
+  private volatile boolean loaded;
+
+  /**
+   * Load the index at startup; lookups scan the collection if Redis is not there yet.
+   */
+  @PostConstruct
+  public void loadIndex() {
+    try {
+      syncIndex();
+    } catch (JedisException e) {
+      log.warn("Unable to load the Redis geo index of restaurants", e);
+    }
+  }
+
+  /**
+   * Write the restaurants that changed since the previous sync to the index, and publish a
+   * {@link RestaurantsChangedEvent} listing them. Everything is written again if the index does
+   * not hold as many restaurants as it should, e.g. after Redis lost its data.
+   */
+  @Scheduled(initialDelayString = "${qeats.nearby.redis-geo.sync-interval-ms:300000}",
+      fixedDelayString = "${qeats.nearby.redis-geo.sync-interval-ms:300000}")
+  public synchronized void syncIndex() {
+    long startTimeInMillis = System.currentTimeMillis();
+    ModelMapper modelMapper = modelMapperProvider.get();
+    Map<String, Restaurant> currentRestaurantsById = new HashMap<>();
+    for (RestaurantEntity restaurantEntity : restaurantRepository.findAll()) {
+      Restaurant restaurant = modelMapper.map(restaurantEntity, Restaurant.class);
+      if (isIndexable(restaurant)) {
+        currentRestaurantsById.put(restaurant.getRestaurantId(), restaurant);
+      }
+    }
+
+    Map<String, Restaurant> previousRestaurantsById = restaurantsById;
+    int writes = redisConfiguration.execute(jedis -> {
+      boolean complete = previousRestaurantsById != null
+          && jedis.zcard(GEO_KEY) == previousRestaurantsById.size();
+      Map<String, Restaurant> indexedById = complete ? new HashMap<>(previousRestaurantsById)
+          : findIndexed(jedis);
+
+      Pipeline pipeline = jedis.pipelined();
+      int written = 0;
+      for (Restaurant restaurant : currentRestaurantsById.values()) {
+        Restaurant indexed = indexedById.remove(restaurant.getRestaurantId());
+        if (!complete || !Objects.equals(indexed, restaurant)) {
+          pipeline.zadd(GEO_KEY, score(restaurant.getLatitude(), restaurant.getLongitude()),
+              restaurant.getRestaurantId());
+          pipeline.hset(utf8(DETAILS_KEY), utf8(restaurant.getRestaurantId()),
+              cacheCodec.encode(restaurant));
+          written++;
+        }
+      }
+      // Whatever is left was removed.
+      for (String restaurantId : indexedById.keySet()) {
+        pipeline.zrem(GEO_KEY, restaurantId);
+        pipeline.hdel(DETAILS_KEY, restaurantId);
+        written++;
+      }
+      pipeline.sync();
+      return written;
+    });
+    restaurantsById = currentRestaurantsById;
+    loaded = true;
+    log.info("Synced {} restaurants to the Redis geo index with {} writes in {} ms",
+        currentRestaurantsById.size(), writes, System.currentTimeMillis() - startTimeInMillis);
+    if (previousRestaurantsById != null) {
+      publishChanges(previousRestaurantsById, currentRestaurantsById);
+    }
+  }
+
+  private void publishChanges(Map<String, Restaurant> previousRestaurantsById,
+      Map<String, Restaurant> currentRestaurantsById) {
+    List<Restaurant> previousRestaurants = new ArrayList<>();
+    List<Restaurant> currentRestaurants = new ArrayList<>();
+    for (Restaurant restaurant : currentRestaurantsById.values()) {
+      Restaurant previous = previousRestaurantsById.get(restaurant.getRestaurantId());
+      if (!Objects.equals(previous, restaurant)) {
+        currentRestaurants.add(restaurant);
+        if (previous != null) {
+          previousRestaurants.add(previous);
+        }
+      }
+    }
+    for (Restaurant previous : previousRestaurantsById.values()) {
+      if (!currentRestaurantsById.containsKey(previous.getRestaurantId())) {
+        previousRestaurants.add(previous);
+      }
+    }
+    if (!previousRestaurants.isEmpty() || !currentRestaurants.isEmpty()) {
+      applicationEventPublisher.publishEvent(
+          new RestaurantsChangedEvent(this, previousRestaurants, currentRestaurants));
+    }
+  }
+
+  @Override
+  public List<Restaurant> findOpenRestaurantsCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms) {
+    List<Restaurant> openRestaurants = new ArrayList<>();
+    for (Restaurant restaurant : findRestaurantsCloseBy(latitude, longitude,
+        servingRadiusInKms)) {
+      if (OpeningHours.of(restaurant.getOpensAt(), restaurant.getClosesAt())
+          .isOpenAt(currentTime)) {
+        openRestaurants.add(restaurant);
+      }
+    }
+    return openRestaurants;
+  }
+
+  @Override
+  public List<Restaurant> findRestaurantsCloseBy(Double latitude, Double longitude,
+      Double radiusInKms) {
+    if (loaded && redisConfiguration.isCacheAvailable()) {
+      try {
+        return redisConfiguration.execute(jedis -> findIndexedCloseBy(jedis, latitude,
+            longitude, radiusInKms));
+      } catch (JedisException e) {
+        log.warn("Unable to read the Redis geo index of restaurants", e);
+      }
+    }
+    return scanCloseBy(latitude, longitude, radiusInKms);
+  }
+
+  private List<Restaurant> findIndexedCloseBy(Jedis jedis, double latitude, double longitude,
+      double radiusInKms) {
+    Pipeline pipeline = jedis.pipelined();
+    List<Response<Set<Tuple>>> ranges = new ArrayList<>();
+    for (long[] range : findScoreRanges(latitude, longitude, radiusInKms)) {
+      ranges.add(pipeline.zrangeByScoreWithScores(GEO_KEY, Long.toString(range[0]),
+          "(" + range[1]));
+    }
+    pipeline.sync();
+
+    GeoUtils.RadiusFilter candidateFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        radiusInKms + SCORE_SLACK_IN_KMS);
+    List<byte[]> candidateIds = new ArrayList<>();
+    for (Response<Set<Tuple>> range : ranges) {
+      for (Tuple tuple : range.get()) {
+        double[] coordinates = coordinates((long) tuple.getScore());
+        if (candidateFilter.contains(coordinates[0], coordinates[1])) {
+          candidateIds.add(tuple.getBinaryElement());
+        }
+      }
+    }
+    if (candidateIds.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        radiusInKms);
+    List<Restaurant> restaurants = new ArrayList<>();
+    for (byte[] bytes : jedis.hmget(utf8(DETAILS_KEY), candidateIds.toArray(new byte[0][]))) {
+      Restaurant restaurant = read(bytes);
+      if (restaurant != null
+          && radiusFilter.contains(restaurant.getLatitude(), restaurant.getLongitude())) {
+        restaurants.add(restaurant);
+      }
+    }
+    return restaurants;
+  }
+
+  private List<Restaurant> scanCloseBy(double latitude, double longitude, double radiusInKms) {
+    ModelMapper modelMapper = modelMapperProvider.get();
+    List<Restaurant> restaurants = new ArrayList<>();
+    for (RestaurantEntity restaurantEntity : restaurantRepository.findAll()) {
+      if (GeoUtils.findDistanceInKm(latitude, longitude, restaurantEntity.getLatitude(),
+          restaurantEntity.getLongitude()) < radiusInKms) {
+        restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
+      }
+    }
+    return restaurants;
+  }
+
+  // Restaurants in the index, by id; unreadable ones map to null.
+  private Map<String, Restaurant> findIndexed(Jedis jedis) {
+    Map<String, Restaurant> indexedById = new HashMap<>();
+    for (Map.Entry<byte[], byte[]> entry : jedis.hgetAll(utf8(DETAILS_KEY)).entrySet()) {
+      indexedById.put(new String(entry.getKey(), StandardCharsets.UTF_8),
+          read(entry.getValue()));
+    }
+    for (String restaurantId : jedis.zrange(GEO_KEY, 0, -1)) {
+      indexedById.putIfAbsent(restaurantId, null);
+    }
+    return indexedById;
+  }
+
+  private Restaurant read(byte[] bytes) {
+    if (bytes == null) {
+      return null;
+    }
+    try {
+      return cacheCodec.decode(bytes, Restaurant.class);
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable restaurant in the Redis geo index", e);
+      return null;
+    }
+  }
+
+  private static boolean isIndexable(Restaurant restaurant) {
+    if (restaurant.getRestaurantId() == null || restaurant.getLatitude() == null
+        || restaurant.getLongitude() == null
+        || Math.abs(restaurant.getLatitude()) > MAX_LATITUDE
+        || Math.abs(restaurant.getLongitude()) > 180) {
+      log.warn("Restaurant {} cannot be added to the Redis geo index",
+          restaurant.getRestaurantId());
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Score of a location in the index, the same as GEOADD gives it: its geohash with 26 bits per
+   * coordinate over the latitudes GEOADD accepts, with the longitude bits first.
+   */
+  static long score(double latitude, double longitude) {
+    return interleave(offset(latitude, MIN_LATITUDE, MAX_LATITUDE, MAX_STEP),
+        offset(longitude, -180, 180, MAX_STEP));
+  }
+
+  /**
+   * Score ranges, each from inclusive to exclusive, covering every location within the radius,
+   * from the cell of the location and its neighbours at the finest precision where cells are at
+   * least as high as the radius.
+   */
+  static List<long[]> findScoreRanges(double latitude, double longitude, double radiusInKms) {
+    int step = MAX_STEP;
+    while (step > 0
+        && (MAX_LATITUDE - MIN_LATITUDE) / (1L << step) * KMS_PER_DEGREE < radiusInKms) {
+      step--;
+    }
+    long cells = 1L << step;
+    double cellHeight = (MAX_LATITUDE - MIN_LATITUDE) / cells;
+    double cellWidth = 360.0 / cells;
+
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        radiusInKms);
+    long firstRow = Math.max(0,
+        (long) Math.floor((radiusFilter.getMinLatitude() - MIN_LATITUDE) / cellHeight));
+    long lastRow = Math.min(cells - 1,
+        (long) Math.floor((radiusFilter.getMaxLatitude() - MIN_LATITUDE) / cellHeight));
+    long firstColumn = (long) Math.floor(
+        (longitude - radiusFilter.getLongitudeDelta() + 180) / cellWidth);
+    long lastColumn = Math.min(firstColumn + cells - 1, (long) Math.floor(
+        (longitude + radiusFilter.getLongitudeDelta() + 180) / cellWidth));
+
+    List<Long> hashes = new ArrayList<>();
+    for (long row = firstRow; row <= lastRow; row++) {
+      for (long column = firstColumn; column <= lastColumn; column++) {
+        hashes.add(interleave(row, Math.floorMod(column, cells)));
+      }
+    }
+    hashes.sort(null);
+
+    int shift = 2 * (MAX_STEP - step);
+    List<long[]> ranges = new ArrayList<>();
+    for (long hash : hashes) {
+      long from = hash << shift;
+      long to = (hash + 1) << shift;
+      long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+      if (last != null && last[1] == from) {
+        last[1] = to;
+      } else {
+        ranges.add(new long[] {from, to});
+      }
+    }
+    return ranges;
+  }
+
+  // Center of the cell a score stands for, as latitude and longitude.
+  static double[] coordinates(long score) {
+    long latitudeBits = 0;
+    long longitudeBits = 0;
+    for (int i = 0; i < MAX_STEP; i++) {
+      latitudeBits |= ((score >>> (2 * i)) & 1) << i;
+      longitudeBits |= ((score >>> (2 * i + 1)) & 1) << i;
+    }
+    double cells = 1L << MAX_STEP;
+    return new double[] {
+        MIN_LATITUDE + (latitudeBits + 0.5) * (MAX_LATITUDE - MIN_LATITUDE) / cells,
+        -180 + (longitudeBits + 0.5) * 360 / cells};
+  }
+
+  private static long offset(double value, double min, double max, int step) {
+    long cells = 1L << step;
+    return Math.min(cells - 1, (long) ((value - min) / (max - min) * cells));
+  }
+
+  // Latitude bits go to the even positions and longitude bits to the odd ones.
+  private static long interleave(long latitudeBits, long longitudeBits) {
+    long hash = 0;
+    for (int i = 0; i < MAX_STEP; i++) {
+      hash |= ((latitudeBits >>> i) & 1) << (2 * i);
+      hash |= ((longitudeBits >>> i) & 1) << (2 * i + 1);
+    }
+    return hash;
+  }
+
+  private static byte[] utf8(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+}
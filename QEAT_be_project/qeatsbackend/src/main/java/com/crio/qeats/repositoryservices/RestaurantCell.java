@@ -0,0 +1,252 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.utils.GeoUtils;
+import com.crio.qeats.utils.OpeningHours;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Cached candidates of a cell of the {@link NearbyRestaurantsCache}, or restaurants located in a
+ * storage cell, which have no radius. The opening hours of restaurants.get(i) are opensAt[i] and
+ * closesAt[i], in minutes of the day, or -1 if they could not be parsed. Cells are shared by
+ * readers of the local cache, so reads return copies of the restaurants. Cells are reloaded in
+ * the background once read after refreshAt, in epoch milliseconds.
+ *
+ * <p>A cell also keeps the candidates matching the searches made from it, so they live and die
+ * with the cell: they are dropped when the cell is invalidated, evicted or expires, and
+ * searched again after it was refreshed.
+ */
+@Data
+@NoArgsConstructor
+public class RestaurantCell {
+
+  // Opening or closing time of a restaurant whose opening hours could not be parsed.
+  static final int NOT_AVAILABLE = -1;
+
+  // Every restaurant within this distance of the center of the cell is a candidate.
+  private double radiusInKms;
+  private List<Restaurant> restaurants;
+  private int[] opensAt;
+  private int[] closesAt;
+  private long refreshAt;
+  // Candidates matching each search, as indexes into restaurants in the order of the search.
+  @Getter(AccessLevel.NONE)
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  private final ConcurrentMap<String, CompletableFuture<Matches>> matches =
+      new ConcurrentHashMap<>();
+
+  public RestaurantCell(double radiusInKms, List<Restaurant> restaurants, int[] opensAt,
+      int[] closesAt) {
+    this.radiusInKms = radiusInKms;
+    this.restaurants = restaurants;
+    this.opensAt = opensAt;
+    this.closesAt = closesAt;
+  }
+
+  /**
+   * Cell of the restaurants located in a storage cell, with their opening hours parsed.
+   */
+  public static RestaurantCell ofStorageCell(List<Restaurant> restaurants, long refreshAt) {
+    int[] opensAt = new int[restaurants.size()];
+    int[] closesAt = new int[restaurants.size()];
+    for (int i = 0; i < restaurants.size(); i++) {
+      OpeningHours openingHours = openingHoursOf(restaurants.get(i));
+      opensAt[i] = openingHours == null ? NOT_AVAILABLE : openingHours.getOpensAt();
+      closesAt[i] = openingHours == null ? NOT_AVAILABLE : openingHours.getClosesAt();
+    }
+    RestaurantCell cell = new RestaurantCell(0, restaurants, opensAt, closesAt);
+    cell.setRefreshAt(refreshAt);
+    return cell;
+  }
+
+  /**
+   * Copies of the candidates open at the given time and within the serving radius.
+   */
+  public List<Restaurant> findOpenRestaurantsCloseBy(double latitude, double longitude,
+      LocalTime currentTime, double servingRadiusInKms) {
+    int minute = OpeningHours.minuteOfDay(currentTime);
+    boolean onTheMinute = OpeningHours.isOnTheMinute(currentTime);
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        servingRadiusInKms);
+
+    List<Restaurant> openRestaurants = new ArrayList<>();
+    for (int i = 0; i < restaurants.size(); i++) {
+      Restaurant restaurant = restaurants.get(i);
+      if (OpeningHours.isOpen(opensAt[i], closesAt[i], minute, onTheMinute)
+          && radiusFilter.contains(restaurant.getLatitude(), restaurant.getLongitude())) {
+        openRestaurants.add(new Restaurant(restaurant));
+      }
+    }
+    return openRestaurants;
+  }
+
+  /**
+   * Get the candidates matching a search, running it on the first request. Concurrent requests
+   * for the same search wait for that run. Searches that matched nothing are run again once
+   * emptyMatchesTtlInMillis have passed, as candidates may have started to match since.
+   * @param search candidates matching the search, open or not, in the order of the search;
+   *     restaurants that are not candidates of the cell are left out
+   * @return indexes of the matching candidates, in the order of the search, or null if the cell
+   *     already keeps maxSearches other searches, in which case callers search directly
+   */
+  public int[] findMatches(String query, Supplier<List<Restaurant>> search, int maxSearches,
+      long emptyMatchesTtlInMillis) {
+    CompletableFuture<Matches> found = matches.get(query);
+    if (found != null) {
+      Matches kept = await(found);
+      if (!kept.hasExpired()) {
+        return kept.indexes;
+      }
+      matches.remove(query, found);
+    } else if (matches.size() >= maxSearches) {
+      return null;
+    }
+
+    found = new CompletableFuture<>();
+    CompletableFuture<Matches> searchInFlight = matches.putIfAbsent(query, found);
+    if (searchInFlight != null) {
+      return await(searchInFlight).indexes;
+    }
+    try {
+      int[] indexes = indexesOf(search.get());
+      found.complete(new Matches(indexes, indexes.length == 0
+          ? System.currentTimeMillis() + emptyMatchesTtlInMillis : Long.MAX_VALUE));
+      return indexes;
+    } catch (RuntimeException e) {
+      // Waiters fail too, and the next request searches again.
+      matches.remove(query, found);
+      found.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Copies of the given candidates open at the given time and within the serving radius, in
+   * the given order.
+   * @param indexes indexes into restaurants
+   */
+  public List<Restaurant> findOpenRestaurantsCloseBy(int[] indexes, double latitude,
+      double longitude, LocalTime currentTime, double servingRadiusInKms) {
+    int minute = OpeningHours.minuteOfDay(currentTime);
+    boolean onTheMinute = OpeningHours.isOnTheMinute(currentTime);
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        servingRadiusInKms);
+
+    List<Restaurant> openRestaurants = new ArrayList<>();
+    for (int i : indexes) {
+      Restaurant restaurant = restaurants.get(i);
+      if (OpeningHours.isOpen(opensAt[i], closesAt[i], minute, onTheMinute)
+          && radiusFilter.contains(restaurant.getLatitude(), restaurant.getLongitude())) {
+        openRestaurants.add(new Restaurant(restaurant));
+      }
+    }
+    return openRestaurants;
+  }
+
+  /**
+   * Check whether candidate i is open at the given time.
+   */
+  public boolean isOpen(int i, LocalTime currentTime) {
+    return OpeningHours.isOpen(opensAt[i], closesAt[i], OpeningHours.minuteOfDay(currentTime),
+        OpeningHours.isOnTheMinute(currentTime));
+  }
+
+  /**
+   * Identify the part of the day around the given time during which the same candidates are
+   * open. Times get the same window if and only if they fall between the same two opening or
+   * closing times of candidates, or exactly on the same one.
+   */
+  public int openWindowAt(LocalTime currentTime) {
+    int minute = OpeningHours.minuteOfDay(currentTime);
+    int latest = NOT_AVAILABLE;
+    int previous = NOT_AVAILABLE;
+    for (int[] minutes : new int[][] {opensAt, closesAt}) {
+      for (int boundary : minutes) {
+        latest = Math.max(latest, boundary);
+        if (boundary <= minute) {
+          previous = Math.max(previous, boundary);
+        }
+      }
+    }
+    if (previous == NOT_AVAILABLE) {
+      // Before the first opening or closing time of the day, so still in the window that
+      // started with the last one of the previous day.
+      previous = latest;
+    }
+    boolean onBoundary = previous == minute && OpeningHours.isOnTheMinute(currentTime);
+    return 2 * previous + (onBoundary ? 1 : 0);
+  }
+
+  /**
+   * Indexes of the given restaurants among the candidates, in the given order, leaving out the
+   * restaurants that are not candidates.
+   */
+  public int[] indexesOf(List<Restaurant> found) {
+    Map<String, Integer> indexesById = new HashMap<>();
+    for (int i = 0; i < restaurants.size(); i++) {
+      indexesById.put(restaurants.get(i).getRestaurantId(), i);
+    }
+    return found.stream()
+        .map(restaurant -> indexesById.get(restaurant.getRestaurantId()))
+        .filter(Objects::nonNull)
+        .mapToInt(Integer::intValue)
+        .toArray();
+  }
+
+  private static OpeningHours openingHoursOf(Restaurant restaurant) {
+    try {
+      return OpeningHours.parse(restaurant.getOpensAt(), restaurant.getClosesAt());
+    } catch (DateTimeParseException | NullPointerException e) {
+      return null;
+    }
+  }
+
+  private static <T> T await(CompletableFuture<T> search) {
+    try {
+      return search.join();
+    } catch (CompletionException e) {
+      // Waiters fail the same way the search did.
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  // Candidates matching a search, kept until expiresAt in epoch milliseconds.
+  @AllArgsConstructor
+  private static class Matches {
+
+    private final int[] indexes;
+    private final long expiresAt;
+
+    boolean hasExpired() {
+      return System.currentTimeMillis() >= expiresAt;
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import ch.hsr.geohash.GeoHash;
+import com.crio.qeats.cache.CacheCodec;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.globals.GlobalConstants;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * Layout of the storage cells of the {@link NearbyRestaurantsCache} in Redis.
+ *
+ * <p>A storage cell is the geohash cell of {@code qeats.nearby.cache.storage-precision}
+ * characters a restaurant is located in. It is stored under {@code cell:<geohash>} as the ids of
+ * its restaurants and the time it is reloaded after, and each restaurant is a hash of its own
+ * under {@code restaurant:<id>}, so updating a restaurant that stays in its storage cell rewrites
+ * a single key. Storage cells are read with MGETs sent in one pipeline, and their restaurants with
+ * HMGETs sent in a second one. Storage cells and their restaurants are written in one pipeline,
+ * and expire together after {@link GlobalConstants#REDIS_ENTRY_EXPIRY_IN_SECONDS} shortened by up
+ * to {@code qeats.nearby.cache.ttl-jitter}.
+ */
+@Log4j2
+@Component
+public class RestaurantCellStore {
+
+  private static final String CELL_KEY_PREFIX = "cell:";
+  private static final String RESTAURANT_KEY_PREFIX = "restaurant:";
+  private static final byte[][] RESTAURANT_FIELDS = fields("restaurantId", "name", "city",
+      "imageUrl", "latitude", "longitude", "opensAt", "closesAt", "attributes");
+  private static final int MGET_BATCH_SIZE = 100;
+
+  @Autowired
+  private CacheCodec cacheCodec;
+
+  @Value("${qeats.nearby.cache.storage-precision:6}")
+  private int storagePrecision;
+
+  @Value("${qeats.nearby.cache.ttl-jitter:0.1}")
+  private double ttlJitter;
+
+  /**
+   * Number of characters of the geohashes of storage cells.
+   */
+  public int getStoragePrecision() {
+    return storagePrecision;
+  }
+
+  /**
+   * Geohash of the storage cell the restaurant is located in.
+   */
+  public String storageKey(Restaurant restaurant) {
+    return GeoHash.geoHashStringWithCharacterPrecision(restaurant.getLatitude(),
+        restaurant.getLongitude(), storagePrecision);
+  }
+
+  /**
+   * Reads storage cells with MGETs of bounded size, all sent in one pipeline, then their
+   * restaurants with HMGETs sent in another.
+   * @return storage cells by geohash; those that are missing, unreadable or have a restaurant
+   *     missing are left out
+   */
+  public Map<String, RestaurantCell> readAll(Jedis jedis, Collection<String> keys) {
+    List<String> keyList = new ArrayList<>(keys);
+    Pipeline pipeline = jedis.pipelined();
+    List<Response<List<byte[]>>> batches = new ArrayList<>();
+    for (int from = 0; from < keyList.size(); from += MGET_BATCH_SIZE) {
+      List<String> batch = keyList.subList(from, Math.min(keyList.size(),
+          from + MGET_BATCH_SIZE));
+      byte[][] redisKeys = new byte[batch.size()][];
+      for (int i = 0; i < redisKeys.length; i++) {
+        redisKeys[i] = cellKey(batch.get(i));
+      }
+      batches.add(pipeline.mget(redisKeys));
+    }
+    pipeline.sync();
+
+    Map<String, CellIndex> indexes = new HashMap<>();
+    int i = 0;
+    for (Response<List<byte[]>> batch : batches) {
+      for (byte[] bytes : batch.get()) {
+        CellIndex index = read(bytes);
+        if (index != null) {
+          indexes.put(keyList.get(i), index);
+        }
+        i++;
+      }
+    }
+
+    pipeline = jedis.pipelined();
+    Map<String, List<Response<List<byte[]>>>> hashes = new HashMap<>();
+    for (Map.Entry<String, CellIndex> entry : indexes.entrySet()) {
+      List<Response<List<byte[]>>> responses = new ArrayList<>();
+      for (String restaurantId : entry.getValue().getRestaurantIds()) {
+        responses.add(pipeline.hmget(restaurantKey(restaurantId), RESTAURANT_FIELDS));
+      }
+      hashes.put(entry.getKey(), responses);
+    }
+    pipeline.sync();
+
+    Map<String, RestaurantCell> cells = new HashMap<>();
+    hashes.forEach((key, responses) -> {
+      List<Restaurant> restaurants = new ArrayList<>(responses.size());
+      for (Response<List<byte[]>> response : responses) {
+        Restaurant restaurant = readRestaurant(response.get());
+        if (restaurant == null) {
+          return;
+        }
+        restaurants.add(restaurant);
+      }
+      cells.put(key, RestaurantCell.ofStorageCell(restaurants,
+          indexes.get(key).getRefreshAt()));
+    });
+    return cells;
+  }
+
+  /**
+   * Writes storage cells and their restaurants in one pipeline.
+   * @param cells storage cells by geohash
+   */
+  public void storeAll(Jedis jedis, Map<String, RestaurantCell> cells) {
+    Pipeline pipeline = jedis.pipelined();
+    for (Map.Entry<String, RestaurantCell> entry : cells.entrySet()) {
+      // Restaurants are written along with their storage cell and expire with it.
+      int expiryInSeconds = jitteredExpiry();
+      List<String> restaurantIds = new ArrayList<>();
+      for (Restaurant restaurant : entry.getValue().getRestaurants()) {
+        storeRestaurant(pipeline, restaurant, expiryInSeconds);
+        restaurantIds.add(restaurant.getRestaurantId());
+      }
+      pipeline.setex(cellKey(entry.getKey()), expiryInSeconds,
+          cacheCodec.encode(new CellIndex(restaurantIds, entry.getValue().getRefreshAt())));
+    }
+    pipeline.sync();
+  }
+
+  /**
+   * Rewrites the hashes of restaurants updated in place, and drops the storage cells that gained
+   * or lost restaurants, so they are reloaded.
+   */
+  public void updateRestaurants(Jedis jedis, List<Restaurant> previousRestaurants,
+      List<Restaurant> currentRestaurants) {
+    Map<String, String> previousKeys = new HashMap<>();
+    for (Restaurant restaurant : previousRestaurants) {
+      previousKeys.put(restaurant.getRestaurantId(), storageKey(restaurant));
+    }
+    Set<String> changedKeys = new HashSet<>();
+    Pipeline pipeline = jedis.pipelined();
+    for (Restaurant restaurant : currentRestaurants) {
+      String key = storageKey(restaurant);
+      String previousKey = previousKeys.remove(restaurant.getRestaurantId());
+      if (key.equals(previousKey)) {
+        storeRestaurant(pipeline, restaurant, jitteredExpiry());
+      } else {
+        changedKeys.add(key);
+        if (previousKey != null) {
+          changedKeys.add(previousKey);
+        }
+      }
+    }
+    // Whatever is left was removed.
+    changedKeys.addAll(previousKeys.values());
+    for (String key : changedKeys) {
+      pipeline.del(cellKey(key));
+    }
+    pipeline.sync();
+  }
+
+  // Overwrites the hash of the restaurant in place, so readers see either version of it but never
+  // a missing one.
+  private void storeRestaurant(Pipeline pipeline, Restaurant restaurant, int expiryInSeconds) {
+    byte[][] values = {utf8(restaurant.getRestaurantId()), utf8(restaurant.getName()),
+        utf8(restaurant.getCity()), utf8(restaurant.getImageUrl()),
+        utf8(restaurant.getLatitude()), utf8(restaurant.getLongitude()),
+        utf8(restaurant.getOpensAt()), utf8(restaurant.getClosesAt()),
+        restaurant.getAttributes() == null ? null
+            : cacheCodec.encode(restaurant.getAttributes())};
+    Map<byte[], byte[]> hash = new HashMap<>();
+    List<byte[]> missingFields = new ArrayList<>();
+    for (int i = 0; i < RESTAURANT_FIELDS.length; i++) {
+      if (values[i] != null) {
+        hash.put(RESTAURANT_FIELDS[i], values[i]);
+      } else {
+        missingFields.add(RESTAURANT_FIELDS[i]);
+      }
+    }
+    byte[] key = restaurantKey(restaurant.getRestaurantId());
+    pipeline.hmset(key, hash);
+    if (!missingFields.isEmpty()) {
+      pipeline.hdel(key, missingFields.toArray(new byte[0][]));
+    }
+    pipeline.expire(key, expiryInSeconds);
+  }
+
+  // Hard TTL of storage cells and restaurants, shortened by a random fraction of up to the
+  // configured jitter.
+  private int jitteredExpiry() {
+    return (int) Math.max(1, Math.round(GlobalConstants.REDIS_ENTRY_EXPIRY_IN_SECONDS
+        * (1 - ttlJitter * ThreadLocalRandom.current().nextDouble())));
+  }
+
+  private CellIndex read(byte[] bytes) {
+    if (bytes == null) {
+      return null;
+    }
+    try {
+      return cacheCodec.decode(bytes, CellIndex.class);
+    } catch (IOException e) {
+      // Entries written by an older version are reloaded.
+      log.warn("Ignoring unreadable nearby restaurants cache entry", e);
+      return null;
+    }
+  }
+
+  private Restaurant readRestaurant(List<byte[]> values) {
+    if (values.get(0) == null) {
+      return null;
+    }
+    Restaurant restaurant = new Restaurant();
+    restaurant.setRestaurantId(string(values.get(0)));
+    restaurant.setName(string(values.get(1)));
+    restaurant.setCity(string(values.get(2)));
+    restaurant.setImageUrl(string(values.get(3)));
+    try {
+      restaurant.setLatitude(values.get(4) == null ? null : Double.valueOf(string(values.get(4))));
+      restaurant.setLongitude(values.get(5) == null ? null
+          : Double.valueOf(string(values.get(5))));
+      restaurant.setOpensAt(string(values.get(6)));
+      restaurant.setClosesAt(string(values.get(7)));
+      restaurant.setAttributes(values.get(8) == null ? null
+          : new ArrayList<>(Arrays.asList(cacheCodec.decode(values.get(8), String[].class))));
+    } catch (IOException | NumberFormatException e) {
+      log.warn("Ignoring unreadable restaurant {} in the nearby restaurants cache",
+          restaurant.getRestaurantId(), e);
+      return null;
+    }
+    return restaurant;
+  }
+
+  private static byte[] cellKey(String key) {
+    return utf8(CELL_KEY_PREFIX + key);
+  }
+
+  private static byte[] restaurantKey(String restaurantId) {
+    return utf8(RESTAURANT_KEY_PREFIX + restaurantId);
+  }
+
+  private static byte[][] fields(String... names) {
+    byte[][] fields = new byte[names.length][];
+    for (int i = 0; i < names.length; i++) {
+      fields[i] = utf8(names[i]);
+    }
+    return fields;
+  }
+
+  private static byte[] utf8(Object value) {
+    return value == null ? null : value.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String string(byte[] bytes) {
+    return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Storage cell as stored in Redis: the ids of the restaurants located in it, each stored in a
+   * hash of its own, and the time it is reloaded after, in epoch milliseconds.
+   */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class CellIndex {
+
+    private List<String> restaurantIds;
+    private long refreshAt;
+  }
+}
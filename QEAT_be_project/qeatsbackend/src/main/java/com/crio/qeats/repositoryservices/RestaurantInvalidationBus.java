@@ -0,0 +1,257 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import ch.hsr.geohash.GeoHash;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.dto.Restaurant;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Tells the other instances which restaurants changed, over the Redis pub/sub channel
+ * {@code qeats.invalidation.channel}.
+ *
+ * <p>Every {@link RestaurantsChangedEvent} of this instance is published as an
+ * {@link Invalidation} listing the ids of the restaurants and the geohash cells they were and are
+ * located in. Every instance subscribes to the channel on a thread of its own, and republishes
+ * the invalidations of the others as a {@link RestaurantsInvalidatedEvent}, so their in-memory
+ * caches and indexes drop or patch those restaurants without waiting for a TTL or a rebuild.
+ * Invalidations are not acknowledged: while an instance is not subscribed it misses them, so
+ * once it subscribes again it publishes an unlisted event and drops everything it holds.
+ *
+ * <p>The delay between publishing an invalidation and receiving it on another instance is
+ * published to Micrometer, along with the number of invalidations published, received and that
+ * could not be published. The delay is measured against the clock of the publisher.
+ */
+@Log4j2
+@Component
+public class RestaurantInvalidationBus {
+
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private ApplicationEventPublisher applicationEventPublisher;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${qeats.invalidation.enabled:true}")
+  private boolean enabled;
+
+  @Value("${qeats.invalidation.channel:qeats:invalidations}")
+  private String channel;
+
+  @Value("${qeats.invalidation.reconnect-delay-ms:1000}")
+  private long reconnectDelayInMillis;
+
+  private final String instanceId = UUID.randomUUID().toString();
+  private volatile boolean running;
+  private volatile Jedis connection;
+  private volatile boolean subscribed;
+  // Set once invalidations may have been missed, i.e. after failing to subscribe.
+  private volatile boolean missedInvalidations;
+  private Thread subscriber;
+  private Counter published;
+  private Counter publishFailures;
+  private Counter received;
+  private Counter resubscriptions;
+  private Timer lag;
+
+  /**
+   * Registers the metrics.
+   */
+  @PostConstruct
+  public void initMetrics() {
+    published = meterRegistry.counter("qeats.invalidation.messages", "result", "published");
+    publishFailures = meterRegistry.counter("qeats.invalidation.messages", "result", "failed");
+    received = meterRegistry.counter("qeats.invalidation.messages", "result", "received");
+    resubscriptions = meterRegistry.counter("qeats.invalidation.resubscriptions");
+    lag = Timer.builder("qeats.invalidation.lag")
+        .publishPercentiles(0.5, 0.99)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Subscribes to the channel once the application is up, so invalidations are only applied to
+   * beans that are ready.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+
+    running = true;
+    subscriber = new Thread(this::subscribe, "restaurant-invalidations");
+    subscriber.setDaemon(true);
+    subscriber.start();
+  }
+
+  /**
+   * Stops listening to the channel.
+   */
+  @PreDestroy
+  public void stop() {
+    running = false;
+    Jedis jedis = connection;
+    if (jedis != null) {
+      // Unblocks the subscriber.
+      jedis.disconnect();
+    }
+    if (subscriber != null) {
+      subscriber.interrupt();
+    }
+  }
+
+  /**
+   * Check whether this instance is listening to the invalidations of the others.
+   */
+  public boolean isSubscribed() {
+    return subscribed;
+  }
+
+  /**
+   * Publish the restaurants this instance saw change to the other instances.
+   */
+  @EventListener
+  public void onRestaurantsChanged(RestaurantsChangedEvent event) {
+    if (!enabled) {
+      return;
+    }
+    Set<String> restaurantIds = new TreeSet<>();
+    Set<String> geoHashes = new TreeSet<>();
+    List<Restaurant> restaurants = new ArrayList<>(event.getPreviousRestaurants());
+    restaurants.addAll(event.getCurrentRestaurants());
+    for (Restaurant restaurant : restaurants) {
+      restaurantIds.add(restaurant.getRestaurantId());
+      if (restaurant.getLatitude() != null && restaurant.getLongitude() != null) {
+        geoHashes.add(GeoHash.geoHashStringWithCharacterPrecision(restaurant.getLatitude(),
+            restaurant.getLongitude(), NearbyRestaurantsCache.GEOHASH_PRECISION));
+      }
+    }
+
+    Invalidation invalidation = new Invalidation(instanceId, System.currentTimeMillis(),
+        new ArrayList<>(restaurantIds), new ArrayList<>(geoHashes));
+    try {
+      String message = objectMapper.writeValueAsString(invalidation);
+      redisConfiguration.execute(jedis -> jedis.publish(channel, message));
+      published.increment();
+    } catch (JsonProcessingException | JedisException e) {
+      // The other instances serve these restaurants until their caches expire.
+      publishFailures.increment();
+      log.warn("Unable to publish the invalidation of {} restaurants", restaurantIds.size(), e);
+    }
+  }
+
+  // Subscribes until stopped, connecting again after a delay whenever the connection is lost.
+  private void subscribe() {
+    boolean failing = false;
+    while (running) {
+      try (Jedis jedis = redisConfiguration.openBlockingConnection()) {
+        connection = jedis;
+        if (running) {
+          jedis.subscribe(new Subscriber(), channel);
+        }
+      } catch (JedisException e) {
+        // Logged once per outage.
+        if (running && (subscribed || !failing)) {
+          log.warn("Unable to listen to restaurant invalidations", e);
+        }
+        failing = true;
+      } finally {
+        connection = null;
+        subscribed = false;
+      }
+
+      missedInvalidations = true;
+      try {
+        Thread.sleep(reconnectDelayInMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private class Subscriber extends JedisPubSub {
+
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+      subscribed = true;
+      if (missedInvalidations) {
+        missedInvalidations = false;
+        resubscriptions.increment();
+        log.info("Listening to restaurant invalidations again, dropping everything cached");
+        applicationEventPublisher.publishEvent(
+            new RestaurantsInvalidatedEvent(RestaurantInvalidationBus.this));
+      }
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+      try {
+        Invalidation invalidation = objectMapper.readValue(message, Invalidation.class);
+        if (instanceId.equals(invalidation.getInstanceId())) {
+          return;
+        }
+        received.increment();
+        lag.record(Math.max(System.currentTimeMillis() - invalidation.getPublishedAt(), 0),
+            TimeUnit.MILLISECONDS);
+        applicationEventPublisher.publishEvent(new RestaurantsInvalidatedEvent(
+            RestaurantInvalidationBus.this, invalidation.getRestaurantIds(),
+            invalidation.getGeoHashes()));
+      } catch (IOException | RuntimeException e) {
+        // Keeps listening; the restaurants expire on their own.
+        log.warn("Unable to apply the restaurant invalidation {}", message, e);
+      }
+    }
+  }
+
+  /**
+   * Message published on the channel.
+   */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Invalidation {
+
+    private String instanceId;
+    private long publishedAt;
+    private List<String> restaurantIds;
+    private List<String> geoHashes;
+  }
+}
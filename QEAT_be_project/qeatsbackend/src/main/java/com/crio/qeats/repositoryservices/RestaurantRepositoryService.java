@@ -7,10 +7,12 @@
 package com.crio.qeats.repositoryservices;
 
 import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.utils.NearestRestaurants;
 import java.time.LocalTime;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import org.springframework.scheduling.annotation.Async;
 
 public interface RestaurantRepositoryService {
@@ -29,6 +31,46 @@ public interface RestaurantRepositoryService {
   List<Restaurant> findAllRestaurantsCloseBy(Double latitude, Double longitude,
       LocalTime currentTime, Double servingRadiusInKms);
 
+  /**
+   * Same as {@link #findAllRestaurantsCloseBy}, but hands each restaurant to the action as soon as
+   * it is found instead of returning a list.
+   * @param action called with every open restaurant within the serving radius
+   */
+  void forEachRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> action);
+
+  /**
+   * Collect one page of the open restaurants within the specified serving radius, closest first.
+   * Same criteria as {@link #findAllRestaurantsCloseBy}.
+   * @param nearestRestaurants page to add the restaurants to, along with their distance
+   */
+  void findNearestRestaurantsCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, NearestRestaurants nearestRestaurants);
+
+  /**
+   * Get the cached candidates, open or not, of the geohash cell of a location.
+   * @param servingRadiusInKms largest serving radius the candidates have to cover
+   * @return the cell, shared and not to be modified, or null if the cache is not in use
+   */
+  RestaurantCell findCachedRestaurantCell(Double latitude,
+      Double longitude, Double servingRadiusInKms);
+
+  /**
+   * Check whether {@link #findRankedRestaurants} is available, i.e. searches are indexed.
+   */
+  boolean isRankedSearchAvailable();
+
+  /**
+   * Get the open restaurants within the specified serving radius matching the search string on
+   * their name, cuisines, item names or item attributes, each once and already in the order of
+   * {@code RestaurantService#findRestaurantsBySearchQuery}. Only available when
+   * {@link #isRankedSearchAvailable}; otherwise callers combine the four searches below.
+   * Like them, it finds restaurants whatever their opening hours when currentTime is null.
+   * @param searchString Query string, matched partially
+   * @return list of restaurants
+   */
+  List<Restaurant> findRankedRestaurants(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms);
 
   /**
    * Get the list of open restaurants within the specified serving radius.
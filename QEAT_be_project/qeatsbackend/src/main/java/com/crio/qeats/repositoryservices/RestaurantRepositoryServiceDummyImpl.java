@@ -3,6 +3,7 @@ package com.crio.qeats.repositoryservices;
 
 import com.crio.qeats.dto.Restaurant;
 import com.crio.qeats.utils.FixtureHelpers;
+import com.crio.qeats.utils.NearestRestaurants;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
@@ -12,6 +13,7 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 import org.springframework.context.annotation.Primary;
 import org.springframework.scheduling.annotation.Async;
@@ -44,6 +46,37 @@ public class RestaurantRepositoryServiceDummyImpl implements RestaurantRepositor
     return restaurantList;
   }
 
+  @Override
+  public void forEachRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> action) {
+    findAllRestaurantsCloseBy(latitude, longitude, currentTime, servingRadiusInKms)
+        .forEach(action);
+  }
+
+  @Override
+  public void findNearestRestaurantsCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, NearestRestaurants nearestRestaurants) {
+    nearestRestaurants.offerAll(latitude, longitude,
+        findAllRestaurantsCloseBy(latitude, longitude, currentTime, servingRadiusInKms));
+  }
+
+  @Override
+  public RestaurantCell findCachedRestaurantCell(Double latitude,
+      Double longitude, Double servingRadiusInKms) {
+    return null;
+  }
+
+  @Override
+  public boolean isRankedSearchAvailable() {
+    return false;
+  }
+
+  @Override
+  public List<Restaurant> findRankedRestaurants(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms) {
+    return null;
+  }
+
   public List<Restaurant> findRestaurantsByName(Double latitude, Double longitude, String searchString,
       LocalTime currentTime, Double servingRadiusInKms) {
     return null;
@@ -6,51 +6,40 @@
 
 package com.crio.qeats.repositoryservices;
 
-import ch.hsr.geohash.GeoHash;
 import com.crio.qeats.configs.RedisConfiguration;
 import com.crio.qeats.dto.Restaurant;
-import com.crio.qeats.exchanges.GetRestaurantsResponse;
-import com.crio.qeats.globals.GlobalConstants;
-import com.crio.qeats.models.RestaurantEntity;
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.crio.qeats.models.ItemEntity;
+import com.crio.qeats.indexes.RestaurantSearchIndex.Field;
 import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
 import com.crio.qeats.repositories.ItemRepository;
 import com.crio.qeats.repositories.MenuRepository;
 import com.crio.qeats.repositories.RestaurantRepository;
-import com.crio.qeats.utils.GeoLocation;
 import com.crio.qeats.utils.GeoUtils;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.IOException;
+import com.crio.qeats.utils.NearestRestaurants;
+import com.crio.qeats.utils.OpeningHours;
 import java.time.LocalTime;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
 import javax.inject.Provider;
+import lombok.extern.log4j.Log4j2;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.mongodb.core.query.TextCriteria;
-import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Service;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import java.util.concurrent.CompletableFuture;
+import redis.clients.jedis.exceptions.JedisException;
 
+@Log4j2
 @Primary
 @Service
 public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryService {
@@ -67,60 +56,101 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
   private RedisConfiguration redisConfiguration;
   @Autowired
   private Provider<ModelMapper> modelMapperProvider;
+  @Autowired
+  private NearbyRestaurantsFinder nearbyRestaurantsFinder;
+  @Autowired
+  private NearbyRestaurantsCache nearbyRestaurantsCache;
+  // Only present when searches are answered from the in-memory index.
+  @Autowired(required = false)
+  private IndexedRestaurantSearch indexedRestaurantSearch;
+  // Only present when item searches look up the restaurants in the item view.
+  @Autowired(required = false)
+  private ItemRestaurantView itemRestaurantView;
+
+  @Value("${qeats.nearby.cache.enabled:true}")
+  private boolean nearbyCacheEnabled;
 
-  private boolean isOpenNow(LocalTime time, RestaurantEntity res) {
-    LocalTime openingTime = LocalTime.parse(res.getOpensAt());
-    LocalTime closingTime = LocalTime.parse(res.getClosesAt());
+  /**
+   * Index the fields item searches join on, see {@link #findRestaurantsServingItems}.
+   */
+  @PostConstruct
+  public void ensureSearchIndexes() {
+    if (indexedRestaurantSearch == null) {
+      mongoTemplate.indexOps(MenuEntity.class).ensureIndex(
+          new Index("items.itemId", Sort.Direction.ASC));
+      mongoTemplate.indexOps(RestaurantEntity.class).ensureIndex(
+          new Index("restaurantId", Sort.Direction.ASC));
+    }
+  }
 
-    return time.isAfter(openingTime) && time.isBefore(closingTime);
+  // Searches made for any time of the day pass a null time.
+  static boolean isOpenNow(LocalTime time, RestaurantEntity res) {
+    return time == null || OpeningHours.of(res.getOpensAt(), res.getClosesAt()).isOpenAt(time);
   }
 
   public List<Restaurant> findAllRestaurantsCloseBy(Double latitude, Double longitude, LocalTime currentTime,
       Double servingRadiusInKms) {
-    List<Restaurant> restaurants = null;
+    List<Restaurant> restaurants = findAllRestaurantsFromCache(latitude, longitude, currentTime,
+        servingRadiusInKms);
 
-    if (redisConfiguration.isCacheAvailable()) {
-      restaurants = findAllRestaurantsFromCache(latitude, longitude, currentTime, servingRadiusInKms);
-    } else {
+    if (restaurants == null) {
       restaurants = findAllRestaurantsCloseFromDb(latitude, longitude, currentTime, servingRadiusInKms);
     }
     return restaurants;
   }
 
-  private List<Restaurant> findAllRestaurantsFromCache(Double latitude, Double longitude, LocalTime currentTime,
-      Double servingRadiusInKms) {
-    List<Restaurant> restaurantList = new ArrayList<>();
-
-    GeoLocation geoLocation = new GeoLocation(latitude, longitude);
-    GeoHash geoHash = GeoHash.withCharacterPrecision(geoLocation.getLatitude(), geoLocation.getLongitude(), 7);
-
-    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
-      String jsonStringFromCache = jedis.get(geoHash.toBase32());
-
-      if (jsonStringFromCache == null) {
-        // Cache needs to be updated.
-        String createdJsonString = "";
-        try {
-          restaurantList = findAllRestaurantsCloseFromDb(geoLocation.getLatitude(), geoLocation.getLongitude(),
-              currentTime, servingRadiusInKms);
-          createdJsonString = new ObjectMapper().writeValueAsString(restaurantList);
-        } catch (JsonProcessingException e) {
-          e.printStackTrace();
-        }
-
-        // Do operations with jedis resource
-        jedis.setex(geoHash.toBase32(), GlobalConstants.REDIS_ENTRY_EXPIRY_IN_SECONDS, createdJsonString);
-      } else {
-        try {
-          restaurantList = new ObjectMapper().readValue(jsonStringFromCache, new TypeReference<List<Restaurant>>() {
-          });
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
+  @Override
+  public void forEachRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> action) {
+    List<Restaurant> restaurants = findAllRestaurantsFromCache(latitude, longitude, currentTime,
+        servingRadiusInKms);
+    if (restaurants != null) {
+      restaurants.forEach(action);
+    } else {
+      nearbyRestaurantsFinder.forEachOpenRestaurantCloseBy(latitude, longitude, currentTime,
+          servingRadiusInKms, action);
+    }
+  }
+
+  @Override
+  public void findNearestRestaurantsCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, NearestRestaurants nearestRestaurants) {
+    List<Restaurant> restaurants = findAllRestaurantsFromCache(latitude, longitude, currentTime,
+        servingRadiusInKms);
+    if (restaurants != null) {
+      nearestRestaurants.offerAll(latitude, longitude, restaurants);
+    } else {
+      nearbyRestaurantsFinder.findNearestOpenRestaurants(latitude, longitude, currentTime,
+          servingRadiusInKms, nearestRestaurants);
+    }
+  }
+
+  @Override
+  public RestaurantCell findCachedRestaurantCell(Double latitude,
+      Double longitude, Double servingRadiusInKms) {
+    if (nearbyCacheEnabled && redisConfiguration.isCacheAvailable()) {
+      try {
+        return nearbyRestaurantsCache.findCell(latitude, longitude, servingRadiusInKms);
+      } catch (JedisException e) {
+        log.warn("Nearby restaurants cache failed, not serving from it", e);
       }
     }
+    return null;
+  }
 
-    return restaurantList;
+  // Null if the cache is disabled or Redis is degraded, in which case callers go to the database.
+  private List<Restaurant> findAllRestaurantsFromCache(Double latitude, Double longitude, LocalTime currentTime,
+      Double servingRadiusInKms) {
+    if (!nearbyCacheEnabled || !redisConfiguration.isCacheAvailable()) {
+      return null;
+    }
+    try {
+      return nearbyRestaurantsCache.findOpenRestaurantsCloseBy(latitude, longitude, currentTime,
+          servingRadiusInKms);
+    } catch (JedisException e) {
+      log.warn("Nearby restaurants cache failed, falling back to the database", e);
+      return null;
+    }
   }
 
   // TODO: CRIO_TASK_MODULE_NOSQL
@@ -131,15 +161,8 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
 
   private List<Restaurant> findAllRestaurantsCloseFromDb(Double latitude, Double longitude, LocalTime currentTime,
       Double servingRadiusInKms) {
-    ModelMapper modelMapper = modelMapperProvider.get();
-    List<RestaurantEntity> restaurantEntities = restaurantRepository.findAll();
-    List<Restaurant> restaurants = new ArrayList<Restaurant>();
-    for (RestaurantEntity restaurantEntity : restaurantEntities) {
-      if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude, servingRadiusInKms)) {
-        restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
-      }
-    }
-    return restaurants;
+    return nearbyRestaurantsFinder.findOpenRestaurantsCloseBy(latitude, longitude, currentTime,
+        servingRadiusInKms);
   }
 
   /**
@@ -149,7 +172,7 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
    * @return boolean True if restaurant falls within serving radius and is open,
    *         false otherwise
    */
-  private boolean isRestaurantCloseByAndOpen(RestaurantEntity restaurantEntity, LocalTime currentTime, Double latitude,
+  static boolean isRestaurantCloseByAndOpen(RestaurantEntity restaurantEntity, LocalTime currentTime, Double latitude,
       Double longitude, Double servingRadiusInKms) {
     if (isOpenNow(currentTime, restaurantEntity)) {
       return GeoUtils.findDistanceInKm(latitude, longitude, restaurantEntity.getLatitude(),
@@ -159,6 +182,21 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
     return false;
   }
 
+  @Override
+  public boolean isRankedSearchAvailable() {
+    return indexedRestaurantSearch != null;
+  }
+
+  @Override
+  public List<Restaurant> findRankedRestaurants(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms) {
+    if (indexedRestaurantSearch == null) {
+      throw new IllegalStateException("Searches are not indexed");
+    }
+    return indexedRestaurantSearch.search(latitude, longitude, searchString, currentTime,
+        servingRadiusInKms);
+  }
+
   // TODO: CRIO_TASK_MODULE_RESTAURANTSEARCH
   // Objective:
   // Find restaurants whose names have an exact or partial match with the search
@@ -167,19 +205,15 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
   public List<Restaurant> findRestaurantsByName(Double latitude, Double longitude, String searchString,
       LocalTime currentTime, Double servingRadiusInKms) {
 
-    ModelMapper modelMapper = modelMapperProvider.get();
-    List<RestaurantEntity> restaurantEntities = (List<RestaurantEntity>) restaurantRepository
-        .findRestaurantsByNameExact(searchString).stream().collect(Collectors.toList()).get(0);
-
-    List<Restaurant> restaurants = new ArrayList<Restaurant>();
-
-    for (RestaurantEntity restaurantEntity : restaurantEntities) {
-      if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude, servingRadiusInKms)) {
-        restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
-      }
+    if (indexedRestaurantSearch != null) {
+      return indexedRestaurantSearch.findRestaurants(Field.NAME, latitude, longitude,
+          searchString, currentTime, servingRadiusInKms);
     }
 
-    return restaurants;
+    List<RestaurantEntity> restaurantEntities = (List<RestaurantEntity>) restaurantRepository
+        .findRestaurantsByNameExact(searchString).stream().collect(Collectors.toList()).get(0);
+    return findRestaurantsCloseByAndOpen(restaurantEntities, latitude, longitude, currentTime,
+        servingRadiusInKms);
   }
 
   // TODO: CRIO_TASK_MODULE_RESTAURANTSEARCH
@@ -189,19 +223,28 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
   public List<Restaurant> findRestaurantsByAttributes(Double latitude, Double longitude, String searchString,
       LocalTime currentTime, Double servingRadiusInKms) {
 
-    ModelMapper modelMapper = modelMapperProvider.get();
+    if (indexedRestaurantSearch != null) {
+      return indexedRestaurantSearch.findRestaurants(Field.ATTRIBUTE, latitude, longitude,
+          searchString, currentTime, servingRadiusInKms);
+    }
+
     List<RestaurantEntity> restaurantEntities = (List<RestaurantEntity>) restaurantRepository
         .findRestaurantsByAttributesExact(searchString).stream().collect(Collectors.toList()).get(0);
+    return findRestaurantsCloseByAndOpen(restaurantEntities, latitude, longitude, currentTime,
+        servingRadiusInKms);
+  }
 
+  // The restaurants a query found that are open and within the serving radius, in their order.
+  private List<Restaurant> findRestaurantsCloseByAndOpen(List<RestaurantEntity> restaurantEntities,
+      Double latitude, Double longitude, LocalTime currentTime, Double servingRadiusInKms) {
+    ModelMapper modelMapper = modelMapperProvider.get();
     List<Restaurant> restaurants = new ArrayList<Restaurant>();
-
     for (RestaurantEntity restaurantEntity : restaurantEntities) {
-      if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude, servingRadiusInKms)) {
+      if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude,
+          servingRadiusInKms)) {
         restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
       }
     }
-
-    // return null;
     return restaurants;
   }
 
@@ -215,39 +258,13 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
   public List<Restaurant> findRestaurantsByItemName(Double latitude, Double longitude, String searchString,
       LocalTime currentTime, Double servingRadiusInKms) {
 
-    ModelMapper modelMapper = modelMapperProvider.get();
-    List<ItemEntity> itemEntity = itemRepository.findRestaurantsByItemName(searchString).stream()
-        .collect(Collectors.toList());
-
-    List<String> itemsStr = new ArrayList<String>();
-    for (ItemEntity Ie : itemEntity) {
-      itemsStr.add(Ie.getId());
+    if (indexedRestaurantSearch != null) {
+      return indexedRestaurantSearch.findRestaurants(Field.ITEM_NAME, latitude, longitude,
+          searchString, currentTime, servingRadiusInKms);
     }
 
-    List<MenuEntity> menuEntity = menuRepository.findMenusByItemsItemIdIn(
-                                              itemsStr).stream().collect(Collectors.toList()).get(0);
-
-        List<String> restIds = new ArrayList<String>();
-
-        for (MenuEntity Me: menuEntity){
-          restIds.add(Me.getRestaurantId());
-      }
-
-
-      List<RestaurantEntity> restaurantEntities =  restaurantRepository.findRestaurantsByid(restIds);
-
-
-        List<Restaurant> restaurants = new ArrayList<Restaurant>();
-        
-        for (RestaurantEntity restaurantEntity : restaurantEntities) {
-          if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude, servingRadiusInKms)) {
-            restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
-          }
-        }
-        
-  
-  
-        return restaurants;
+    return findRestaurantsServingItems(Field.ITEM_NAME, searchString, latitude, longitude,
+        currentTime, servingRadiusInKms);
   }
 
   // TODO: CRIO_TASK_MODULE_RESTAURANTSEARCH
@@ -257,151 +274,130 @@ public class RestaurantRepositoryServiceImpl implements RestaurantRepositoryServ
   public List<Restaurant> findRestaurantsByItemAttributes(Double latitude, Double longitude,
       String searchString, LocalTime currentTime, Double servingRadiusInKms) {
 
-      ModelMapper modelMapper = modelMapperProvider.get();
-      List<ItemEntity> lisItems =  itemRepository.findRestaurantsByItemAtt(searchString);
-      List<String> itemsStr = new ArrayList<String>();
-      for (ItemEntity Ie: lisItems){
-          itemsStr.add(Ie.getId());
-      }
-    
-      List<MenuEntity> menuEntity = menuRepository.findMenusByItemsItemIdIn(
-                                      itemsStr).stream().collect(Collectors.toList()).get(0);
+    if (indexedRestaurantSearch != null) {
+      return indexedRestaurantSearch.findRestaurants(Field.ITEM_ATTRIBUTE, latitude, longitude,
+          searchString, currentTime, servingRadiusInKms);
+    }
+
+    return findRestaurantsServingItems(Field.ITEM_ATTRIBUTE, searchString, latitude, longitude,
+        currentTime, servingRadiusInKms);
+  }
 
-      List<String> restIds = new ArrayList<String>();
+  // Open restaurants within the serving radius that serve an item matching the search string on
+  // the item field, in the order of the restaurants collection. The item view, when there is one,
+  // gives the ids of the restaurants close by serving it.
+  private List<Restaurant> findRestaurantsServingItems(Field field, String searchString,
+      Double latitude, Double longitude, LocalTime currentTime, Double servingRadiusInKms) {
+    if (itemRestaurantView == null) {
+      return aggregateRestaurantsServingItems(Criteria.where(
+          field == Field.ITEM_NAME ? "name" : "attributes").is(searchString), latitude, longitude,
+          currentTime, servingRadiusInKms);
+    }
 
-      for (MenuEntity Me: menuEntity){
-        restIds.add(Me.getRestaurantId());
+    List<String> restaurantIds = itemRestaurantView.findRestaurantIdsCloseBy(field, searchString,
+        latitude, longitude, servingRadiusInKms);
+    if (restaurantIds.isEmpty()) {
+      return new ArrayList<>();
+    }
+    ModelMapper modelMapper = modelMapperProvider.get();
+    List<Restaurant> restaurants = new ArrayList<>();
+    for (RestaurantEntity restaurantEntity :
+        restaurantRepository.findByRestaurantIdIn(restaurantIds)) {
+      // Checks the distance again, the restaurant may have moved since the view saw it.
+      if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude,
+          servingRadiusInKms)) {
+        restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
       }
+    }
+    return restaurants;
+  }
 
-    List<RestaurantEntity> restaurantEntities =  restaurantRepository.findRestaurantsByid(restIds);
+  // One aggregation over the items collection joins the menus serving the matching items, then
+  // their restaurants, keeps those within the bounding box of the circle and only returns the
+  // fields of Restaurant; the exact distance and opening hours are checked here. Restaurants come
+  // back sorted by _id, the order they were added in, as a query on the restaurants collection
+  // returns them.
+  private List<Restaurant> aggregateRestaurantsServingItems(Criteria itemCriteria,
+      Double latitude, Double longitude, LocalTime currentTime, Double servingRadiusInKms) {
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        servingRadiusInKms);
+    Aggregation aggregation = Aggregation.newAggregation(
+        Aggregation.match(itemCriteria),
+        Aggregation.project("itemId"),
+        Aggregation.lookup("menus", "itemId", "items.itemId", "menus"),
+        Aggregation.unwind("menus"),
+        Aggregation.group("menus.restaurantId"),
+        Aggregation.lookup("restaurants", "_id", "restaurantId", "restaurant"),
+        Aggregation.unwind("restaurant"),
+        Aggregation.replaceRoot("restaurant"),
+        Aggregation.match(withinBoundingBox(radiusFilter, longitude)),
+        Aggregation.sort(Sort.Direction.ASC, "_id"),
+        Aggregation.project("restaurantId", "name", "city", "imageUrl", "latitude", "longitude",
+            "opensAt", "closesAt", "attributes"));
 
-      List<Restaurant> restaurants = new ArrayList<Restaurant>();
-      
-      for (RestaurantEntity restaurantEntity : restaurantEntities) {
-        if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude, servingRadiusInKms)) {
-          restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
-        }
+    ModelMapper modelMapper = modelMapperProvider.get();
+    List<Restaurant> restaurants = new ArrayList<>();
+    for (RestaurantEntity restaurantEntity : mongoTemplate.aggregate(aggregation, "items",
+        RestaurantEntity.class)) {
+      if (isOpenNow(currentTime, restaurantEntity) && radiusFilter.contains(
+          restaurantEntity.getLatitude(), restaurantEntity.getLongitude())) {
+        restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
       }
+    }
+    return restaurants;
+  }
 
-      return restaurants;
-
+  private static Criteria withinBoundingBox(GeoUtils.RadiusFilter radiusFilter,
+      double longitude) {
+    Criteria criteria = Criteria.where("latitude").gte(radiusFilter.getMinLatitude())
+        .lte(radiusFilter.getMaxLatitude());
+    double west = longitude - radiusFilter.getLongitudeDelta();
+    double east = longitude + radiusFilter.getLongitudeDelta();
+    if (radiusFilter.getLongitudeDelta() >= 180) {
+      return criteria;
+    } else if (west < -180) {
+      // The box crosses the antimeridian.
+      return criteria.orOperator(Criteria.where("longitude").gte(west + 360),
+          Criteria.where("longitude").lte(east));
+    } else if (east > 180) {
+      return criteria.orOperator(Criteria.where("longitude").gte(west),
+          Criteria.where("longitude").lte(east - 360));
+    }
+    return criteria.and("longitude").gte(west).lte(east);
   }
 
+  // The MT variants run the same searches on the async executor.
   @Async
   @Override
   public CompletableFuture<List<Restaurant>> findRestaurantsByNameMT(Double latitude, Double longitude, String searchString,
       LocalTime currentTime, Double servingRadiusInKms) {
-
-    ModelMapper modelMapper = modelMapperProvider.get();
-    List<RestaurantEntity> restaurantEntities = (List<RestaurantEntity>) restaurantRepository
-        .findRestaurantsByNameExact(searchString).stream().collect(Collectors.toList()).get(0);
-
-    List<Restaurant> restaurants = new ArrayList<Restaurant>();
-
-    for (RestaurantEntity restaurantEntity : restaurantEntities) {
-      if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude, servingRadiusInKms)) {
-        restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
-      }
-    }
-
-    return CompletableFuture.completedFuture(restaurants);
+    return CompletableFuture.completedFuture(findRestaurantsByName(latitude, longitude,
+        searchString, currentTime, servingRadiusInKms));
   }
 
   @Async
   @Override
   public CompletableFuture<List<Restaurant>> findRestaurantsByAttributesMT(Double latitude, Double longitude, String searchString,
       LocalTime currentTime, Double servingRadiusInKms) {
-
-    ModelMapper modelMapper = modelMapperProvider.get();
-    List<RestaurantEntity> restaurantEntities = (List<RestaurantEntity>) restaurantRepository
-        .findRestaurantsByAttributesExact(searchString).stream().collect(Collectors.toList()).get(0);
-
-    List<Restaurant> restaurants = new ArrayList<Restaurant>();
-
-    for (RestaurantEntity restaurantEntity : restaurantEntities) {
-      if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude, servingRadiusInKms)) {
-        restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
-      }
-    }
-
-    return CompletableFuture.completedFuture(restaurants);
+    return CompletableFuture.completedFuture(findRestaurantsByAttributes(latitude, longitude,
+        searchString, currentTime, servingRadiusInKms));
   }
 
   @Async
   @Override
   public CompletableFuture<List<Restaurant>> findRestaurantsByItemNameMT(Double latitude, Double longitude, String searchString,
       LocalTime currentTime, Double servingRadiusInKms) {
-
-    ModelMapper modelMapper = modelMapperProvider.get();
-    List<ItemEntity> itemEntity = itemRepository.findRestaurantsByItemName(searchString).stream()
-        .collect(Collectors.toList());
-
-    List<String> itemsStr = new ArrayList<String>();
-    for (ItemEntity Ie : itemEntity) {
-      itemsStr.add(Ie.getId());
-    }
-
-    List<MenuEntity> menuEntity = menuRepository.findMenusByItemsItemIdIn(
-                                              itemsStr).stream().collect(Collectors.toList()).get(0);
-
-        List<String> restIds = new ArrayList<String>();
-
-        for (MenuEntity Me: menuEntity){
-          restIds.add(Me.getRestaurantId());
-      }
-
-
-      List<RestaurantEntity> restaurantEntities =  restaurantRepository.findRestaurantsByid(restIds);
-
-
-        List<Restaurant> restaurants = new ArrayList<Restaurant>();
-        
-        for (RestaurantEntity restaurantEntity : restaurantEntities) {
-          if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude, servingRadiusInKms)) {
-            restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
-          }
-        }
-        
-  
-  
-        return CompletableFuture.completedFuture(restaurants);
+    return CompletableFuture.completedFuture(findRestaurantsByItemName(latitude, longitude,
+        searchString, currentTime, servingRadiusInKms));
   }
 
   @Async
   @Override
   public CompletableFuture<List<Restaurant>> findRestaurantsByItemAttributesMT(Double latitude, Double longitude,
       String searchString, LocalTime currentTime, Double servingRadiusInKms) {
-
-      ModelMapper modelMapper = modelMapperProvider.get();
-      List<ItemEntity> lisItems =  itemRepository.findRestaurantsByItemAtt(searchString);
-      List<String> itemsStr = new ArrayList<String>();
-      for (ItemEntity Ie: lisItems){
-          itemsStr.add(Ie.getId());
-      }
-    
-      List<MenuEntity> menuEntity = menuRepository.findMenusByItemsItemIdIn(
-                                      itemsStr).stream().collect(Collectors.toList()).get(0);
-
-      List<String> restIds = new ArrayList<String>();
-
-      for (MenuEntity Me: menuEntity){
-        restIds.add(Me.getRestaurantId());
-      }
-
-    List<RestaurantEntity> restaurantEntities =  restaurantRepository.findRestaurantsByid(restIds);
-
-      List<Restaurant> restaurants = new ArrayList<Restaurant>();
-      
-      for (RestaurantEntity restaurantEntity : restaurantEntities) {
-        if (isRestaurantCloseByAndOpen(restaurantEntity, currentTime, latitude, longitude, servingRadiusInKms)) {
-          restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
-        }
-      }
-
-      return CompletableFuture.completedFuture(restaurants);
-
+    return CompletableFuture.completedFuture(findRestaurantsByItemAttributes(latitude, longitude,
+        searchString, currentTime, servingRadiusInKms));
   }
 
-
 }
 
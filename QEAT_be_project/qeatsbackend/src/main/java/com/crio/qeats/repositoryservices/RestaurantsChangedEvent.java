@@ -0,0 +1,55 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import com.crio.qeats.dto.Restaurant;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when restaurants were added, removed or updated, so caches derived from them can
+ * drop what they hold.
+ *
+ * <p>When the publisher knows which restaurants changed, the event lists them as they were before,
+ * for updated and removed restaurants, and as they are now, for added and updated ones. Caches
+ * can then update just those; otherwise both lists are empty and everything may have changed.
+ */
+public class RestaurantsChangedEvent extends ApplicationEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  private final List<Restaurant> previousRestaurants;
+  private final List<Restaurant> currentRestaurants;
+
+  public RestaurantsChangedEvent(Object source) {
+    this(source, Collections.emptyList(), Collections.emptyList());
+  }
+
+  public RestaurantsChangedEvent(Object source, List<Restaurant> previousRestaurants,
+      List<Restaurant> currentRestaurants) {
+    super(source);
+    this.previousRestaurants = previousRestaurants;
+    this.currentRestaurants = currentRestaurants;
+  }
+
+  /**
+   * Check whether the changed restaurants are listed.
+   */
+  public boolean isListed() {
+    return !previousRestaurants.isEmpty() || !currentRestaurants.isEmpty();
+  }
+
+  public List<Restaurant> getPreviousRestaurants() {
+    return previousRestaurants;
+  }
+
+  public List<Restaurant> getCurrentRestaurants() {
+    return currentRestaurants;
+  }
+
+}
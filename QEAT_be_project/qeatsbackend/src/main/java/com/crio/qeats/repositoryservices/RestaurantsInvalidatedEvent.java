@@ -0,0 +1,54 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import java.util.Collections;
+import java.util.List;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when another instance saw restaurants change, so what this instance holds in
+ * memory about them can be dropped or patched. Redis was already updated by that instance.
+ *
+ * <p>The event lists the ids of the restaurants that changed, and the geohash cells of
+ * {@link NearbyRestaurantsCache#GEOHASH_PRECISION} characters they were and are located in.
+ * Both lists are empty when everything may have changed, e.g. after invalidations were missed.
+ */
+public class RestaurantsInvalidatedEvent extends ApplicationEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  private final List<String> restaurantIds;
+  private final List<String> geoHashes;
+
+  public RestaurantsInvalidatedEvent(Object source) {
+    this(source, Collections.emptyList(), Collections.emptyList());
+  }
+
+  public RestaurantsInvalidatedEvent(Object source, List<String> restaurantIds,
+      List<String> geoHashes) {
+    super(source);
+    this.restaurantIds = restaurantIds;
+    this.geoHashes = geoHashes;
+  }
+
+  /**
+   * Check whether the changed restaurants are listed.
+   */
+  public boolean isListed() {
+    return !restaurantIds.isEmpty();
+  }
+
+  public List<String> getRestaurantIds() {
+    return restaurantIds;
+  }
+
+  public List<String> getGeoHashes() {
+    return geoHashes;
+  }
+
+}
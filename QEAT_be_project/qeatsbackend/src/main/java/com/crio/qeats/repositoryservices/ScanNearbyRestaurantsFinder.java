@@ -0,0 +1,92 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.utils.GeoUtils;
+import com.crio.qeats.utils.NearestRestaurants;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.inject.Provider;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Reads the whole restaurants collection and filters it on every call.
+ */
+@Service
+@ConditionalOnProperty(name = "qeats.nearby.backend", havingValue = "scan", matchIfMissing = true)
+public class ScanNearbyRestaurantsFinder implements NearbyRestaurantsFinder {
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private Provider<ModelMapper> modelMapperProvider;
+
+  @Override
+  public List<Restaurant> findOpenRestaurantsCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms) {
+    List<Restaurant> restaurants = new ArrayList<Restaurant>();
+    forEachOpenRestaurantCloseBy(latitude, longitude, currentTime, servingRadiusInKms,
+        restaurants::add);
+    return restaurants;
+  }
+
+  @Override
+  public List<Restaurant> findRestaurantsCloseBy(Double latitude, Double longitude,
+      Double radiusInKms) {
+    ModelMapper modelMapper = modelMapperProvider.get();
+    List<Restaurant> restaurants = new ArrayList<Restaurant>();
+    for (RestaurantEntity restaurantEntity : restaurantRepository.findAll()) {
+      if (GeoUtils.findDistanceInKm(latitude, longitude, restaurantEntity.getLatitude(),
+          restaurantEntity.getLongitude()) < radiusInKms) {
+        restaurants.add(modelMapper.map(restaurantEntity, Restaurant.class));
+      }
+    }
+    return restaurants;
+  }
+
+  @Override
+  public void forEachOpenRestaurantCloseBy(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, Consumer<Restaurant> action) {
+    ModelMapper modelMapper = modelMapperProvider.get();
+    List<RestaurantEntity> restaurantEntities = restaurantRepository.findAll();
+    for (RestaurantEntity restaurantEntity : restaurantEntities) {
+      if (RestaurantRepositoryServiceImpl.isRestaurantCloseByAndOpen(restaurantEntity, currentTime,
+          latitude, longitude, servingRadiusInKms)) {
+        action.accept(modelMapper.map(restaurantEntity, Restaurant.class));
+      }
+    }
+  }
+
+  @Override
+  public void findNearestOpenRestaurants(Double latitude, Double longitude,
+      LocalTime currentTime, Double servingRadiusInKms, NearestRestaurants nearestRestaurants) {
+    ModelMapper modelMapper = modelMapperProvider.get();
+    for (RestaurantEntity restaurantEntity : restaurantRepository.findAll()) {
+      if (!RestaurantRepositoryServiceImpl.isOpenNow(currentTime, restaurantEntity)) {
+        continue;
+      }
+      double distanceInKm = GeoUtils.findDistanceInKm(latitude, longitude,
+          restaurantEntity.getLatitude(), restaurantEntity.getLongitude());
+      if (distanceInKm < servingRadiusInKms
+          && nearestRestaurants.admits(distanceInKm, restaurantEntity.getRestaurantId())) {
+        Restaurant restaurant = modelMapper.map(restaurantEntity, Restaurant.class);
+        restaurant.setDistance(distanceInKm);
+        nearestRestaurants.offer(restaurant);
+      }
+    }
+  }
+
+}
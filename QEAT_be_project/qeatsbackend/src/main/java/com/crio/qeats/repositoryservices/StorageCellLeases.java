@@ -0,0 +1,172 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * Short leases on storage cells of the {@link NearbyRestaurantsCache}, so that when several
+ * instances miss the same storage cells in Redis, only one of them loads each.
+ *
+ * <p>With {@code qeats.nearby.cache.lease.enabled}, the instance that misses storage cells takes a
+ * lease on each of them with SET NX PX, and the other instances poll the
+ * {@link RestaurantCellStore} for them until the lease holder stores them or the lease expires
+ * after {@code qeats.nearby.cache.lease.ttl-ms}. Polls are published to Micrometer.
+ */
+@Component
+public class StorageCellLeases {
+
+  private static final String LEASE_KEY_PREFIX = "lease:";
+  private static final long LEASE_POLL_INTERVAL_IN_MILLIS = 20;
+  // Deletes the lease only if it is still ours, so an expired lease taken over by another
+  // instance is left alone.
+  private static final String RELEASE_LEASE_SCRIPT =
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) "
+          + "else return 0 end";
+
+  @Autowired
+  private RestaurantCellStore restaurantCellStore;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${qeats.nearby.cache.lease.enabled:false}")
+  private boolean leaseEnabled;
+
+  @Value("${qeats.nearby.cache.lease.ttl-ms:5000}")
+  private long leaseTtlInMillis;
+
+  private Counter leaseWaits;
+
+  /**
+   * Registers the metrics.
+   */
+  @PostConstruct
+  public void initMetrics() {
+    leaseWaits = meterRegistry.counter("qeats.nearby.cache.lease.waits");
+  }
+
+  /**
+   * Check whether storage cells are loaded under a lease.
+   */
+  public boolean isEnabled() {
+    return leaseEnabled;
+  }
+
+  /**
+   * Loads the storage cells whose lease we get. Stale storage cells leased by other instances are
+   * served as they are, missing ones are polled for until their lease holder stores them, or
+   * loaded once their lease is ours or expired without them showing up.
+   * @param keys storage cells missing or stale in Redis
+   * @param stored storage cells read from Redis, stale ones included
+   * @param loadAndStore loads storage cells from the finder and stores them in Redis
+   * @return storage cells by geohash
+   */
+  public Map<String, RestaurantCell> loadUnderLease(Jedis jedis, List<String> keys,
+      Map<String, RestaurantCell> stored,
+      Function<Collection<String>, Map<String, RestaurantCell>> loadAndStore) {
+    String token = UUID.randomUUID().toString();
+    long deadline = System.currentTimeMillis() + leaseTtlInMillis;
+
+    Set<String> leased = lease(jedis, keys, token);
+    Map<String, RestaurantCell> cells = new HashMap<>(loadLeased(jedis, leased, stored, token,
+        loadAndStore));
+    List<String> pending = keys.stream()
+        .filter(key -> !leased.contains(key) && !stored.containsKey(key))
+        .collect(Collectors.toList());
+
+    while (!pending.isEmpty()) {
+      leaseWaits.increment();
+      if (System.currentTimeMillis() >= deadline) {
+        cells.putAll(loadAndStore.apply(pending));
+        break;
+      }
+      try {
+        Thread.sleep(LEASE_POLL_INTERVAL_IN_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cells.putAll(loadAndStore.apply(pending));
+        break;
+      }
+      Map<String, RestaurantCell> polled = restaurantCellStore.readAll(jedis, pending);
+      cells.putAll(polled);
+      pending.removeAll(polled.keySet());
+
+      Set<String> released = lease(jedis, pending, token);
+      cells.putAll(loadLeased(jedis, released, stored, token, loadAndStore));
+      pending.removeAll(released);
+    }
+    return cells;
+  }
+
+  private Set<String> lease(Jedis jedis, List<String> keys, String token) {
+    if (keys.isEmpty()) {
+      return Collections.emptySet();
+    }
+    Pipeline pipeline = jedis.pipelined();
+    List<Response<String>> responses = new ArrayList<>();
+    for (String key : keys) {
+      responses.add(pipeline.set(LEASE_KEY_PREFIX + key, token, "NX", "PX",
+          (int) leaseTtlInMillis));
+    }
+    pipeline.sync();
+
+    Set<String> leased = new HashSet<>();
+    for (int i = 0; i < keys.size(); i++) {
+      if ("OK".equals(responses.get(i).get())) {
+        leased.add(keys.get(i));
+      }
+    }
+    return leased;
+  }
+
+  private Map<String, RestaurantCell> loadLeased(Jedis jedis, Set<String> leased,
+      Map<String, RestaurantCell> stored, String token,
+      Function<Collection<String>, Map<String, RestaurantCell>> loadAndStore) {
+    if (leased.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    try {
+      // Previous lease holders may have stored storage cells right before we took the leases.
+      Map<String, RestaurantCell> cells = restaurantCellStore.readAll(jedis, leased);
+      cells.entrySet().removeIf(entry -> stored.containsKey(entry.getKey())
+          && entry.getValue().getRefreshAt() <= stored.get(entry.getKey()).getRefreshAt());
+      List<String> expired = leased.stream()
+          .filter(key -> !cells.containsKey(key))
+          .collect(Collectors.toList());
+      if (!expired.isEmpty()) {
+        cells.putAll(loadAndStore.apply(expired));
+      }
+      return cells;
+    } finally {
+      Pipeline pipeline = jedis.pipelined();
+      for (String key : leased) {
+        pipeline.eval(RELEASE_LEASE_SCRIPT, 1, LEASE_KEY_PREFIX + key, token);
+      }
+      pipeline.sync();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.repositoryservices.AccessFrequencyTracker;
+import com.crio.qeats.repositoryservices.NearbyRestaurantsCache;
+import com.google.common.util.concurrent.AtomicDouble;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads the most requested cells into the nearby restaurants cache a few minutes before the
+ * serving radius changes, at the start and end of every peak window, so the first lookups with
+ * the new radius do not all miss.
+ *
+ * <p>Every minute it compares the serving radius {@code qeats.nearby.prewarm.lead-minutes} from
+ * now with the one a minute earlier, and warms up to {@code qeats.nearby.prewarm.max-cells} of
+ * the most looked up cells according to the {@link AccessFrequencyTracker} when they differ.
+ * Each run publishes the number of cells loaded, already fresh or failed, along with its
+ * coverage: the estimated share of recent lookups that went to the cells it warmed.
+ */
+@Log4j2
+@Component
+public class PeakHourCacheWarmer {
+
+  @Autowired
+  private RestaurantService restaurantService;
+
+  @Autowired
+  private NearbyRestaurantsCache nearbyRestaurantsCache;
+
+  @Autowired
+  private AccessFrequencyTracker accessFrequencyTracker;
+
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${qeats.nearby.prewarm.enabled:true}")
+  private boolean enabled;
+
+  @Value("${qeats.nearby.cache.enabled:true}")
+  private boolean nearbyCacheEnabled;
+
+  @Value("${qeats.nearby.prewarm.lead-minutes:5}")
+  private long leadInMinutes;
+
+  @Value("${qeats.nearby.prewarm.max-cells:500}")
+  private int maxCells;
+
+  private Counter cellsLoaded;
+  private Counter cellsFresh;
+  private Counter cellsFailed;
+  private final AtomicDouble coverage = new AtomicDouble();
+
+  /**
+   * Registers the warm-up metrics.
+   */
+  @PostConstruct
+  public void initMetrics() {
+    cellsLoaded = meterRegistry.counter("qeats.nearby.prewarm.cells", "result", "loaded");
+    cellsFresh = meterRegistry.counter("qeats.nearby.prewarm.cells", "result", "fresh");
+    cellsFailed = meterRegistry.counter("qeats.nearby.prewarm.cells", "result", "failed");
+    meterRegistry.gauge("qeats.nearby.prewarm.coverage", coverage);
+  }
+
+  /**
+   * Check every minute whether the serving radius is about to change.
+   */
+  @Scheduled(cron = "0 * * * * *")
+  public void warmBeforeServingRadiusChanges() {
+    if (enabled) {
+      warmIfServingRadiusChanges(LocalTime.now());
+    }
+  }
+
+  /**
+   * Warm the most requested cells if the serving radius changes during the minute ending
+   * lead-minutes after the given time.
+   * @return number of cells warmed
+   */
+  public int warmIfServingRadiusChanges(LocalTime currentTime) {
+    LocalTime changeTime = currentTime.plusMinutes(leadInMinutes);
+    Double servingRadiusInKms = restaurantService.getServingRadiusInKms(changeTime);
+    if (servingRadiusInKms.equals(
+        restaurantService.getServingRadiusInKms(changeTime.minusMinutes(1)))) {
+      return 0;
+    }
+    return warm(servingRadiusInKms);
+  }
+
+  /**
+   * Warm the most requested cells for the given serving radius, so that they are still fresh
+   * lead-minutes from now.
+   * @return number of cells warmed
+   */
+  public int warm(Double servingRadiusInKms) {
+    if (!nearbyCacheEnabled || !redisConfiguration.isCacheAvailable()) {
+      return 0;
+    }
+    long startTimeInMillis = System.currentTimeMillis();
+    long freshUntilInMillis = startTimeInMillis + TimeUnit.MINUTES.toMillis(leadInMinutes);
+    Map<String, Long> topCells = accessFrequencyTracker.findTopCells(maxCells);
+    long totalRequests = accessFrequencyTracker.getCellLookups();
+
+    int warmed = 0;
+    long warmedRequests = 0;
+    for (Map.Entry<String, Long> cell : topCells.entrySet()) {
+      if (!redisConfiguration.isCacheAvailable()) {
+        log.warn("Redis became unavailable, stopped warming the nearby restaurants cache");
+        break;
+      }
+      try {
+        if (nearbyRestaurantsCache.warmCell(cell.getKey(), servingRadiusInKms,
+            freshUntilInMillis)) {
+          cellsLoaded.increment();
+        } else {
+          cellsFresh.increment();
+        }
+        warmed++;
+        warmedRequests += cell.getValue();
+      } catch (RuntimeException e) {
+        cellsFailed.increment();
+        log.warn("Unable to warm nearby restaurants of cell {}", cell.getKey(), e);
+      }
+    }
+    // Estimates may be a little high, so coverage is capped at 1.
+    coverage.set(totalRequests == 0 ? 1 : Math.min(1, (double) warmedRequests / totalRequests));
+
+    log.info("Warmed {} of {} cells for a {} km radius in {} ms, covering {} of {} lookups",
+        warmed, topCells.size(), servingRadiusInKms,
+        System.currentTimeMillis() - startTimeInMillis, warmedRequests, totalRequests);
+    return warmed;
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.indexes.RestaurantSearchIndex;
+import com.crio.qeats.repositoryservices.NearbyRestaurantsCache;
+import com.crio.qeats.repositoryservices.RestaurantCell;
+import com.crio.qeats.repositoryservices.RestaurantRepositoryService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Search results cached on the cells of the {@link NearbyRestaurantsCache}, keyed by the
+ * normalized search string.
+ *
+ * <p>A search runs once per cell, from the center of the cell over the radius of its candidates,
+ * and whatever the opening hours, so its matches hold at any time of the day and anywhere in the
+ * cell. They are kept on the cell as indexes into its candidates, and the open-now and exact
+ * radius filters run on every read against the opening hours of the cell and the location and
+ * time of the request. Results keep the order of the search. Matches are dropped along with
+ * their cell, so they share its eviction, expiry, background refresh and invalidation, and
+ * concurrent misses on the same search wait for one run like concurrent misses on a cell do.
+ * Searches that matched nothing are only kept for {@code qeats.search.cache.negative-ttl-seconds},
+ * so restaurants added to a cell's candidates in the meantime are found soon. At most
+ * {@code qeats.search.cache.max-searches-per-cell} searches are kept per cell, and others are
+ * searched directly like those made without a cell. Hits and misses are published to Micrometer,
+ * tagged with whether the matches came from a cell or a direct search.
+ */
+@Component
+@ConditionalOnProperty(name = "qeats.search.cache.enabled", havingValue = "true")
+public class RestaurantSearchCache {
+
+  @Autowired
+  private RestaurantRepositoryService restaurantRepositoryService;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${qeats.search.cache.max-searches-per-cell:100}")
+  private int maxSearchesPerCell;
+
+  @Value("${qeats.search.cache.negative-ttl-seconds:30}")
+  private long negativeTtlInSeconds;
+
+  private Counter hits;
+  private Counter misses;
+  private Counter directSearches;
+
+  /**
+   * Search that the cache answers.
+   */
+  @FunctionalInterface
+  public interface Search {
+
+    /**
+     * Get the restaurants within the radius that match the search string, open or not.
+     */
+    List<Restaurant> find(double latitude, double longitude, double radiusInKms);
+  }
+
+  /**
+   * Registers the metrics.
+   */
+  @PostConstruct
+  public void initMetrics() {
+    hits = meterRegistry.counter("qeats.search.cache", "result", "hit", "source", "cell");
+    misses = meterRegistry.counter("qeats.search.cache", "result", "miss", "source", "cell");
+    directSearches = meterRegistry.counter("qeats.search.cache", "result", "miss", "source",
+        "direct");
+  }
+
+  /**
+   * Normalize a search string into the key identifying the search.
+   * @param tokenized whether searches only depend on the tokens of the search string, as those of
+   *     the search index do, rather than on the exact string
+   */
+  public static String normalize(String searchString, boolean tokenized) {
+    return tokenized ? String.join(" ", RestaurantSearchIndex.tokenize(searchString))
+        : searchString;
+  }
+
+  /**
+   * Get the results of a search, running it on the cell of the location on a miss.
+   * @param query search string normalized with {@link #normalize}
+   * @return open restaurants within the serving radius, in the order of the search, or null if
+   *     the nearby restaurants cache is not in use, in which case callers search directly
+   */
+  public List<Restaurant> findRestaurants(String query, double latitude, double longitude,
+      LocalTime currentTime, double servingRadiusInKms, Search search) {
+    RestaurantCell cell = restaurantRepositoryService.findCachedRestaurantCell(latitude,
+        longitude, servingRadiusInKms);
+    if (cell == null) {
+      directSearches.increment();
+      return null;
+    }
+
+    WGS84Point center = GeoHash.withCharacterPrecision(latitude, longitude,
+        NearbyRestaurantsCache.GEOHASH_PRECISION).getBoundingBoxCenterPoint();
+    Supplier<List<Restaurant>> searchFromCenter = () -> search.find(center.getLatitude(),
+        center.getLongitude(), cell.getRadiusInKms());
+    boolean[] searched = {false};
+    int[] matches = cell.findMatches(query, () -> {
+      searched[0] = true;
+      return searchFromCenter.get();
+    }, maxSearchesPerCell, TimeUnit.SECONDS.toMillis(negativeTtlInSeconds));
+    if (matches == null) {
+      directSearches.increment();
+      matches = cell.indexesOf(searchFromCenter.get());
+    } else {
+      (searched[0] ? misses : hits).increment();
+    }
+    return cell.findOpenRestaurantsCloseBy(matches, latitude, longitude, currentTime,
+        servingRadiusInKms);
+  }
+}
@@ -7,9 +7,11 @@
 
 package com.crio.qeats.services;
 
+import com.crio.qeats.dto.Restaurant;
 import com.crio.qeats.exchanges.GetRestaurantsRequest;
 import com.crio.qeats.exchanges.GetRestaurantsResponse;
 import java.time.LocalTime;
+import java.util.function.Consumer;
 
 public interface RestaurantService {
 
@@ -19,6 +21,8 @@ public interface RestaurantService {
    * - service radius is 3KMs.
    * - All other times, serving radius is 5KMs.
    * - If there are no restaurants, return empty list of restaurants.
+   * - If the request has a limit or a cursor, return one page of the closest restaurants,
+   *   sorted by distance, along with the cursor of the next page.
    * @param getRestaurantsRequest valid lat/long
    * @param currentTime current time.
    * @return GetRestaurantsResponse object containing a list of open restaurants or an
@@ -27,6 +31,33 @@ public interface RestaurantService {
   GetRestaurantsResponse findAllRestaurantsCloseBy(
       GetRestaurantsRequest getRestaurantsRequest, LocalTime currentTime);
 
+  /**
+   * Same as {@link #findAllRestaurantsCloseBy} without a limit or cursor, but hands each
+   * restaurant to the action as soon as it is found instead of building the response.
+   * @param getRestaurantsRequest valid lat/long
+   * @param currentTime current time.
+   * @param action called with every open restaurant within the serving radius
+   */
+  void forEachRestaurantCloseBy(GetRestaurantsRequest getRestaurantsRequest,
+      LocalTime currentTime, Consumer<Restaurant> action);
+
+  /**
+   * Same as {@link #findAllRestaurantsCloseBy} without a limit or cursor, but returns the JSON
+   * body of the response, with sanitized restaurant names, from pre-serialized restaurants.
+   * @param getRestaurantsRequest valid lat/long
+   * @param currentTime current time.
+   * @return UTF-8 JSON of the GetRestaurantsResponse, or null if the restaurants close by are
+   *     not cached
+   */
+  byte[] findAllRestaurantsCloseByAsJson(GetRestaurantsRequest getRestaurantsRequest,
+      LocalTime currentTime);
+
+  /**
+   * Get the serving radius of nearby lookups at the given time: 3KMs during peak hours and
+   * 5KMs otherwise.
+   */
+  Double getServingRadiusInKms(LocalTime currentTime);
+
   /**
    * Get the restaurants by processing the query.
    * -Ordering rules
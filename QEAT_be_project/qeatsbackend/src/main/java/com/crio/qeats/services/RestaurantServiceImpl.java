@@ -10,20 +10,15 @@ package com.crio.qeats.services;
 import com.crio.qeats.dto.Restaurant;
 import com.crio.qeats.exchanges.GetRestaurantsRequest;
 import com.crio.qeats.exchanges.GetRestaurantsResponse;
+import com.crio.qeats.repositoryservices.RestaurantCell;
 import com.crio.qeats.repositoryservices.RestaurantRepositoryService;
+import com.crio.qeats.utils.NearestRestaurants;
 import java.time.LocalTime;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -34,10 +29,18 @@ public class RestaurantServiceImpl implements RestaurantService {
 
   private final Double peakHoursServingRadiusInKms = 3.0;
   private final Double normalHoursServingRadiusInKms = 5.0;
+  private final int defaultPageSize = 20;
 
   @Autowired
   private RestaurantRepositoryService restaurantRepositoryService;
 
+  @Autowired
+  private RestaurantsResponseCache restaurantsResponseCache;
+
+  // Only present when search results are cached.
+  @Autowired(required = false)
+  private RestaurantSearchCache restaurantSearchCache;
+
   private boolean isTimeWithInRange(LocalTime timeNow, LocalTime startTime, LocalTime endTime) {
     return timeNow.isAfter(startTime) && timeNow.isBefore(endTime);
   }
@@ -56,6 +59,17 @@ public class RestaurantServiceImpl implements RestaurantService {
 
     Double servingRadiusInKms = isPeakHour(currentTime) ? peakHoursServingRadiusInKms : normalHoursServingRadiusInKms;
 
+    if (getRestaurantsRequest.isPaginated()) {
+      NearestRestaurants nearestRestaurants = new NearestRestaurants(
+          getRestaurantsRequest.getLimit() == null ? defaultPageSize
+              : getRestaurantsRequest.getLimit(), getRestaurantsRequest.getCursor());
+      restaurantRepositoryService.findNearestRestaurantsCloseBy(
+          getRestaurantsRequest.getLatitude(), getRestaurantsRequest.getLongitude(), currentTime,
+          servingRadiusInKms, nearestRestaurants);
+      return new GetRestaurantsResponse(nearestRestaurants.getRestaurants(),
+          nearestRestaurants.getNextCursor());
+    }
+
     List<Restaurant> restaurantsCloseBy = restaurantRepositoryService.findAllRestaurantsCloseBy(
         getRestaurantsRequest.getLatitude(), getRestaurantsRequest.getLongitude(), currentTime, servingRadiusInKms);
 
@@ -63,6 +77,38 @@ public class RestaurantServiceImpl implements RestaurantService {
 
   }
 
+  @Override
+  public void forEachRestaurantCloseBy(GetRestaurantsRequest getRestaurantsRequest,
+      LocalTime currentTime, Consumer<Restaurant> action) {
+    Double servingRadiusInKms = isPeakHour(currentTime) ? peakHoursServingRadiusInKms
+        : normalHoursServingRadiusInKms;
+
+    restaurantRepositoryService.forEachRestaurantCloseBy(getRestaurantsRequest.getLatitude(),
+        getRestaurantsRequest.getLongitude(), currentTime, servingRadiusInKms, action);
+  }
+
+  @Override
+  public Double getServingRadiusInKms(LocalTime currentTime) {
+    return isPeakHour(currentTime) ? peakHoursServingRadiusInKms
+        : normalHoursServingRadiusInKms;
+  }
+
+  @Override
+  public byte[] findAllRestaurantsCloseByAsJson(GetRestaurantsRequest getRestaurantsRequest,
+      LocalTime currentTime) {
+    Double servingRadiusInKms = isPeakHour(currentTime) ? peakHoursServingRadiusInKms
+        : normalHoursServingRadiusInKms;
+
+    RestaurantCell cell = restaurantRepositoryService
+        .findCachedRestaurantCell(getRestaurantsRequest.getLatitude(),
+            getRestaurantsRequest.getLongitude(), servingRadiusInKms);
+    if (cell == null) {
+      return null;
+    }
+    return restaurantsResponseCache.getResponse(cell, getRestaurantsRequest.getLatitude(),
+        getRestaurantsRequest.getLongitude(), currentTime, servingRadiusInKms);
+  }
+
   // TODO: CRIO_TASK_MODULE_RESTAURANTSEARCH
   // Implement findRestaurantsBySearchQuery. The request object has the search
   // string.
@@ -76,35 +122,30 @@ public class RestaurantServiceImpl implements RestaurantService {
   @Override
   public GetRestaurantsResponse findRestaurantsBySearchQuery(GetRestaurantsRequest getRestaurantsRequest,
       LocalTime currentTime) {
-    LinkedHashSet<Restaurant> restaurantsHash = new LinkedHashSet<Restaurant>();
-    String searchString = getRestaurantsRequest.getSearchFor();
-    List<Restaurant> restaurants = new ArrayList<Restaurant>();
-    if (searchString != "") {
-      Double latitude = getRestaurantsRequest.getLatitude();
-      Double longitude = getRestaurantsRequest.getLongitude();
-      Double servingRadiusInKms = isPeakHour(currentTime) ? peakHoursServingRadiusInKms : normalHoursServingRadiusInKms;
-
-      List<Restaurant> l1 = restaurantRepositoryService.findRestaurantsByName(latitude, longitude, searchString,
-          currentTime, servingRadiusInKms);
+    return search(getRestaurantsRequest, currentTime, this::searchAllSources);
+  }
 
-      List<Restaurant> l2 = restaurantRepositoryService.findRestaurantsByAttributes(latitude, longitude, searchString,
+  // Restaurants whatever their opening hours if currentTime is null.
+  private List<Restaurant> searchAllSources(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms) {
+    if (restaurantRepositoryService.isRankedSearchAvailable()) {
+      return restaurantRepositoryService.findRankedRestaurants(latitude, longitude, searchString,
           currentTime, servingRadiusInKms);
+    }
 
-      List<Restaurant> l3 = restaurantRepositoryService.findRestaurantsByItemName(latitude, longitude, searchString,
-          currentTime, servingRadiusInKms);
+    List<Restaurant> l1 = restaurantRepositoryService.findRestaurantsByName(latitude,
+        longitude, searchString, currentTime, servingRadiusInKms);
 
-      List<Restaurant> l4 = restaurantRepositoryService.findRestaurantsByItemAttributes(latitude, longitude,
-          searchString, currentTime, servingRadiusInKms);
+    List<Restaurant> l2 = restaurantRepositoryService.findRestaurantsByAttributes(latitude,
+        longitude, searchString, currentTime, servingRadiusInKms);
 
-      restaurantsHash.addAll(l1);
-      restaurantsHash.addAll(l2);
-      restaurantsHash.addAll(l3);
-      restaurantsHash.addAll(l4);
+    List<Restaurant> l3 = restaurantRepositoryService.findRestaurantsByItemName(latitude,
+        longitude, searchString, currentTime, servingRadiusInKms);
 
-      restaurants = new ArrayList<Restaurant>(restaurantsHash);
+    List<Restaurant> l4 = restaurantRepositoryService.findRestaurantsByItemAttributes(latitude,
+        longitude, searchString, currentTime, servingRadiusInKms);
 
-    }
-    return new GetRestaurantsResponse(restaurants);
+    return merge(List.of(l1, l2, l3, l4));
   }
 
   // TODO: CRIO_TASK_MODULE_MULTITHREADING
@@ -115,38 +156,82 @@ public class RestaurantServiceImpl implements RestaurantService {
   @Override
   public GetRestaurantsResponse findRestaurantsBySearchQueryMt(GetRestaurantsRequest getRestaurantsRequest,
       LocalTime currentTime) {
-    LinkedHashSet<Restaurant> restaurantsHash = new LinkedHashSet<Restaurant>();
-    String searchString = getRestaurantsRequest.getSearchFor();
-    List<Restaurant> restaurants = new ArrayList<Restaurant>();
-    if (searchString != "") {
-      Double latitude = getRestaurantsRequest.getLatitude();
-      Double longitude = getRestaurantsRequest.getLongitude();
-      Double servingRadiusInKms = isPeakHour(currentTime) ? peakHoursServingRadiusInKms : normalHoursServingRadiusInKms;
+    return search(getRestaurantsRequest, currentTime, this::searchAllSourcesMt);
+  }
+
+  // Restaurants whatever their opening hours if currentTime is null.
+  private List<Restaurant> searchAllSourcesMt(Double latitude, Double longitude,
+      String searchString, LocalTime currentTime, Double servingRadiusInKms) {
+    // Answered in one pass over the index, nothing to parallelize.
+    if (restaurantRepositoryService.isRankedSearchAvailable()) {
+      return restaurantRepositoryService.findRankedRestaurants(latitude, longitude, searchString,
+          currentTime, servingRadiusInKms);
+    }
+
+    CompletableFuture<List<Restaurant>> l1 =
+        restaurantRepositoryService.findRestaurantsByNameMT(latitude, longitude, searchString,
+            currentTime, servingRadiusInKms);
+
+    CompletableFuture<List<Restaurant>> l2 =
+        restaurantRepositoryService.findRestaurantsByAttributesMT(latitude, longitude,
+            searchString, currentTime, servingRadiusInKms);
+
+    CompletableFuture<List<Restaurant>> l3 =
+        restaurantRepositoryService.findRestaurantsByItemNameMT(latitude, longitude, searchString,
+            currentTime, servingRadiusInKms);
 
-      CompletableFuture<List<Restaurant>> l1 = restaurantRepositoryService.findRestaurantsByNameMT(latitude, longitude,
-          searchString, currentTime, servingRadiusInKms);
+    CompletableFuture<List<Restaurant>> l4 =
+        restaurantRepositoryService.findRestaurantsByItemAttributesMT(latitude, longitude,
+            searchString, currentTime, servingRadiusInKms);
 
-      CompletableFuture<List<Restaurant>> l2 = restaurantRepositoryService.findRestaurantsByAttributesMT(latitude,
-          longitude, searchString, currentTime, servingRadiusInKms);
+    CompletableFuture.allOf(l1, l2, l3, l4).join();
 
-      CompletableFuture<List<Restaurant>> l3 = restaurantRepositoryService.findRestaurantsByItemNameMT(latitude,
-          longitude, searchString, currentTime, servingRadiusInKms);
+    return merge(List.of(l1.join(), l2.join(), l3.join(), l4.join()));
+  }
+
+  // Searches every source for the restaurants matching the search string of the request.
+  private interface SearchSources {
 
-      CompletableFuture<List<Restaurant>> l4 = restaurantRepositoryService.findRestaurantsByItemAttributesMT(latitude,
-          longitude, searchString, currentTime, servingRadiusInKms);
+    List<Restaurant> search(Double latitude, Double longitude, String searchString,
+        LocalTime currentTime, Double servingRadiusInKms);
+  }
 
-      CompletableFuture.allOf(l1, l2, l3, l4).join();
-  
-      restaurantsHash.addAll((Collection<? extends Restaurant>) l1);
-      restaurantsHash.addAll((Collection<? extends Restaurant>) l2);
-      restaurantsHash.addAll((Collection<? extends Restaurant>) l3);
-      restaurantsHash.addAll((Collection<? extends Restaurant>) l4);
+  private GetRestaurantsResponse search(GetRestaurantsRequest getRestaurantsRequest,
+      LocalTime currentTime, SearchSources searchSources) {
+    String searchString = getRestaurantsRequest.getSearchFor();
+    List<Restaurant> restaurants = new ArrayList<Restaurant>();
+    if (searchString != "") {
+      Double latitude = getRestaurantsRequest.getLatitude();
+      Double longitude = getRestaurantsRequest.getLongitude();
+      Double servingRadiusInKms = isPeakHour(currentTime) ? peakHoursServingRadiusInKms
+          : normalHoursServingRadiusInKms;
+
+      // The cache searches cells for any time of the day and filters the open restaurants.
+      restaurants = restaurantSearchCache == null ? null
+          : restaurantSearchCache.findRestaurants(normalize(searchString), latitude, longitude,
+              currentTime, servingRadiusInKms, (cellLatitude, cellLongitude, radiusInKms) ->
+                  searchSources.search(cellLatitude, cellLongitude, searchString, null,
+                      radiusInKms));
+      if (restaurants == null) {
+        restaurants = searchSources.search(latitude, longitude, searchString, currentTime,
+            servingRadiusInKms);
+      }
+    }
+    return new GetRestaurantsResponse(restaurants);
+  }
 
-      restaurants = new ArrayList<Restaurant>(restaurantsHash);
-      
+  // Every restaurant found once, in the order of the sources that found it first.
+  private static List<Restaurant> merge(List<List<Restaurant>> results) {
+    LinkedHashSet<Restaurant> restaurantsHash = new LinkedHashSet<Restaurant>();
+    for (List<Restaurant> restaurants : results) {
+      restaurantsHash.addAll(restaurants);
     }
-      return new GetRestaurantsResponse(restaurants);
+    return new ArrayList<Restaurant>(restaurantsHash);
+  }
 
+  // The search index only depends on the tokens of the search string.
+  private String normalize(String searchString) {
+    return RestaurantSearchCache.normalize(searchString,
+        restaurantRepositoryService.isRankedSearchAvailable());
   }
 }
-
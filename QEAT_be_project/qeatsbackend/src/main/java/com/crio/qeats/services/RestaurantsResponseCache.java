@@ -0,0 +1,175 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import ch.hsr.geohash.GeoHash;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.exchanges.GetRestaurantsResponse;
+import com.crio.qeats.repositoryservices.NearbyRestaurantsCache;
+import com.crio.qeats.repositoryservices.RestaurantCell;
+import com.crio.qeats.repositoryservices.RestaurantsChangedEvent;
+import com.crio.qeats.utils.GeoUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serialized {@link GetRestaurantsResponse} bodies of nearby lookups, so the hottest cells are
+ * answered without building restaurant objects or going through Jackson.
+ *
+ * <p>Entries are keyed by geohash cell, serving radius and open window of the cell, and hold the
+ * JSON of every candidate of the cell that is open during that window, along with their
+ * coordinates. A lookup only applies the exact radius filter to the coordinates and concatenates
+ * the JSON of the restaurants that pass, so responses are the same as those built from objects.
+ * An entry is rebuilt when the cell it was built from is reloaded, and everything is dropped on
+ * a {@link RestaurantsChangedEvent}.
+ */
+@Component
+public class RestaurantsResponseCache {
+
+  private static final byte[] PREFIX = "{\"restaurants\":[".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${qeats.nearby.response-cache.maximum-size:1000}")
+  private long maximumSize;
+
+  @Value("${qeats.nearby.cache.local.ttl-seconds:60}")
+  private long ttlInSeconds;
+
+  private ObjectWriter restaurantWriter;
+  private Cache<String, PreparedResponse> cache;
+
+  /**
+   * Creates the cache and registers its metrics.
+   */
+  @PostConstruct
+  public void initCache() {
+    restaurantWriter = objectMapper.writerFor(Restaurant.class);
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttlInSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+    GuavaCacheMetrics.monitor(meterRegistry, cache, "qeats.nearby.cache.response");
+  }
+
+  /**
+   * Drop every response once restaurants changed.
+   */
+  @EventListener
+  public void onRestaurantsChanged(RestaurantsChangedEvent event) {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Get the JSON body of the response listing the open restaurants within the serving radius.
+   * @param cell cached candidates of the cell of the location
+   * @return UTF-8 JSON of a {@link GetRestaurantsResponse}, with sanitized names
+   */
+  public byte[] getResponse(RestaurantCell cell, double latitude, double longitude,
+      LocalTime currentTime, double servingRadiusInKms) {
+    String key = GeoHash.geoHashStringWithCharacterPrecision(latitude, longitude,
+        NearbyRestaurantsCache.GEOHASH_PRECISION) + ':' + servingRadiusInKms + ':'
+        + cell.openWindowAt(currentTime);
+
+    PreparedResponse preparedResponse = cache.getIfPresent(key);
+    if (preparedResponse == null || preparedResponse.cell != cell) {
+      preparedResponse = prepare(cell, currentTime);
+      cache.put(key, preparedResponse);
+    }
+    return preparedResponse.write(latitude, longitude, servingRadiusInKms);
+  }
+
+  private PreparedResponse prepare(RestaurantCell cell, LocalTime currentTime) {
+    List<Restaurant> restaurants = cell.getRestaurants();
+    List<Integer> open = new ArrayList<>();
+    for (int i = 0; i < restaurants.size(); i++) {
+      if (cell.isOpen(i, currentTime)) {
+        open.add(i);
+      }
+    }
+
+    double[] latitudes = new double[open.size()];
+    double[] longitudes = new double[open.size()];
+    byte[][] json = new byte[open.size()][];
+    for (int i = 0; i < open.size(); i++) {
+      Restaurant restaurant = new Restaurant(restaurants.get(open.get(i)));
+      restaurant.setName(GetRestaurantsResponse.sanitizeName(restaurant.getName()));
+      latitudes[i] = restaurant.getLatitude();
+      longitudes[i] = restaurant.getLongitude();
+      try {
+        json[i] = restaurantWriter.writeValueAsBytes(restaurant);
+      } catch (JsonProcessingException e) {
+        throw new IllegalStateException("Unable to serialize restaurant", e);
+      }
+    }
+    return new PreparedResponse(cell, latitudes, longitudes, json);
+  }
+
+  private static class PreparedResponse {
+
+    private final RestaurantCell cell;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final byte[][] json;
+
+    PreparedResponse(RestaurantCell cell, double[] latitudes, double[] longitudes,
+        byte[][] json) {
+      this.cell = cell;
+      this.latitudes = latitudes;
+      this.longitudes = longitudes;
+      this.json = json;
+    }
+
+    byte[] write(double latitude, double longitude, double servingRadiusInKms) {
+      int[] rows = new int[json.length];
+      for (int i = 0; i < rows.length; i++) {
+        rows[i] = i;
+      }
+      int count = new GeoUtils.RadiusFilter(latitude, longitude, servingRadiusInKms)
+          .retainWithinRadius(latitudes, longitudes, rows, rows.length);
+
+      int length = PREFIX.length + SUFFIX.length + Math.max(count - 1, 0);
+      for (int i = 0; i < count; i++) {
+        length += json[rows[i]].length;
+      }
+      byte[] body = new byte[length];
+      System.arraycopy(PREFIX, 0, body, 0, PREFIX.length);
+      int position = PREFIX.length;
+      for (int i = 0; i < count; i++) {
+        if (i > 0) {
+          body[position++] = ',';
+        }
+        byte[] restaurant = json[rows[i]];
+        System.arraycopy(restaurant, 0, body, position, restaurant.length);
+        position += restaurant.length;
+      }
+      System.arraycopy(SUFFIX, 0, body, position, SUFFIX.length);
+      return body;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calls to a failing dependency for a while, so callers fall back right away instead of
+ * waiting for it to time out.
+ *
+ * <p>The breaker opens after {@code failureThreshold} failures in a row. While open it rejects
+ * calls, and once {@code openDurationInMillis} have passed it lets one trial call through per
+ * open duration: the breaker closes as soon as a call succeeds and reopens if it fails.
+ */
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private static final long NEVER = Long.MIN_VALUE;
+
+  private final int failureThreshold;
+  private final long openDurationInMillis;
+  private final LongSupplier clock;
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private final AtomicLong trialStartedAt = new AtomicLong(NEVER);
+  private volatile long openedAt = NEVER;
+
+  public CircuitBreaker(int failureThreshold, long openDurationInMillis) {
+    this(failureThreshold, openDurationInMillis, System::currentTimeMillis);
+  }
+
+  /**
+   * Creates a closed breaker.
+   * @param failureThreshold failures in a row that open the breaker
+   * @param openDurationInMillis time the breaker stays open before letting a trial call through
+   * @param clock current time in milliseconds
+   */
+  public CircuitBreaker(int failureThreshold, long openDurationInMillis, LongSupplier clock) {
+    if (failureThreshold <= 0 || openDurationInMillis < 0) {
+      throw new IllegalArgumentException(
+          "Invalid circuit breaker " + failureThreshold + "/" + openDurationInMillis);
+    }
+    this.failureThreshold = failureThreshold;
+    this.openDurationInMillis = openDurationInMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * Check whether a call would go through right now, without claiming the trial call while half
+   * open.
+   */
+  public boolean allowsRequest() {
+    long opened = openedAt;
+    if (opened == NEVER) {
+      return true;
+    }
+    long now = clock.getAsLong();
+    return now - opened >= openDurationInMillis && isTrialDue(trialStartedAt.get(), now);
+  }
+
+  /**
+   * Claim a call. A true while half open makes the caller the trial call, which must report its
+   * outcome with {@link #recordSuccess} or {@link #recordFailure}.
+   * @return false if the call must not go through
+   */
+  public boolean tryAcquirePermission() {
+    long opened = openedAt;
+    if (opened == NEVER) {
+      return true;
+    }
+    long now = clock.getAsLong();
+    if (now - opened < openDurationInMillis) {
+      return false;
+    }
+    long trialStarted = trialStartedAt.get();
+    return isTrialDue(trialStarted, now) && trialStartedAt.compareAndSet(trialStarted, now);
+  }
+
+  /**
+   * Report a successful call; closes the breaker.
+   */
+  public void recordSuccess() {
+    consecutiveFailures.set(0);
+    openedAt = NEVER;
+    trialStartedAt.set(NEVER);
+  }
+
+  /**
+   * Report a failed call.
+   * @return true if the failure opened, or reopened, the breaker
+   */
+  public boolean recordFailure() {
+    if (consecutiveFailures.incrementAndGet() < failureThreshold && openedAt == NEVER) {
+      return false;
+    }
+    openedAt = clock.getAsLong();
+    trialStartedAt.set(NEVER);
+    return true;
+  }
+
+  /**
+   * Get the state of the breaker.
+   */
+  public State getState() {
+    long opened = openedAt;
+    if (opened == NEVER) {
+      return State.CLOSED;
+    }
+    return clock.getAsLong() - opened < openDurationInMillis ? State.OPEN : State.HALF_OPEN;
+  }
+
+  // No trial call is running, or the last one did not report within an open duration.
+  private boolean isTrialDue(long trialStarted, long now) {
+    return trialStarted == NEVER || now - trialStarted >= openDurationInMillis;
+  }
+}
@@ -7,6 +7,10 @@
 
 package com.crio.qeats.utils;
 
+import ch.hsr.geohash.GeoHash;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
@@ -14,42 +18,195 @@ import lombok.Data;
 @AllArgsConstructor
 public class GeoUtils {
 
+  private static final double EARTH_RADIUS_IN_KMS = 6371.0;
+
   public static double findDistanceInKm(double srcLatitude, double srcLongitude,
       double dstLatitude, double dstLongitude) {
-    return distance(srcLatitude, dstLatitude, srcLongitude, dstLongitude, 0, 0);
+    return distance(haversine(srcLatitude, srcLongitude, Math.cos(Math.toRadians(srcLatitude)),
+        dstLatitude, dstLongitude));
+  }
+
+  /**
+   * Find the coordinates strictly within a radius of a location, i.e. those for which
+   * {@link #findDistanceInKm} is smaller than the radius.
+   * @param latitudes latitudes of the coordinates to check
+   * @param longitudes longitudes of the coordinates to check, same length as latitudes
+   * @return indexes of the matching coordinates, in increasing order
+   */
+  public static int[] findWithinRadius(double latitude, double longitude, double radiusInKms,
+      double[] latitudes, double[] longitudes) {
+    int[] indexes = new int[latitudes.length];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = i;
+    }
+    int count = new RadiusFilter(latitude, longitude, radiusInKms)
+        .retainWithinRadius(latitudes, longitudes, indexes, indexes.length);
+    return Arrays.copyOf(indexes, count);
+  }
+
+  /**
+   * Find the geohash cells of the given precision a circle overlaps, so that every location
+   * strictly within the radius falls in one of them.
+   * @return geohashes of the cells, row by row from the south west
+   */
+  public static List<String> findCoveringGeoHashes(double latitude, double longitude,
+      double radiusInKms, int precision) {
+    RadiusFilter radiusFilter = new RadiusFilter(latitude, longitude, radiusInKms);
+    // Geohashes interleave longitude and latitude bits, starting with longitude.
+    int rows = 1 << (5 * precision / 2);
+    int columns = 1 << ((5 * precision + 1) / 2);
+    double cellHeight = 180.0 / rows;
+    double cellWidth = 360.0 / columns;
+
+    int firstRow = Math.max(0, (int) Math.floor((radiusFilter.minLatitude + 90) / cellHeight));
+    int lastRow = Math.min(rows - 1,
+        (int) Math.floor((radiusFilter.maxLatitude + 90) / cellHeight));
+    int firstColumn = (int) Math.floor(
+        (longitude - radiusFilter.longitudeDelta + 180) / cellWidth);
+    int lastColumn = Math.min(firstColumn + columns - 1,
+        (int) Math.floor((longitude + radiusFilter.longitudeDelta + 180) / cellWidth));
+
+    List<String> geoHashes = new ArrayList<>();
+    for (int row = firstRow; row <= lastRow; row++) {
+      double minLatitude = -90 + row * cellHeight;
+      // The nearest point of a cell is taken at the latitude of the row nearest to the center,
+      // which is exact up to a negligible error for circles much smaller than the earth.
+      double nearestLatitude = Math.max(minLatitude, Math.min(minLatitude + cellHeight, latitude));
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        double minLongitude = -180 + Math.floorMod(column, columns) * cellWidth;
+        double offset = ((longitude - minLongitude) % 360 + 360) % 360;
+        double nearestLongitude = offset <= cellWidth ? longitude
+            : offset - cellWidth < 360 - offset ? minLongitude + cellWidth : minLongitude;
+        if (radiusFilter.contains(nearestLatitude, nearestLongitude)) {
+          geoHashes.add(GeoHash.geoHashStringWithCharacterPrecision(
+              minLatitude + cellHeight / 2, minLongitude + cellWidth / 2, precision));
+        }
+      }
+    }
+    return geoHashes;
   }
 
   /**
-   * THIS IS BORROWED CODE. Calculate distance between two points in latitude and longitude taking
-   * into account height difference. If you are not interested in height difference pass 0.0. Uses
-   * Haversine method as its base.
-   *
-   * <p>lat1, lon1 Start point lat2, lon2 End point el1 Start altitude in meters el2 End altitude
-   * in
-   * meters
-   *
-   * @returns Distance in Kilo Meters
+   * Precomputed radius check around a location, for filtering many coordinates against the same
+   * query. Candidates outside the bounding box of the circle are rejected with a couple of
+   * comparisons. The rest are compared on the haversine term, a quarter of the squared chord
+   * between the two points, against the same term at the radius, which needs no square root or
+   * inverse trigonometry. The exact distance is only computed for the caller when asked.
    */
-  private static double distance(
-      double lat1, double lat2, double lon1, double lon2, double el1, double el2) {
+  public static final class RadiusFilter {
+
+    private final double latitude;
+    private final double longitude;
+    private final double cosOfLatitude;
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double longitudeDelta;
+    private final double maxHaversine;
+
+    /**
+     * Prepare the filter for the given query.
+     */
+    public RadiusFilter(double latitude, double longitude, double radiusInKms) {
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.cosOfLatitude = Math.cos(Math.toRadians(latitude));
+
+      // Bounding box of the circle, see
+      // http://janmatuschek.de/LatitudeLongitudeBoundingCoordinates
+      double angularRadius = Math.max(radiusInKms, 0) / EARTH_RADIUS_IN_KMS;
+      double latitudeDelta = Math.toDegrees(angularRadius);
+      this.minLatitude = latitude - latitudeDelta;
+      this.maxLatitude = latitude + latitudeDelta;
+      double sinOfLongitudeDelta = Math.sin(angularRadius) / cosOfLatitude;
+      if (minLatitude > -90 && maxLatitude < 90 && sinOfLongitudeDelta < 1) {
+        this.longitudeDelta = Math.toDegrees(Math.asin(sinOfLongitudeDelta));
+      } else {
+        // The circle covers a pole or is large enough to span every longitude.
+        this.longitudeDelta = 180;
+      }
+
+      double sinOfHalfAngle = Math.sin(angularRadius / 2);
+      this.maxHaversine = angularRadius >= Math.PI ? Double.POSITIVE_INFINITY
+          : sinOfHalfAngle * sinOfHalfAngle;
+    }
 
-    final int R = 6371; // Radius of the earth
+    /**
+     * Check whether a location is strictly within the radius.
+     */
+    public boolean contains(double dstLatitude, double dstLongitude) {
+      if (dstLatitude < minLatitude || dstLatitude > maxLatitude) {
+        return false;
+      }
+      double longitudeDifference = Math.abs(dstLongitude - longitude) % 360;
+      if (Math.min(longitudeDifference, 360 - longitudeDifference) > longitudeDelta) {
+        return false;
+      }
+      return haversine(latitude, longitude, cosOfLatitude, dstLatitude, dstLongitude)
+          < maxHaversine;
+    }
 
-    double latDistance = Math.toRadians(lat2 - lat1);
-    double lonDistance = Math.toRadians(lon2 - lon1);
-    double a =
-        Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-            + Math.cos(Math.toRadians(lat1))
-            * Math.cos(Math.toRadians(lat2))
-            * Math.sin(lonDistance / 2)
-            * Math.sin(lonDistance / 2);
-    double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-    double distance = R * c;
+    /**
+     * Keep the candidates within the radius.
+     * @param latitudes latitude column indexed by the candidates
+     * @param longitudes longitude column indexed by the candidates
+     * @param candidates indexes into the columns; the matching ones are moved to the front
+     * @param count number of candidates in use
+     * @return number of matching candidates
+     */
+    public int retainWithinRadius(double[] latitudes, double[] longitudes, int[] candidates,
+        int count) {
+      int retained = 0;
+      for (int i = 0; i < count; i++) {
+        int candidate = candidates[i];
+        if (contains(latitudes[candidate], longitudes[candidate])) {
+          candidates[retained++] = candidate;
+        }
+      }
+      return retained;
+    }
 
-    double height = el1 - el2;
+    /**
+     * Southern edge of the bounding box of the circle, in degrees.
+     */
+    public double getMinLatitude() {
+      return minLatitude;
+    }
 
-    distance = Math.pow(distance, 2) + Math.pow(height, 2);
+    /**
+     * Northern edge of the bounding box of the circle, in degrees.
+     */
+    public double getMaxLatitude() {
+      return maxLatitude;
+    }
+
+    /**
+     * Half the width of the bounding box of the circle, in degrees; 180 if it spans every
+     * longitude.
+     */
+    public double getLongitudeDelta() {
+      return longitudeDelta;
+    }
+
+    /**
+     * Exact distance from the query location, same as {@link GeoUtils#findDistanceInKm}.
+     */
+    public double distanceInKm(double dstLatitude, double dstLongitude) {
+      return distance(haversine(latitude, longitude, cosOfLatitude, dstLatitude, dstLongitude));
+    }
+  }
+
+  // Haversine of the central angle between two points, sin^2(dLat / 2) + cos(lat1) cos(lat2)
+  // sin^2(dLon / 2), see https://en.wikipedia.org/wiki/Haversine_formula
+  private static double haversine(double srcLatitude, double srcLongitude,
+      double cosOfSrcLatitude, double dstLatitude, double dstLongitude) {
+    double sinOfHalfLatitudeDistance = Math.sin(Math.toRadians(dstLatitude - srcLatitude) / 2);
+    double sinOfHalfLongitudeDistance = Math.sin(Math.toRadians(dstLongitude - srcLongitude) / 2);
+    return sinOfHalfLatitudeDistance * sinOfHalfLatitudeDistance
+        + cosOfSrcLatitude * Math.cos(Math.toRadians(dstLatitude))
+        * sinOfHalfLongitudeDistance * sinOfHalfLongitudeDistance;
+  }
 
-    return Math.sqrt(distance);
+  private static double distance(double haversine) {
+    return 2 * EARTH_RADIUS_IN_KMS * Math.asin(Math.sqrt(Math.min(haversine, 1)));
   }
 }
@@ -0,0 +1,154 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.utils;
+
+import com.crio.qeats.dto.Restaurant;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects one page of the restaurants closest to a location.
+ *
+ * <p>Restaurants are ordered by distance, then by restaurant id. Only the {@code limit} closest
+ * restaurants seen so far are kept, in a bounded max-heap, so memory does not grow with the
+ * number of restaurants offered. A page starts right after the position encoded in the cursor of
+ * the previous page, which makes paging stable even if restaurants are added in between.
+ */
+public class NearestRestaurants {
+
+  private static final Comparator<Restaurant> BY_DISTANCE = Comparator
+      .comparingDouble(Restaurant::getDistance)
+      .thenComparing(Restaurant::getRestaurantId);
+
+  private final int limit;
+  private final double afterDistance;
+  private final String afterRestaurantId;
+  private final PriorityQueue<Restaurant> heap;
+  private boolean morePages;
+
+  /**
+   * Start collecting a page.
+   * @param limit maximum number of restaurants in the page
+   * @param cursor cursor returned with the previous page, or null for the first page
+   * @throws IllegalArgumentException if the limit is not positive or the cursor is invalid
+   */
+  public NearestRestaurants(int limit, String cursor) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Invalid page limit " + limit);
+    }
+    this.limit = limit;
+    this.heap = new PriorityQueue<>(Math.min(limit, 64) + 1, BY_DISTANCE.reversed());
+
+    if (cursor == null) {
+      this.afterDistance = Double.NEGATIVE_INFINITY;
+      this.afterRestaurantId = "";
+      return;
+    }
+    String position;
+    try {
+      position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+    }
+    int separator = position.indexOf(':');
+    if (separator < 0) {
+      throw new IllegalArgumentException("Invalid cursor " + cursor);
+    }
+    try {
+      this.afterDistance = Double.parseDouble(position.substring(0, separator));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+    }
+    this.afterRestaurantId = position.substring(separator + 1);
+  }
+
+  /**
+   * Check whether a cursor can be decoded.
+   */
+  public static boolean isValidCursor(String cursor) {
+    try {
+      new NearestRestaurants(1, cursor);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Check whether a restaurant at the given distance would make it into the page, so callers
+   * can skip building restaurants that would be dropped right away.
+   * Call {@link #offer} for every restaurant this returns true for.
+   */
+  public boolean admits(double distanceInKm, String restaurantId) {
+    if (compare(distanceInKm, restaurantId, afterDistance, afterRestaurantId) <= 0) {
+      return false;
+    }
+    if (heap.size() < limit) {
+      return true;
+    }
+    morePages = true;
+    Restaurant farthest = heap.peek();
+    return compare(distanceInKm, restaurantId, farthest.getDistance(),
+        farthest.getRestaurantId()) < 0;
+  }
+
+  /**
+   * Add a restaurant admitted by {@link #admits}; its distance must be set.
+   */
+  public void offer(Restaurant restaurant) {
+    heap.add(restaurant);
+    if (heap.size() > limit) {
+      heap.poll();
+    }
+  }
+
+  /**
+   * Set the distance of every restaurant from the given location and offer those admitted.
+   */
+  public void offerAll(double latitude, double longitude, List<Restaurant> restaurants) {
+    for (Restaurant restaurant : restaurants) {
+      double distanceInKm = GeoUtils.findDistanceInKm(latitude, longitude,
+          restaurant.getLatitude(), restaurant.getLongitude());
+      if (admits(distanceInKm, restaurant.getRestaurantId())) {
+        restaurant.setDistance(distanceInKm);
+        offer(restaurant);
+      }
+    }
+  }
+
+  /**
+   * The page, closest restaurant first.
+   */
+  public List<Restaurant> getRestaurants() {
+    List<Restaurant> restaurants = new ArrayList<>(heap);
+    restaurants.sort(BY_DISTANCE);
+    return restaurants;
+  }
+
+  /**
+   * Cursor of the next page, or null if this is the last page.
+   */
+  public String getNextCursor() {
+    if (!morePages || heap.isEmpty()) {
+      return null;
+    }
+    Restaurant last = heap.peek();
+    String position = last.getDistance() + ":" + last.getRestaurantId();
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(position.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static int compare(double distance, String restaurantId, double otherDistance,
+      String otherRestaurantId) {
+    int byDistance = Double.compare(distance, otherDistance);
+    return byDistance != 0 ? byDistance : restaurantId.compareTo(otherRestaurantId);
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.utils;
+
+import java.time.LocalTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.Value;
+
+/**
+ * Opening hours of a restaurant as minute-of-day values, parsed once from the "HH:mm" strings
+ * stored with the restaurant.
+ *
+ * <p>A restaurant is open strictly after its opening time and strictly before its closing time.
+ * When the closing time is earlier than the opening time the restaurant is open overnight, e.g.
+ * 18:00 to 02:00 is open at 23:30 and at 01:30. Equal opening and closing times never open.
+ */
+@Value
+public class OpeningHours {
+
+  public static final int MINUTES_PER_DAY = 24 * 60;
+
+  // Restaurants share a few distinct opening hours, kept parsed up to this many of them.
+  private static final int MAX_PARSED = 10000;
+  private static final ConcurrentMap<String, OpeningHours> PARSED = new ConcurrentHashMap<>();
+
+  private final int opensAt;
+  private final int closesAt;
+
+  /**
+   * Parse opening hours, ignoring seconds.
+   * @throws java.time.format.DateTimeParseException if either time is not a valid time
+   * @throws NullPointerException if either time is missing
+   */
+  public static OpeningHours parse(String opensAt, String closesAt) {
+    return new OpeningHours(minuteOfDay(LocalTime.parse(opensAt)),
+        minuteOfDay(LocalTime.parse(closesAt)));
+  }
+
+  /**
+   * Get the opening hours like {@link #parse} does, parsing every distinct pair of times once
+   * and reusing the result for the restaurants read later.
+   */
+  public static OpeningHours of(String opensAt, String closesAt) {
+    String key = opensAt + '-' + closesAt;
+    OpeningHours openingHours = PARSED.get(key);
+    if (openingHours == null) {
+      openingHours = parse(opensAt, closesAt);
+      if (PARSED.size() < MAX_PARSED) {
+        PARSED.putIfAbsent(key, openingHours);
+      }
+    }
+    return openingHours;
+  }
+
+  public boolean isOpenAt(LocalTime time) {
+    return isOpen(opensAt, closesAt, minuteOfDay(time), isOnTheMinute(time));
+  }
+
+  public boolean isOvernight() {
+    return closesAt < opensAt;
+  }
+
+  public static int minuteOfDay(LocalTime time) {
+    return time.getHour() * 60 + time.getMinute();
+  }
+
+  public static boolean isOnTheMinute(LocalTime time) {
+    return time.getSecond() == 0 && time.getNano() == 0;
+  }
+
+  /**
+   * Check whether a restaurant is open at a given time.
+   * @param opensAt opening minute of day
+   * @param closesAt closing minute of day
+   * @param minuteOfDay minute of day of the time to check
+   * @param onTheMinute true if the time is exactly at the start of that minute
+   */
+  public static boolean isOpen(int opensAt, int closesAt, int minuteOfDay, boolean onTheMinute) {
+    boolean afterOpening = minuteOfDay > opensAt || (minuteOfDay == opensAt && !onTheMinute);
+    boolean beforeClosing = minuteOfDay < closesAt;
+    return closesAt < opensAt ? afterOpening || beforeClosing : afterOpening && beforeClosing;
+  }
+
+  /**
+   * Check whether a restaurant is open at every instant of [fromMinute, toMinute).
+   * The range must lie within one day.
+   */
+  public static boolean isOpenThroughout(int opensAt, int closesAt, int fromMinute,
+      int toMinute) {
+    if (closesAt < opensAt) {
+      return opensAt < fromMinute || toMinute <= closesAt;
+    }
+    return opensAt < fromMinute && toMinute <= closesAt;
+  }
+
+  /**
+   * Check whether a restaurant is open at some instant of [fromMinute, toMinute).
+   * The range must lie within one day.
+   */
+  public static boolean isOpenDuring(int opensAt, int closesAt, int fromMinute, int toMinute) {
+    if (closesAt < opensAt) {
+      return opensAt < toMinute || fromMinute < closesAt;
+    }
+    return opensAt < closesAt && opensAt < toMinute && fromMinute < closesAt;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import com.crio.qeats.dto.Restaurant;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the cache codecs with the JSON strings the Redis cache used to store, written and read
+ * with a new {@link ObjectMapper} every time. The encoded size of every format is printed during
+ * setup. Run with {@code ./gradlew :qeatsbackend:jmh --args="CacheCodec"} or the main method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+  @Param({"legacy", "json", "smile", "smile-lz4"})
+  private String format;
+
+  @Param({"20", "200"})
+  private int restaurants;
+
+  private List<Restaurant> value;
+  private CacheCodec codec;
+  private byte[] encoded;
+  private String legacyEncoded;
+
+  @Setup
+  public void setup() throws IOException {
+    value = new ArrayList<>();
+    Random random = new Random(42);
+    for (int i = 0; i < restaurants; i++) {
+      value.add(new Restaurant(null, "restaurant-" + i, "Restaurant " + i, "Bengaluru",
+          "https://images.qeats.io/" + random.nextInt(1_000_000) + ".jpg",
+          12.9 + random.nextDouble() / 10, 77.5 + random.nextDouble() / 10, "11:00", "23:00",
+          Arrays.asList("North Indian", "Chinese", "Cafe").subList(0, 1 + random.nextInt(3)),
+          null));
+    }
+
+    switch (format) {
+      case "legacy":
+        legacyEncoded = new ObjectMapper().writeValueAsString(value);
+        System.out.println("\nlegacy: " + legacyEncoded.length() + " chars");
+        return;
+      case "json":
+        codec = JacksonCacheCodec.json();
+        break;
+      case "smile":
+        codec = JacksonCacheCodec.smile();
+        break;
+      default:
+        codec = new Lz4CacheCodec(JacksonCacheCodec.smile(), 1024);
+        break;
+    }
+    encoded = codec.encode(value);
+    System.out.println("\n" + format + ": " + encoded.length + " bytes");
+  }
+
+  @Benchmark
+  public Object encode() throws IOException {
+    if (codec == null) {
+      return new ObjectMapper().writeValueAsString(value);
+    }
+    return codec.encode(value);
+  }
+
+  @Benchmark
+  public Object decode() throws IOException {
+    if (codec == null) {
+      return new ObjectMapper().readValue(legacyEncoded, new TypeReference<List<Restaurant>>() {
+      });
+    }
+    return codec.decode(encoded, Restaurant[].class);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+
+class CacheCodecTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  @Test
+  void roundTripsThroughEveryCodec() throws IOException {
+    Restaurants restaurants = restaurants(20);
+
+    for (CacheCodec codec : new CacheCodec[] {JacksonCacheCodec.json(), JacksonCacheCodec.smile(),
+        new Lz4CacheCodec(JacksonCacheCodec.smile(), 0),
+        new Lz4CacheCodec(JacksonCacheCodec.smile(), 1)}) {
+      assertEquals(restaurants, codec.decode(codec.encode(restaurants), Restaurants.class));
+    }
+  }
+
+  @Test
+  void compressesLargeValuesOnly() throws IOException {
+    CacheCodec smile = JacksonCacheCodec.smile();
+    CacheCodec codec = new Lz4CacheCodec(smile, 1024);
+
+    Restaurants few = restaurants(1);
+    assertEquals(smile.encode(few).length + 1, codec.encode(few).length);
+
+    Restaurants many = restaurants(100);
+    byte[] bytes = codec.encode(many);
+    assertTrue(bytes.length < smile.encode(many).length / 2);
+    assertEquals(many, codec.decode(bytes, Restaurants.class));
+  }
+
+  @Test
+  void smileIsSmallerThanJson() {
+    Restaurants restaurants = restaurants(20);
+
+    assertTrue(JacksonCacheCodec.smile().encode(restaurants).length
+        < JacksonCacheCodec.json().encode(restaurants).length);
+  }
+
+  @Test
+  void rejectsEntriesInAnotherFormat() {
+    CacheCodec codec = new Lz4CacheCodec(JacksonCacheCodec.smile(), 1024);
+
+    assertThrows(IOException.class,
+        () -> codec.decode("[]".getBytes(StandardCharsets.UTF_8), Restaurants.class));
+    assertThrows(IOException.class, () -> codec.decode(new byte[] {2, 0, 0, 0, 9, 1, 2},
+        Restaurants.class));
+    assertThrows(IOException.class, () -> codec.decode(new byte[0], Restaurants.class));
+  }
+
+  private Restaurants restaurants(int count) {
+    List<Restaurant> fixture;
+    try {
+      fixture = new ObjectMapper().readValue(
+          FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json"),
+          new TypeReference<List<Restaurant>>() {
+          });
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    Restaurants restaurants = new Restaurants();
+    for (int i = 0; i < count; i++) {
+      Restaurant restaurant = new Restaurant(fixture.get(i % fixture.size()));
+      restaurant.setId(null);
+      restaurant.setRestaurantId(String.valueOf(i));
+      restaurants.getRestaurants().add(restaurant);
+    }
+    return restaurants;
+  }
+
+  @Data
+  static class Restaurants {
+    private List<Restaurant> restaurants = new ArrayList<>();
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class HeavyHittersTest {
+
+  @Test
+  void sketchNeverUnderestimates() {
+    FrequencySketch sketch = new FrequencySketch(16384, Long.MAX_VALUE);
+    Random random = new Random(42);
+    int[] counts = new int[5000];
+    for (int i = 0; i < 50000; i++) {
+      int key = random.nextInt(counts.length);
+      counts[key]++;
+      sketch.add("key" + key);
+    }
+
+    long overestimated = 0;
+    for (int key = 0; key < counts.length; key++) {
+      long estimate = sketch.estimate("key" + key);
+      assertTrue(estimate >= counts[key]);
+      overestimated += estimate - counts[key];
+    }
+    // With 4 counters per key and 3 keys per counter, collisions only add a little.
+    assertTrue(overestimated < counts.length);
+  }
+
+  @Test
+  void sketchHalvesAfterTheSampleSize() {
+    FrequencySketch sketch = new FrequencySketch(1024, 100);
+    for (int i = 0; i < 99; i++) {
+      sketch.add("hot");
+    }
+    assertEquals(99, sketch.estimate("hot"));
+
+    sketch.add("hot");
+
+    assertEquals(50, sketch.estimate("hot"));
+    assertEquals(50, sketch.getAdditions());
+    assertEquals(1, sketch.getHalvings());
+  }
+
+  @Test
+  void findsTheMostFrequentKeys() {
+    HeavyHitters heavyHitters = new HeavyHitters(10, new FrequencySketch(4096, Long.MAX_VALUE));
+    Random random = new Random(7);
+    List<String> keys = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      // Keys hot0 to hot4 make up half of the traffic, spread over 10000 cold keys otherwise.
+      keys.add(random.nextBoolean() ? "hot" + random.nextInt(5) : "cold" + random.nextInt(10000));
+    }
+    keys.forEach(heavyHitters::add);
+
+    Map<String, Long> top = heavyHitters.findTop(5);
+    assertEquals(5, top.size());
+    for (String key : top.keySet()) {
+      assertTrue(key.startsWith("hot"), key);
+      assertTrue(top.get(key) >= 9000);
+    }
+  }
+
+  @Test
+  void rejectsInvalidSizes() {
+    assertThrows(IllegalArgumentException.class, () -> new FrequencySketch(0, 10));
+    assertThrows(IllegalArgumentException.class,
+        () -> new HeavyHitters(0, new FrequencySketch(16, 10)));
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+  private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+  @Test
+  void concurrentCallersShareOneCall() throws Exception {
+    int threads = 8;
+    AtomicInteger calls = new AtomicInteger();
+    AtomicInteger shared = new AtomicInteger();
+    CountDownLatch waiting = new CountDownLatch(threads - 1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+          calls.incrementAndGet();
+          // Held until every other caller joined it.
+          await(waiting);
+          return "value";
+        }, () -> {
+          shared.incrementAndGet();
+          waiting.countDown();
+        })));
+      }
+      for (Future<String> result : results) {
+        assertEquals("value", result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, calls.get());
+    assertEquals(threads - 1, shared.get());
+  }
+
+  @Test
+  void callsAgainOnceTheCallCompleted() {
+    AtomicInteger calls = new AtomicInteger();
+
+    singleFlight.execute("key", () -> "value" + calls.incrementAndGet());
+
+    assertEquals("value2", singleFlight.execute("key", () -> "value" + calls.incrementAndGet()));
+  }
+
+  @Test
+  void waitersFailLikeTheCall() throws Exception {
+    IllegalStateException failure = new IllegalStateException("down");
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch waiting = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> caller = executor.submit(() -> singleFlight.execute("key", () -> {
+        started.countDown();
+        // Held until the other caller joined it.
+        await(waiting);
+        throw failure;
+      }));
+      started.await(5, TimeUnit.SECONDS);
+
+      assertSame(failure, assertThrows(IllegalStateException.class,
+          () -> singleFlight.execute("key", () -> "value", waiting::countDown)));
+      ExecutionException callerFailure = assertThrows(ExecutionException.class, caller::get);
+      assertSame(failure, callerFailure.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -12,17 +12,22 @@ import static com.crio.qeats.controller.RestaurantController.CART_CLEAR_API;
 import static com.crio.qeats.controller.RestaurantController.CART_ITEM_API;
 import static com.crio.qeats.controller.RestaurantController.GET_ORDERS_API;
 import static com.crio.qeats.controller.RestaurantController.MENU_API;
+import static com.crio.qeats.controller.RestaurantController.NDJSON_MEDIA_TYPE;
 import static com.crio.qeats.controller.RestaurantController.POST_ORDER_API;
 import static com.crio.qeats.controller.RestaurantController.RESTAURANTS_API;
 import static com.crio.qeats.controller.RestaurantController.RESTAURANT_API_ENDPOINT;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -30,22 +35,26 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.dto.Restaurant;
 import com.crio.qeats.exchanges.GetRestaurantsRequest;
 import com.crio.qeats.exchanges.GetRestaurantsResponse;
+import com.crio.qeats.repositoryservices.AccessFrequencyTracker;
 import com.crio.qeats.services.RestaurantService;
 import com.crio.qeats.utils.FixtureHelpers;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalTime;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
-import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -53,10 +62,13 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -87,19 +99,25 @@ public class RestaurantControllerTest {
   @MockBean
   private RestaurantService restaurantService;
 
+  @MockBean
+  private AccessFrequencyTracker accessFrequencyTracker;
+
 
-  @InjectMocks
+  @Autowired
   private RestaurantController restaurantController;
 
   @BeforeEach
   public void setup() {
     objectMapper = new ObjectMapper();
 
-    MockitoAnnotations.initMocks(this);
-
     mvc = MockMvcBuilders.standaloneSetup(restaurantController).build();
   }
 
+  @AfterEach
+  public void teardown() {
+    ReflectionTestUtils.setField(restaurantController, "responseCacheEnabled", false);
+  }
+
   @Test
   public void correctQueryReturnsOkResponseAndListOfRestaurants() throws Exception {
     GetRestaurantsResponse sampleResponse = loadSampleResponseList();
@@ -135,6 +153,178 @@ public class RestaurantControllerTest {
 
   }
 
+  @Test
+  public void paginatedQueryPassesLimitAndCursor() throws Exception {
+    when(restaurantService
+        .findAllRestaurantsCloseBy(any(GetRestaurantsRequest.class), any(LocalTime.class)))
+        .thenReturn(loadSampleResponseList());
+
+    ArgumentCaptor<GetRestaurantsRequest> argumentCaptor = ArgumentCaptor
+        .forClass(GetRestaurantsRequest.class);
+
+    URI uri = UriComponentsBuilder
+        .fromPath(RESTAURANT_API_URI)
+        .queryParam("latitude", "20.21")
+        .queryParam("longitude", "30.31")
+        .queryParam("limit", "10")
+        .queryParam("cursor", "MS41OjEx")
+        .build().toUri();
+
+    MockHttpServletResponse response = mvc.perform(
+        get(uri.toString()).accept(APPLICATION_JSON_UTF8)
+    ).andReturn().getResponse();
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+
+    verify(restaurantService, times(1))
+        .findAllRestaurantsCloseBy(argumentCaptor.capture(), any(LocalTime.class));
+
+    assertEquals(Integer.valueOf(10), argumentCaptor.getValue().getLimit());
+    assertEquals("MS41OjEx", argumentCaptor.getValue().getCursor());
+  }
+
+  @Test
+  public void invalidLimitOrCursorResultsInBadHttpRequest() throws Exception {
+    for (String[] param : new String[][] {{"limit", "0"}, {"limit", "101"},
+        {"cursor", "not-a-cursor"}}) {
+      URI uri = UriComponentsBuilder
+          .fromPath(RESTAURANT_API_URI)
+          .queryParam("latitude", "20.21")
+          .queryParam("longitude", "30.31")
+          .queryParam(param[0], param[1])
+          .build().toUri();
+
+      MockHttpServletResponse response = mvc.perform(
+          get(uri.toString()).accept(APPLICATION_JSON_UTF8)
+      ).andReturn().getResponse();
+
+      assertEquals(HttpStatus.BAD_REQUEST.value(), response.getStatus());
+    }
+  }
+
+  @Test
+  public void ndjsonQueryStreamsOneRestaurantPerLine() throws Exception {
+    List<Restaurant> restaurants = loadSampleResponseList().getRestaurants();
+    Restaurant second = objectMapper.readValue(
+        objectMapper.writeValueAsString(restaurants.get(0)), Restaurant.class);
+    second.setRestaurantId("11");
+    second.setName("Caf\u00e9");
+    restaurants.add(second);
+    doAnswer(invocation -> {
+      Consumer<Restaurant> action = invocation.getArgument(2);
+      restaurants.forEach(action);
+      return null;
+    }).when(restaurantService).forEachRestaurantCloseBy(any(GetRestaurantsRequest.class),
+        any(LocalTime.class), any());
+
+    MvcResult mvcResult = mvc.perform(
+        get(RESTAURANT_API_URI + "?latitude=20.21&longitude=30.31").accept(NDJSON_MEDIA_TYPE)
+    ).andReturn();
+    MockHttpServletResponse response = mvc.perform(asyncDispatch(mvcResult))
+        .andReturn().getResponse();
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    assertEquals(NDJSON_MEDIA_TYPE, response.getContentType());
+    String[] lines = response.getContentAsString().split("\n", -1);
+    assertEquals(3, lines.length);
+    assertEquals("abcdc864835e31495d621234",
+        objectMapper.readValue(lines[0], Restaurant.class).getRestaurantId());
+    assertEquals("Caf?", objectMapper.readValue(lines[1], Restaurant.class).getName());
+    assertEquals("", lines[2]);
+    verify(restaurantService, never())
+        .findAllRestaurantsCloseBy(any(GetRestaurantsRequest.class), any(LocalTime.class));
+  }
+
+  @Test
+  public void ndjsonSearchStreamsTheSearchResults() throws Exception {
+    GetRestaurantsResponse sampleResponse = loadSampleResponseList();
+    when(restaurantService
+        .findRestaurantsBySearchQuery(any(GetRestaurantsRequest.class), any(LocalTime.class)))
+        .thenReturn(sampleResponse);
+
+    MvcResult mvcResult = mvc.perform(
+        get(RESTAURANT_API_URI + "?latitude=20.21&longitude=30.31&searchFor=Briyani")
+            .accept(NDJSON_MEDIA_TYPE)
+    ).andReturn();
+    MockHttpServletResponse response = mvc.perform(asyncDispatch(mvcResult))
+        .andReturn().getResponse();
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    String[] lines = response.getContentAsString().split("\n", -1);
+    assertEquals(2, lines.length);
+    assertEquals(sampleResponse.getRestaurants().get(0).getRestaurantId(),
+        objectMapper.readValue(lines[0], Restaurant.class).getRestaurantId());
+    verify(restaurantService, never()).forEachRestaurantCloseBy(any(GetRestaurantsRequest.class),
+        any(LocalTime.class), any());
+    verify(restaurantService, never())
+        .findAllRestaurantsCloseBy(any(GetRestaurantsRequest.class), any(LocalTime.class));
+  }
+
+  @Test
+  public void queryWithoutAcceptHeaderReturnsJson() throws Exception {
+    when(restaurantService
+        .findAllRestaurantsCloseBy(any(GetRestaurantsRequest.class), any(LocalTime.class)))
+        .thenReturn(loadSampleResponseList());
+
+    MockHttpServletResponse response = mvc.perform(
+        get(RESTAURANT_API_URI + "?latitude=20.21&longitude=30.31")
+    ).andReturn().getResponse();
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    assertEquals(1, objectMapper.readValue(response.getContentAsString(),
+        GetRestaurantsResponse.class).getRestaurants().size());
+  }
+
+  @Test
+  public void responseCacheServesPreSerializedBody() throws Exception {
+    ReflectionTestUtils.setField(restaurantController, "responseCacheEnabled", true);
+    byte[] body = "{\"restaurants\":[]}".getBytes(StandardCharsets.UTF_8);
+    when(restaurantService
+        .findAllRestaurantsCloseByAsJson(any(GetRestaurantsRequest.class), any(LocalTime.class)))
+        .thenReturn(body);
+
+    MockHttpServletResponse response = mvc.perform(
+        get(RESTAURANT_API_URI + "?latitude=20.21&longitude=30.31")
+    ).andReturn().getResponse();
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    assertEquals(MediaType.APPLICATION_JSON_UTF8_VALUE, response.getContentType());
+    assertArrayEquals(body, response.getContentAsByteArray());
+    verify(restaurantService, never())
+        .findAllRestaurantsCloseBy(any(GetRestaurantsRequest.class), any(LocalTime.class));
+  }
+
+  @Test
+  public void responseCacheFallsBackWhenRestaurantsAreNotCached() throws Exception {
+    ReflectionTestUtils.setField(restaurantController, "responseCacheEnabled", true);
+    when(restaurantService
+        .findAllRestaurantsCloseBy(any(GetRestaurantsRequest.class), any(LocalTime.class)))
+        .thenReturn(loadSampleResponseList());
+
+    MockHttpServletResponse response = mvc.perform(
+        get(RESTAURANT_API_URI + "?latitude=20.21&longitude=30.31")
+    ).andReturn().getResponse();
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    assertEquals(1, objectMapper.readValue(response.getContentAsString(),
+        GetRestaurantsResponse.class).getRestaurants().size());
+    verify(restaurantService, times(1))
+        .findAllRestaurantsCloseByAsJson(any(GetRestaurantsRequest.class), any(LocalTime.class));
+  }
+
+  @Test
+  public void recordsLookedUpCellsAndSearches() throws Exception {
+    when(restaurantService
+        .findAllRestaurantsCloseBy(any(GetRestaurantsRequest.class), any(LocalTime.class)))
+        .thenReturn(loadSampleResponseList());
+
+    mvc.perform(get(RESTAURANT_API_URI + "?latitude=20.21&longitude=30.31&searchFor=Briyani"))
+        .andReturn();
+
+    verify(accessFrequencyTracker, times(1)).recordLookup(20.21, 30.31);
+    verify(accessFrequencyTracker, times(1)).recordSearch("Briyani");
+  }
+
   @Test
   public void getRestaurantsBySearchStringAndLatLong() throws Exception {
     GetRestaurantsResponse sampleResponse = loadSampleResponseList();
@@ -174,6 +364,32 @@ public class RestaurantControllerTest {
 
   }
 
+  @Test
+  public void searchReturnsOnlyTheMatchingRestaurantsInRankedOrder() throws Exception {
+    Restaurant sample = loadSampleResponseList().getRestaurants().get(0);
+    when(restaurantService
+        .findRestaurantsBySearchQuery(any(GetRestaurantsRequest.class), any(LocalTime.class)))
+        .thenReturn(new GetRestaurantsResponse(List.of(copyOf(sample, "12"),
+            copyOf(sample, "10"))));
+    when(restaurantService
+        .findAllRestaurantsCloseBy(any(GetRestaurantsRequest.class), any(LocalTime.class)))
+        .thenReturn(new GetRestaurantsResponse(List.of(copyOf(sample, "10"),
+            copyOf(sample, "11"), copyOf(sample, "12"))));
+
+    MockHttpServletResponse response = mvc.perform(
+        get(RESTAURANT_API_URI + "?latitude=20.21&longitude=30.31&searchFor=Briyani")
+            .accept(APPLICATION_JSON_UTF8)
+    ).andReturn().getResponse();
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    List<Restaurant> restaurants = objectMapper.readValue(response.getContentAsString(),
+        GetRestaurantsResponse.class).getRestaurants();
+    assertEquals(List.of("12", "10"), restaurants.stream().map(Restaurant::getRestaurantId)
+        .collect(Collectors.toList()));
+    verify(restaurantService, never())
+        .findAllRestaurantsCloseBy(any(GetRestaurantsRequest.class), any(LocalTime.class));
+  }
+
   @Test
   public void invalidLatitudeResultsInBadHttpRequest() throws Exception {
     URI uri = UriComponentsBuilder
@@ -322,6 +538,13 @@ public class RestaurantControllerTest {
 
 
 
+  private Restaurant copyOf(Restaurant restaurant, String restaurantId) throws IOException {
+    Restaurant copy = objectMapper.readValue(objectMapper.writeValueAsString(restaurant),
+        Restaurant.class);
+    copy.setRestaurantId(restaurantId);
+    return copy;
+  }
+
   private GetRestaurantsResponse loadSampleResponseList() throws IOException {
     String fixture =
         FixtureHelpers.fixture(FIXTURES + "/list_restaurant_response.json");
@@ -0,0 +1,216 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.indexes;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.ItemEntity;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.GeoUtils;
+import com.crio.qeats.utils.OpeningHours;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * Compares {@link RestaurantSearchIndex#search} with the equivalent partial match over Mongo: a
+ * case insensitive {@code $regex} on the names and attributes of the restaurants and items
+ * collections, the menus serving the matching items, then those restaurants, filtered by opening
+ * hours and radius. Both run over the same synthetic catalog of a city, seeded in the
+ * {@code qeats-benchmark} database of the MongoDB at {@code -Dqeats.benchmark.mongodb.uri},
+ * mongodb://localhost:27017 by default, which is dropped afterwards.
+ * Run with {@code ./gradlew :qeatsbackend:jmh --args="RestaurantSearch"} or the main method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RestaurantSearchBenchmark {
+
+  private static final String DATABASE = "qeats-benchmark";
+  private static final String[] NAMES = {"Biryani", "Bhavan", "Spice", "Garden", "Dosa",
+      "Corner", "Tiffin", "Curry", "House", "Darbar", "Empire", "Meghana", "Paradise", "Cafe",
+      "Kitchen", "Grand", "Udupi", "Sagar", "Truffles", "Chai"};
+  private static final String[] CUISINES = {"South Indian", "North Indian", "Chinese",
+      "Mughlai", "Andhra", "Chettinad", "Street Food", "Desserts", "Beverages", "Continental"};
+  private static final String[] DISHES = {"Chicken Biryani", "Mutton Biryani", "Masala Dosa",
+      "Idli", "Vada", "Paneer Butter Masala", "Gobi Manchurian", "Hakka Noodles", "Filter Coffee",
+      "Gulab Jamun", "Fish Curry", "Veg Pulao", "Chole Bhature", "Rava Idli", "Pongal"};
+  private static final String[] FLAVOURS = {"Spicy", "Sweet", "Veg", "Non Veg", "Gluten Free",
+      "Jain", "Bestseller"};
+
+  @Param({"10000", "100000"})
+  private int restaurants;
+
+  @Param({"biryani", "bir", "masala dosa"})
+  private String query;
+
+  private final double latitude = 12.9716;
+  private final double longitude = 77.5946;
+  private final double servingRadiusInKms = 5.0;
+  private final LocalTime currentTime = LocalTime.of(20, 0);
+  private RestaurantSearchIndex index;
+  private MongoClient mongoClient;
+  private MongoTemplate mongoTemplate;
+
+  @Setup
+  public void setup() {
+    // Restaurants spread over a square of about 40 km around the query, 10 items on each menu,
+    // out of 5 variants of every dish.
+    Random random = new Random(42);
+    List<ItemEntity> itemEntities = new ArrayList<>();
+    for (int i = 0; i < DISHES.length * 5; i++) {
+      ItemEntity itemEntity = new ItemEntity();
+      itemEntity.setItemId(String.valueOf(i));
+      itemEntity.setName((i < DISHES.length ? "" : NAMES[random.nextInt(NAMES.length)] + " ")
+          + DISHES[i % DISHES.length]);
+      itemEntity.setImageUrl("https://images.qeats.io/items/" + i + ".jpg");
+      itemEntity.setPrice(50.0 + random.nextInt(400));
+      itemEntity.setAttributes(pick(random, FLAVOURS, 2));
+      itemEntities.add(itemEntity);
+    }
+
+    List<RestaurantEntity> restaurantEntities = new ArrayList<>();
+    List<MenuEntity> menuEntities = new ArrayList<>();
+    List<Restaurant> catalog = new ArrayList<>();
+    Map<String, List<Item>> itemsByRestaurantId = new HashMap<>();
+    for (int i = 0; i < restaurants; i++) {
+      String restaurantId = String.valueOf(i);
+      RestaurantEntity restaurantEntity = new RestaurantEntity();
+      restaurantEntity.setRestaurantId(restaurantId);
+      restaurantEntity.setName(String.join(" ", pick(random, NAMES, 1 + random.nextInt(3))));
+      restaurantEntity.setCity("Bengaluru");
+      restaurantEntity.setImageUrl("https://images.qeats.io/" + i + ".jpg");
+      restaurantEntity.setLatitude(latitude - 0.2 + random.nextDouble() * 0.4);
+      restaurantEntity.setLongitude(longitude - 0.2 + random.nextDouble() * 0.4);
+      restaurantEntity.setOpensAt(random.nextBoolean() ? "11:00" : "18:00");
+      restaurantEntity.setClosesAt(random.nextBoolean() ? "23:00" : "02:00");
+      restaurantEntity.setAttributes(pick(random, CUISINES, 1 + random.nextInt(3)));
+      restaurantEntities.add(restaurantEntity);
+      catalog.add(new Restaurant(null, restaurantId, restaurantEntity.getName(), "Bengaluru",
+          restaurantEntity.getImageUrl(), restaurantEntity.getLatitude(),
+          restaurantEntity.getLongitude(), restaurantEntity.getOpensAt(),
+          restaurantEntity.getClosesAt(), restaurantEntity.getAttributes(), null));
+
+      List<Item> items = new ArrayList<>();
+      for (int j = 0; j < 10; j++) {
+        ItemEntity itemEntity = itemEntities.get(random.nextInt(itemEntities.size()));
+        items.add(new Item(null, itemEntity.getItemId(), itemEntity.getName(),
+            itemEntity.getImageUrl(), itemEntity.getAttributes(),
+            itemEntity.getPrice().intValue()));
+      }
+      menuEntities.add(new MenuEntity(null, restaurantId, items));
+      itemsByRestaurantId.put(restaurantId, items);
+    }
+    index = new RestaurantSearchIndex(catalog, itemsByRestaurantId);
+
+    mongoClient = new MongoClient(new MongoClientURI(
+        System.getProperty("qeats.benchmark.mongodb.uri", "mongodb://localhost:27017")));
+    mongoTemplate = new MongoTemplate(mongoClient, DATABASE);
+    mongoTemplate.getDb().drop();
+    mongoTemplate.insert(itemEntities, "items");
+    mongoTemplate.insert(menuEntities, "menus");
+    mongoTemplate.insert(restaurantEntities, "restaurants");
+    mongoTemplate.indexOps("menus").ensureIndex(new Index("items.itemId", Direction.ASC));
+    mongoTemplate.indexOps("restaurants").ensureIndex(new Index("restaurantId", Direction.ASC));
+
+    System.out.println("\n" + query + ": " + index().size() + " restaurants from the index, "
+        + regex().size() + " from Mongo");
+  }
+
+  @TearDown
+  public void teardown() {
+    mongoTemplate.getDb().drop();
+    mongoClient.close();
+  }
+
+  @Benchmark
+  public List<Restaurant> index() {
+    return index.search(query, latitude, longitude, currentTime, servingRadiusInKms);
+  }
+
+  @Benchmark
+  public Set<String> regex() {
+    // Any word of the value starting with the query.
+    Pattern pattern = Pattern.compile("(^|[^\\p{L}\\p{N}])" + Pattern.quote(query),
+        Pattern.CASE_INSENSITIVE);
+    Criteria matches = new Criteria().orOperator(Criteria.where("name").regex(pattern),
+        Criteria.where("attributes").regex(pattern));
+
+    List<RestaurantEntity> restaurantEntities =
+        new ArrayList<>(mongoTemplate.find(new Query(matches), RestaurantEntity.class));
+    List<String> itemIds = new ArrayList<>();
+    for (ItemEntity itemEntity : mongoTemplate.find(new Query(matches), ItemEntity.class)) {
+      itemIds.add(itemEntity.getItemId());
+    }
+    Set<String> restaurantIds = new HashSet<>();
+    for (MenuEntity menuEntity : mongoTemplate.find(
+        new Query(Criteria.where("items.itemId").in(itemIds)), MenuEntity.class)) {
+      restaurantIds.add(menuEntity.getRestaurantId());
+    }
+    restaurantEntities.addAll(mongoTemplate.find(
+        new Query(Criteria.where("restaurantId").in(restaurantIds)), RestaurantEntity.class));
+
+    Set<String> found = new LinkedHashSet<>();
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        servingRadiusInKms);
+    for (RestaurantEntity restaurantEntity : restaurantEntities) {
+      if (OpeningHours.parse(restaurantEntity.getOpensAt(), restaurantEntity.getClosesAt())
+          .isOpenAt(currentTime) && radiusFilter.contains(restaurantEntity.getLatitude(),
+          restaurantEntity.getLongitude())) {
+        found.add(restaurantEntity.getRestaurantId());
+      }
+    }
+    return found;
+  }
+
+  private static List<String> pick(Random random, String[] values, int count) {
+    List<String> picked = new ArrayList<>(Arrays.asList(values));
+    Collections.shuffle(picked, random);
+    return new ArrayList<>(picked.subList(0, count));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(RestaurantSearchBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.indexes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.indexes.RestaurantSearchIndex.Field;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class RestaurantSearchIndexTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+  private static final LocalTime EVENING = LocalTime.of(19, 0);
+
+  @Test
+  void tokenizesIgnoringCaseAccentsAndPunctuation() {
+    assertEquals(Arrays.asList("creme", "brulee", "2"),
+        RestaurantSearchIndex.tokenize("  Crème-BRÛLÉE (2)"));
+    assertEquals(Collections.emptyList(), RestaurantSearchIndex.tokenize(" - "));
+    assertEquals(Collections.emptyList(), RestaurantSearchIndex.tokenize(null));
+  }
+
+  @Test
+  void findsRestaurantsByNameWithExactMatchesFirst() throws IOException {
+    RestaurantSearchIndex index = new RestaurantSearchIndex(listOfRestaurants(),
+        Collections.emptyMap());
+
+    assertEquals(5, index.size());
+    assertEquals(Arrays.asList("13", "14"),
+        idsOf(index.findOpenRestaurants(Field.NAME, "a2b", 20.8, 30.1, EVENING, 5.0)));
+    assertEquals(Arrays.asList("14"), idsOf(index.findOpenRestaurants(Field.NAME,
+        "a2b adyar ananda bhavan", 20.8, 30.1, EVENING, 5.0)));
+    assertEquals(Arrays.asList("14"),
+        idsOf(index.findOpenRestaurants(Field.NAME, "Bhavan", 20.8, 30.1, EVENING, 5.0)));
+    assertEquals(Collections.emptyList(),
+        idsOf(index.findOpenRestaurants(Field.NAME, "A2B Briyani", 20.8, 30.1, EVENING, 5.0)));
+  }
+
+  @Test
+  void ranksExactMatchesBeforeLowerIds() {
+    List<Restaurant> restaurants = new ArrayList<>();
+    restaurants.add(restaurant("1", 20.0, 30.0, "11:00", "23:00"));
+    restaurants.get(0).setName("Adyar Ananda Bhavan");
+    restaurants.add(restaurant("2", 20.0, 30.001, "11:00", "23:00"));
+    restaurants.get(1).setName("Ananda Bhavan");
+    restaurants.add(restaurant("3", 20.0, 30.002, "11:00", "23:00"));
+    restaurants.get(2).setName("Ananda Bhavan Express");
+    RestaurantSearchIndex index = new RestaurantSearchIndex(restaurants, Collections.emptyMap());
+
+    assertEquals(Arrays.asList("2", "1", "3"), idsOf(index.findOpenRestaurants(Field.NAME,
+        "ananda  BHAVAN", 20.0, 30.0, EVENING, 3.0)));
+  }
+
+  @Test
+  void matchesPrefixesOfEveryToken() {
+    List<Restaurant> restaurants = new ArrayList<>();
+    restaurants.add(restaurant("1", 20.0, 30.0, "11:00", "23:00"));
+    restaurants.get(0).setName("Adyar Ananda Bhavan");
+    restaurants.add(restaurant("2", 20.0, 30.001, "11:00", "23:00"));
+    restaurants.get(1).setName("Anand Sweets");
+    restaurants.add(restaurant("3", 20.0, 30.002, "11:00", "23:00"));
+    restaurants.get(2).setName("Bhavani Mess");
+    RestaurantSearchIndex index = new RestaurantSearchIndex(restaurants, Collections.emptyMap());
+
+    assertEquals(Arrays.asList("1", "2"), idsOf(index.findOpenRestaurants(Field.NAME, "anand",
+        20.0, 30.0, EVENING, 3.0)));
+    assertEquals(Arrays.asList("1", "3"), idsOf(index.findOpenRestaurants(Field.NAME, "BHAV",
+        20.0, 30.0, EVENING, 3.0)));
+    assertEquals(Arrays.asList("1"), idsOf(index.findOpenRestaurants(Field.NAME, "bhav ana",
+        20.0, 30.0, EVENING, 3.0)));
+    // Tokens only match from their start.
+    assertEquals(Collections.emptyList(), idsOf(index.findOpenRestaurants(Field.NAME, "nanda",
+        20.0, 30.0, EVENING, 3.0)));
+    assertEquals(Collections.emptyList(), idsOf(index.findOpenRestaurants(Field.NAME,
+        "anand sweetsx", 20.0, 30.0, EVENING, 3.0)));
+  }
+
+  @Test
+  void ranksRestaurantsByTheirBestMatch() {
+    List<Restaurant> restaurants = new ArrayList<>();
+    String[] names = {"Biryani Point", "Spice Garden", "Biryani", "Dosa Corner", "Tiffin Room",
+        "Curry House", "Biryani Blues"};
+    for (int i = 0; i < names.length; i++) {
+      restaurants.add(restaurant(String.valueOf(i + 1), 20.0, 30.0 + i * 0.001, "11:00",
+          "23:00"));
+      restaurants.get(i).setName(names[i]);
+    }
+    restaurants.get(1).setAttributes(Arrays.asList("Biryani Specials"));
+    restaurants.get(6).setAttributes(Arrays.asList("Biryani"));
+    Map<String, List<Item>> itemsByRestaurantId = new HashMap<>();
+    itemsByRestaurantId.put("4", Arrays.asList(item("Chicken Biryani")));
+    itemsByRestaurantId.put("5", Arrays.asList(item("Biryani")));
+    itemsByRestaurantId.put("6", Arrays.asList(item("Curry", "Biryani Masala")));
+    itemsByRestaurantId.put("1", Arrays.asList(item("Biryani")));
+    RestaurantSearchIndex index = new RestaurantSearchIndex(restaurants, itemsByRestaurantId);
+
+    // Exact name, partial names, cuisines, exact item, partial item, item attributes; each
+    // restaurant once, at its best rank.
+    assertEquals(Arrays.asList("3", "1", "7", "2", "5", "4", "6"),
+        idsOf(index.search("biryani", 20.0, 30.0, EVENING, 3.0)));
+    // Nothing is an exact match of a prefix.
+    assertEquals(Arrays.asList("1", "3", "7", "2", "4", "5", "6"),
+        idsOf(index.search("Biry", 20.0, 30.0, EVENING, 3.0)));
+    assertEquals(Arrays.asList("4"), idsOf(index.search("chicken bir", 20.0, 30.0, EVENING,
+        3.0)));
+    assertEquals(Collections.emptyList(), idsOf(index.search("  ", 20.0, 30.0, EVENING, 3.0)));
+    assertEquals(Collections.emptyList(), idsOf(index.search("biryani", 20.0, 30.0,
+        LocalTime.of(23, 30), 3.0)));
+  }
+
+  @Test
+  void findsRestaurantsByAttribute() throws IOException {
+    RestaurantSearchIndex index = new RestaurantSearchIndex(listOfRestaurants(),
+        Collections.emptyMap());
+
+    assertEquals(Arrays.asList("11", "12"), idsOf(index.findOpenRestaurants(Field.ATTRIBUTE,
+        "south indian", 20.0, 30.0, EVENING, 3.0)));
+    assertEquals(Collections.emptyList(), idsOf(index.findOpenRestaurants(Field.ATTRIBUTE,
+        "Mughal", 20.0, 30.0, EVENING, 3.0)));
+  }
+
+  @Test
+  void findsRestaurantsByItems() throws IOException {
+    Map<String, List<Item>> itemsByRestaurantId = new HashMap<>();
+    itemsByRestaurantId.put("11", Arrays.asList(item("Chicken Briyani", "Mughal")));
+    itemsByRestaurantId.put("12", Arrays.asList(item("Briyani", "Mughal", "Spicy"),
+        item("Dosa")));
+    itemsByRestaurantId.put("14", Arrays.asList(item("Mutton Briyani", "Mughal")));
+    RestaurantSearchIndex index = new RestaurantSearchIndex(listOfRestaurants(),
+        itemsByRestaurantId);
+
+    assertEquals(Arrays.asList("12", "11"), idsOf(index.findOpenRestaurants(Field.ITEM_NAME,
+        "briyani", 20.0, 30.0, EVENING, 3.0)));
+    assertEquals(Arrays.asList("11"), idsOf(index.findOpenRestaurants(Field.ITEM_NAME,
+        "Chicken", 20.0, 30.0, EVENING, 3.0)));
+    assertEquals(Arrays.asList("11", "12"), idsOf(index.findOpenRestaurants(
+        Field.ITEM_ATTRIBUTE, "mughal", 20.0, 30.0, EVENING, 3.0)));
+    assertEquals(Arrays.asList("14"), idsOf(index.findOpenRestaurants(Field.ITEM_ATTRIBUTE,
+        "mughal", 20.8, 30.1, EVENING, 5.0)));
+    // Values are searched in their own field only.
+    assertEquals(Collections.emptyList(), idsOf(index.findOpenRestaurants(Field.NAME,
+        "briyani", 20.0, 30.0, EVENING, 3.0)));
+  }
+
+  @Test
+  void skipsClosedAndUnlocatedRestaurants() {
+    List<Restaurant> restaurants = new ArrayList<>();
+    restaurants.add(restaurant("1", 20.0, 30.0, "18:00", "02:00"));
+    restaurants.add(restaurant("2", 20.0, 30.001, "11:00", "23:00"));
+    restaurants.add(restaurant("3", 20.0, 30.002, "invalid", "23:00"));
+    Restaurant unlocated = restaurant("4", 20.0, 30.0, "11:00", "23:00");
+    unlocated.setLatitude(null);
+    restaurants.add(unlocated);
+    RestaurantSearchIndex index = new RestaurantSearchIndex(restaurants, Collections.emptyMap());
+
+    assertEquals(3, index.size());
+    assertEquals(Arrays.asList("1", "2"), idsOf(index.findOpenRestaurants(Field.NAME, "cafe",
+        20.0, 30.0, LocalTime.of(22, 0), 3.0)));
+    assertEquals(Arrays.asList("1"), idsOf(index.findOpenRestaurants(Field.NAME, "cafe",
+        20.0, 30.0, LocalTime.of(1, 0), 3.0)));
+    assertEquals(Collections.emptyList(), idsOf(index.findOpenRestaurants(Field.NAME, "cafe",
+        20.5, 30.0, LocalTime.of(22, 0), 3.0)));
+  }
+
+  @Test
+  void returnsCopiesOfTheRestaurants() throws IOException {
+    RestaurantSearchIndex index = new RestaurantSearchIndex(listOfRestaurants(),
+        Collections.emptyMap());
+
+    index.findOpenRestaurants(Field.NAME, "A2B", 20.0, 30.0, EVENING, 3.0).get(0)
+        .setName("changed");
+
+    assertEquals("A2B",
+        index.findOpenRestaurants(Field.NAME, "A2B", 20.0, 30.0, EVENING, 3.0).get(0).getName());
+  }
+
+  private Item item(String name, String... attributes) {
+    Item item = new Item();
+    item.setName(name);
+    item.setAttributes(Arrays.asList(attributes));
+    return item;
+  }
+
+  private Restaurant restaurant(String restaurantId, double latitude, double longitude,
+      String opensAt, String closesAt) {
+    Restaurant restaurant = new Restaurant();
+    restaurant.setRestaurantId(restaurantId);
+    restaurant.setName("Cafe " + restaurantId);
+    restaurant.setLatitude(latitude);
+    restaurant.setLongitude(longitude);
+    restaurant.setOpensAt(opensAt);
+    restaurant.setClosesAt(closesAt);
+    return restaurant;
+  }
+
+  private List<String> idsOf(List<Restaurant> restaurants) {
+    return restaurants.stream().map(Restaurant::getRestaurantId).collect(Collectors.toList());
+  }
+
+  private List<Restaurant> listOfRestaurants() throws IOException {
+    String fixture =
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json");
+
+    return new ObjectMapper().readValue(fixture, new TypeReference<List<Restaurant>>() {
+    });
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.indexes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.crio.qeats.utils.GeoUtils;
+import com.crio.qeats.utils.NearestRestaurants;
+import com.crio.qeats.utils.OpeningHours;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class RestaurantSnapshotTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+  private static final LocalTime EVENING = LocalTime.of(19, 0);
+
+  @Test
+  void findsOpenRestaurantsWithinRadius() throws IOException {
+    RestaurantSnapshot snapshot = new RestaurantSnapshot(listOfRestaurants(), 0.05);
+
+    assertEquals(5, snapshot.size());
+    assertEquals(ids("11", "12"),
+        idsOf(snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0, EVENING, 3.0)));
+    assertEquals(ids(),
+        idsOf(snapshot.findOpenRestaurantsWithinRadius(20.9, 30.0, EVENING, 3.0)));
+    assertEquals(ids("13", "14"),
+        idsOf(snapshot.findOpenRestaurantsWithinRadius(20.8, 30.1, EVENING, 5.0)));
+  }
+
+  @Test
+  void appliesOpeningHoursLikeTheScan() throws IOException {
+    RestaurantSnapshot snapshot = new RestaurantSnapshot(listOfRestaurants(), 0.05);
+
+    // All fixture restaurants are open between 18:00 and 23:00, both ends exclusive.
+    assertEquals(0, snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0,
+        LocalTime.of(17, 59, 59), 3.0).size());
+    assertEquals(0, snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0,
+        LocalTime.of(18, 0), 3.0).size());
+    assertEquals(2, snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0,
+        LocalTime.of(18, 0, 1), 3.0).size());
+    assertEquals(2, snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0,
+        LocalTime.of(22, 59, 59), 3.0).size());
+    assertEquals(0, snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0,
+        LocalTime.of(23, 0), 3.0).size());
+  }
+
+  @Test
+  void findsRestaurantsOpenOvernight() {
+    List<Restaurant> restaurants = new ArrayList<>();
+    restaurants.add(restaurant("1", 20.0, 30.0, "18:00", "02:00"));
+    restaurants.add(restaurant("2", 20.0, 30.001, "11:00", "23:00"));
+    restaurants.add(restaurant("3", 20.0, 30.002, "invalid", "23:00"));
+
+    RestaurantSnapshot snapshot = new RestaurantSnapshot(restaurants, 0.05);
+
+    assertEquals(ids("1", "2"), idsOf(snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0,
+        LocalTime.of(22, 0), 3.0)));
+    assertEquals(ids("1"), idsOf(snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0,
+        LocalTime.of(1, 30), 3.0)));
+    assertEquals(ids(), idsOf(snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0,
+        LocalTime.of(2, 0), 3.0)));
+  }
+
+  @Test
+  void matchesOpeningHoursOfEveryRestaurant() {
+    Random random = new Random(7);
+    List<Restaurant> restaurants = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      restaurants.add(restaurant(String.valueOf(i), 12.0 + random.nextDouble() / 10,
+          77.0 + random.nextDouble() / 10, time(random.nextInt(24 * 60)),
+          time(random.nextInt(24 * 60))));
+    }
+    RestaurantSnapshot snapshot = new RestaurantSnapshot(restaurants, 0.01);
+
+    for (int i = 0; i < 200; i++) {
+      LocalTime currentTime = random.nextBoolean()
+          ? LocalTime.ofSecondOfDay(random.nextInt(24 * 60) * 60)
+          : LocalTime.ofSecondOfDay(random.nextInt(24 * 60 * 60));
+
+      Set<String> expected = restaurants.stream()
+          .filter(restaurant -> OpeningHours.parse(restaurant.getOpensAt(),
+              restaurant.getClosesAt()).isOpenAt(currentTime))
+          .map(Restaurant::getRestaurantId)
+          .collect(Collectors.toCollection(TreeSet::new));
+
+      assertEquals(expected, idsOf(snapshot.findOpenRestaurantsWithinRadius(12.05, 77.05,
+          currentTime, 50.0)));
+    }
+  }
+
+  @Test
+  void findsRestaurantsWithinRadiusAtAnyTime() {
+    List<Restaurant> restaurants = new ArrayList<>();
+    restaurants.add(restaurant("1", 20.0, 30.0, "18:00", "02:00"));
+    restaurants.add(restaurant("2", 20.0, 30.001, "11:00", "23:00"));
+    restaurants.add(restaurant("3", 20.0, 30.002, "invalid", "23:00"));
+    restaurants.add(restaurant("4", 20.5, 30.0, "11:00", "23:00"));
+
+    RestaurantSnapshot snapshot = new RestaurantSnapshot(restaurants, 0.05);
+
+    assertEquals(ids("1", "2", "3"),
+        idsOf(snapshot.findRestaurantsWithinRadius(20.0, 30.0, 3.0)));
+  }
+
+  @Test
+  void findsNearestOpenRestaurantsFirst() throws IOException {
+    RestaurantSnapshot snapshot = new RestaurantSnapshot(listOfRestaurants(), 0.05);
+
+    NearestRestaurants nearestRestaurants = new NearestRestaurants(1, null);
+    snapshot.findNearestOpenRestaurants(20.0, 30.0, EVENING, 3.0, nearestRestaurants);
+
+    List<Restaurant> restaurants = nearestRestaurants.getRestaurants();
+    assertEquals(1, restaurants.size());
+    assertEquals("12", restaurants.get(0).getRestaurantId());
+    assertEquals(GeoUtils.findDistanceInKm(20.0, 30.0, restaurants.get(0).getLatitude(),
+        restaurants.get(0).getLongitude()), restaurants.get(0).getDistance().doubleValue());
+
+    nearestRestaurants = new NearestRestaurants(1, nearestRestaurants.getNextCursor());
+    snapshot.findNearestOpenRestaurants(20.0, 30.0, EVENING, 3.0, nearestRestaurants);
+
+    assertEquals(ids("11"), idsOf(nearestRestaurants.getRestaurants()));
+    assertNull(nearestRestaurants.getNextCursor());
+  }
+
+  @Test
+  void returnsCopiesOfTheRestaurants() throws IOException {
+    RestaurantSnapshot snapshot = new RestaurantSnapshot(listOfRestaurants(), 0.05);
+
+    Restaurant first = snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0, EVENING, 3.0).get(0);
+    String name = first.getName();
+    first.setName("changed");
+
+    Restaurant second = snapshot.findOpenRestaurantsWithinRadius(20.0, 30.0, EVENING, 3.0).stream()
+        .filter(restaurant -> restaurant.getRestaurantId().equals(first.getRestaurantId()))
+        .findFirst().get();
+    assertNotSame(first, second);
+    assertEquals(name, second.getName());
+  }
+
+  @Test
+  void findsRestaurantsAcrossTheAntimeridian() {
+    List<Restaurant> restaurants = new ArrayList<>();
+    restaurants.add(restaurant("1", -16.5, 179.99));
+    restaurants.add(restaurant("2", -16.5, -179.99));
+    restaurants.add(restaurant("3", -16.5, 179.5));
+
+    RestaurantSnapshot snapshot = new RestaurantSnapshot(restaurants, 0.05);
+
+    assertEquals(ids("1", "2"),
+        idsOf(snapshot.findOpenRestaurantsWithinRadius(-16.5, 180.0, EVENING, 5.0)));
+  }
+
+  @Test
+  void matchesFullScan() {
+    Random random = new Random(42);
+    List<Restaurant> restaurants = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      restaurants.add(restaurant(String.valueOf(i), 12.0 + random.nextDouble(),
+          77.0 + random.nextDouble()));
+    }
+
+    for (double cellSizeInDegrees : new double[] {0.01, 0.05, 0.5}) {
+      RestaurantSnapshot snapshot = new RestaurantSnapshot(restaurants, cellSizeInDegrees);
+      for (int i = 0; i < 50; i++) {
+        double latitude = 12.0 + random.nextDouble();
+        double longitude = 77.0 + random.nextDouble();
+        double radiusInKms = 1 + random.nextInt(10);
+
+        Set<String> expected = restaurants.stream()
+            .filter(restaurant -> GeoUtils.findDistanceInKm(latitude, longitude,
+                restaurant.getLatitude(), restaurant.getLongitude()) < radiusInKms)
+            .map(Restaurant::getRestaurantId)
+            .collect(Collectors.toCollection(TreeSet::new));
+
+        assertEquals(expected, idsOf(snapshot.findOpenRestaurantsWithinRadius(latitude,
+            longitude, EVENING, radiusInKms)));
+      }
+    }
+  }
+
+  @Test
+  void rejectsInvalidCellSize() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new RestaurantSnapshot(new ArrayList<>(), 0));
+  }
+
+  private Restaurant restaurant(String restaurantId, double latitude, double longitude) {
+    return restaurant(restaurantId, latitude, longitude, "18:00", "23:00");
+  }
+
+  private Restaurant restaurant(String restaurantId, double latitude, double longitude,
+      String opensAt, String closesAt) {
+    Restaurant restaurant = new Restaurant();
+    restaurant.setRestaurantId(restaurantId);
+    restaurant.setLatitude(latitude);
+    restaurant.setLongitude(longitude);
+    restaurant.setOpensAt(opensAt);
+    restaurant.setClosesAt(closesAt);
+    return restaurant;
+  }
+
+  private String time(int minuteOfDay) {
+    return LocalTime.of(minuteOfDay / 60, minuteOfDay % 60).toString();
+  }
+
+  private Set<String> ids(String... restaurantIds) {
+    Set<String> ids = new TreeSet<>();
+    for (String restaurantId : restaurantIds) {
+      ids.add(restaurantId);
+    }
+    return ids;
+  }
+
+  private Set<String> idsOf(List<Restaurant> restaurants) {
+    return restaurants.stream().map(Restaurant::getRestaurantId)
+        .collect(Collectors.toCollection(TreeSet::new));
+  }
+
+  private List<Restaurant> listOfRestaurants() throws IOException {
+    String fixture =
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json");
+
+    return new ObjectMapper().readValue(fixture, new TypeReference<List<Restaurant>>() {
+    });
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest(classes = {QEatsApplication.class},
+    properties = {"qeats.nearby.backend=index", "qeats.nearby.cache.enabled=false",
+        "qeats.nearby.index.invalidation-delay-ms=3600000"})
+@DirtiesContext
+@ActiveProfiles("test")
+class IndexedNearbyRestaurantsFinderTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  @Autowired
+  private IndexedNearbyRestaurantsFinder indexedNearbyRestaurantsFinder;
+  @Autowired
+  private ApplicationEventPublisher applicationEventPublisher;
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @MockBean
+  private RestaurantRepository mockRestaurantRepository;
+
+  private List<RestaurantEntity> restaurantEntities;
+
+  @BeforeEach
+  void setup() throws IOException {
+    restaurantEntities = listOfRestaurants();
+    when(mockRestaurantRepository.findAll()).thenReturn(restaurantEntities);
+    indexedNearbyRestaurantsFinder.refreshIndex();
+    clearInvocations(mockRestaurantRepository);
+  }
+
+  @Test
+  void patchesTheRestaurantsOfABurstOfInvalidationsAtOnce() {
+    RestaurantEntity movedRestaurant = restaurantEntities.stream()
+        .filter(restaurantEntity -> restaurantEntity.getRestaurantId().equals("11"))
+        .findFirst().get();
+    movedRestaurant.setLatitude(20.9);
+    when(mockRestaurantRepository.findByRestaurantIdIn(any()))
+        .thenReturn(Collections.singletonList(movedRestaurant));
+
+    applicationEventPublisher.publishEvent(new RestaurantsInvalidatedEvent(this,
+        Arrays.asList("11", "12"), Collections.emptyList()));
+    applicationEventPublisher.publishEvent(new RestaurantsInvalidatedEvent(this,
+        Arrays.asList("11"), Collections.emptyList()));
+    verify(mockRestaurantRepository, never()).findByRestaurantIdIn(any());
+
+    indexedNearbyRestaurantsFinder.applyInvalidations();
+    indexedNearbyRestaurantsFinder.applyInvalidations();
+
+    verify(mockRestaurantRepository, times(1)).findByRestaurantIdIn(Arrays.asList("11", "12"));
+    verify(mockRestaurantRepository, never()).findAll();
+    // Restaurant 12 is gone, restaurant 11 moved.
+    assertEquals(Collections.singletonList("11"), idsOf(indexedNearbyRestaurantsFinder
+        .findRestaurantsCloseBy(20.9, 30.0, 1.0)));
+    List<String> idsCloseBy = idsOf(indexedNearbyRestaurantsFinder
+        .findRestaurantsCloseBy(20.0, 30.0, 3.0));
+    assertFalse(idsCloseBy.contains("11") || idsCloseBy.contains("12"));
+  }
+
+  @Test
+  void rebuildsOnceForABurstOfUnlistedInvalidations() {
+    applicationEventPublisher.publishEvent(new RestaurantsInvalidatedEvent(this));
+    applicationEventPublisher.publishEvent(new RestaurantsInvalidatedEvent(this));
+    applicationEventPublisher.publishEvent(new RestaurantsInvalidatedEvent(this,
+        Arrays.asList("11"), Collections.emptyList()));
+    verify(mockRestaurantRepository, never()).findAll();
+
+    indexedNearbyRestaurantsFinder.applyInvalidations();
+    indexedNearbyRestaurantsFinder.applyInvalidations();
+
+    verify(mockRestaurantRepository, times(1)).findAll();
+    verify(mockRestaurantRepository, never()).findByRestaurantIdIn(any());
+  }
+
+  private static List<String> idsOf(List<Restaurant> restaurants) {
+    return restaurants.stream().map(Restaurant::getRestaurantId).collect(Collectors.toList());
+  }
+
+  private List<RestaurantEntity> listOfRestaurants() throws IOException {
+    String fixture =
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json");
+
+    return objectMapper.readValue(fixture, new TypeReference<List<RestaurantEntity>>() {
+    });
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.ItemEntity;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest(classes = {QEatsApplication.class},
+    properties = {"qeats.search.backend=index"})
+@DirtiesContext
+@ActiveProfiles("test")
+class IndexedRestaurantSearchTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+  private static final LocalTime EVENING = LocalTime.of(19, 0);
+
+  @Autowired
+  private IndexedRestaurantSearch indexedRestaurantSearch;
+  @Autowired
+  private RestaurantRepositoryService restaurantRepositoryService;
+  @Autowired
+  private MongoTemplate mongoTemplate;
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @BeforeEach
+  void setup() throws IOException {
+    for (RestaurantEntity restaurantEntity : listOf("initial_data_set_restaurants.json",
+        new TypeReference<List<RestaurantEntity>>() {
+        })) {
+      mongoTemplate.save(restaurantEntity, "restaurants");
+    }
+    for (MenuEntity menuEntity : listOf("initial_data_set_menus.json",
+        new TypeReference<List<MenuEntity>>() {
+        })) {
+      mongoTemplate.save(menuEntity, "menus");
+    }
+    indexedRestaurantSearch.refreshIndex();
+  }
+
+  @AfterEach
+  void teardown() {
+    mongoTemplate.dropCollection("restaurants");
+    mongoTemplate.dropCollection("menus");
+    mongoTemplate.dropCollection("items");
+  }
+
+  @Test
+  void answersSearchesFromTheIndex() throws Exception {
+    mongoTemplate.dropCollection("restaurants");
+
+    assertEquals(Arrays.asList("11", "12"), idsOf(restaurantRepositoryService
+        .findRestaurantsByName(20.0, 30.0, "A2B", EVENING, 3.0)));
+    assertEquals(Arrays.asList("11", "12"), idsOf(restaurantRepositoryService
+        .findRestaurantsByAttributesMT(20.0, 30.0, "tamil", EVENING, 3.0).get()));
+    assertEquals(Arrays.asList("12"), idsOf(restaurantRepositoryService
+        .findRestaurantsByItemName(20.0, 30.0, "fish", EVENING, 3.0)));
+    assertEquals(Arrays.asList("13"), idsOf(restaurantRepositoryService
+        .findRestaurantsByItemAttributesMT(20.8, 30.1, "Mughal", EVENING, 5.0).get()));
+  }
+
+  @Test
+  void ranksRestaurantsMatchingAnyField() {
+    assertEquals(Arrays.asList("13", "14"), idsOf(restaurantRepositoryService
+        .findRankedRestaurants(20.8, 30.1, "a2b", EVENING, 5.0)));
+    assertEquals(Arrays.asList("13"), idsOf(restaurantRepositoryService
+        .findRankedRestaurants(20.8, 30.1, "mutton", EVENING, 5.0)));
+    assertEquals(Arrays.asList("11", "12"), idsOf(restaurantRepositoryService
+        .findRankedRestaurants(20.0, 30.0, "Bri", EVENING, 3.0)));
+  }
+
+  @Test
+  void indexesItemsUnderTheirNamesInTheItemsCollection() {
+    ItemEntity itemEntity = new ItemEntity();
+    itemEntity.setItemId("1");
+    itemEntity.setName("Hyderabadi Dum Briyani");
+    itemEntity.setAttributes(Collections.singletonList("Hyderabadi"));
+    mongoTemplate.save(itemEntity, "items");
+    indexedRestaurantSearch.refreshIndex();
+
+    // Every fixture menu lists its item under item id 1.
+    assertEquals(Arrays.asList("11", "12"), idsOf(restaurantRepositoryService
+        .findRestaurantsByItemName(20.0, 30.0, "dum briyani", EVENING, 3.0)));
+    assertEquals(Collections.emptyList(), idsOf(restaurantRepositoryService
+        .findRestaurantsByItemName(20.0, 30.0, "chicken", EVENING, 3.0)));
+    assertEquals(Arrays.asList("11", "12"), idsOf(restaurantRepositoryService
+        .findRestaurantsByItemAttributes(20.0, 30.0, "hyderabadi", EVENING, 3.0)));
+  }
+
+  private List<String> idsOf(List<Restaurant> restaurants) {
+    return restaurants.stream().map(Restaurant::getRestaurantId).collect(Collectors.toList());
+  }
+
+  private <T> List<T> listOf(String fixtureName, TypeReference<List<T>> type)
+      throws IOException {
+    return objectMapper.readValue(FixtureHelpers.fixture(FIXTURES + "/" + fixtureName), type);
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.dto.Item;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.indexes.RestaurantSearchIndex.Field;
+import com.crio.qeats.models.MenuEntity;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.MenuRepository;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest(classes = {QEatsApplication.class},
+    properties = {"qeats.search.item-view.enabled=true"})
+@DirtiesContext
+@ActiveProfiles("test")
+class ItemRestaurantViewTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+  private static final LocalTime EVENING = LocalTime.of(19, 0);
+
+  @Autowired
+  private ItemRestaurantView itemRestaurantView;
+  @Autowired
+  private RestaurantRepositoryService restaurantRepositoryService;
+  @Autowired
+  private MenuRepository menuRepository;
+  @Autowired
+  private MongoTemplate mongoTemplate;
+  @Autowired
+  private ApplicationEventPublisher applicationEventPublisher;
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  private List<MenuEntity> menuEntities;
+
+  @BeforeEach
+  void setup() throws IOException {
+    for (RestaurantEntity restaurantEntity : listOf("initial_data_set_restaurants.json",
+        new TypeReference<List<RestaurantEntity>>() {
+        })) {
+      mongoTemplate.save(restaurantEntity, "restaurants");
+    }
+    menuEntities = listOf("initial_data_set_menus.json",
+        new TypeReference<List<MenuEntity>>() {
+        });
+    itemRestaurantView.rebuild();
+    for (MenuEntity menuEntity : menuEntities) {
+      mongoTemplate.save(menuEntity, "menus");
+    }
+  }
+
+  @AfterEach
+  void teardown() {
+    mongoTemplate.dropCollection("restaurants");
+    mongoTemplate.dropCollection("menus");
+    itemRestaurantView.rebuild();
+  }
+
+  @Test
+  void addsTheMenusSaved() {
+    assertEquals(Collections.emptyList(), itemRestaurantView.checkConsistency());
+    assertEquals(Arrays.asList("11", "12"), itemRestaurantView.findRestaurantIdsCloseBy(
+        Field.ITEM_NAME, "briyani", 20.0, 30.0, 3.0));
+    assertEquals(Arrays.asList("12"), itemRestaurantView.findRestaurantIdsCloseBy(
+        Field.ITEM_NAME, "Fish Briyani", 20.0, 30.0, 3.0));
+    assertEquals(Arrays.asList("13"), itemRestaurantView.findRestaurantIdsCloseBy(
+        Field.ITEM_ATTRIBUTE, "mughal", 20.8, 30.1, 5.0));
+    assertEquals(Collections.emptyList(), itemRestaurantView.findRestaurantIdsCloseBy(
+        Field.ITEM_NAME, "mughal", 20.8, 30.1, 5.0));
+  }
+
+  @Test
+  void updatesTheRestaurantsOfMenusSavedAgainOrDeleted() {
+    MenuEntity menuEntity = menuEntities.get(1);
+    menuEntity.setItems(Arrays.asList(new Item(null, "2", "Masala Dosa", null,
+        Arrays.asList("South Indian"), 80)));
+    menuRepository.save(menuEntity);
+
+    assertEquals(Arrays.asList("11"), itemRestaurantView.findRestaurantIdsCloseBy(
+        Field.ITEM_NAME, "briyani", 20.0, 30.0, 3.0));
+    assertEquals(Arrays.asList("12"), itemRestaurantView.findRestaurantIdsCloseBy(
+        Field.ITEM_ATTRIBUTE, "south indian", 20.0, 30.0, 3.0));
+
+    menuRepository.deleteById(menuEntity.getId());
+
+    assertEquals(Collections.emptyList(), itemRestaurantView.findRestaurantIdsCloseBy(
+        Field.ITEM_NAME, "dosa", 20.0, 30.0, 3.0));
+    assertEquals(Collections.emptyList(), itemRestaurantView.checkConsistency());
+  }
+
+  @Test
+  void repairsChangesMadeBehindItsBack() {
+    mongoTemplate.getCollection("menus").insertOne(new Document("restaurantId", "10")
+        .append("items", Collections.singletonList(new Document("itemId", "3")
+            .append("name", "Chicken Briyani").append("attributes", Arrays.asList("Mughal")))));
+
+    assertFalse(itemRestaurantView.checkConsistency().isEmpty());
+    assertTrue(itemRestaurantView.repair());
+
+    assertEquals(Collections.emptyList(), itemRestaurantView.checkConsistency());
+    assertFalse(itemRestaurantView.repair());
+    assertEquals(Arrays.asList("10", "11"), itemRestaurantView.findRestaurantIdsCloseBy(
+        Field.ITEM_NAME, "chicken briyani", 20.0, 30.0, 5.0));
+  }
+
+  @Test
+  void movesTheRestaurantsThatChanged() {
+    Restaurant previous = new Restaurant();
+    previous.setRestaurantId("12");
+    previous.setLatitude(20.015);
+    previous.setLongitude(30.015);
+    Restaurant current = new Restaurant();
+    current.setRestaurantId("12");
+    current.setLatitude(20.8);
+    current.setLongitude(30.1);
+    applicationEventPublisher.publishEvent(new RestaurantsChangedEvent(this,
+        Collections.singletonList(previous), Collections.singletonList(current)));
+
+    assertEquals(Arrays.asList("11"), itemRestaurantView.findRestaurantIdsCloseBy(
+        Field.ITEM_NAME, "briyani", 20.0, 30.0, 3.0));
+    assertEquals(Arrays.asList("12", "13"), itemRestaurantView.findRestaurantIdsCloseBy(
+        Field.ITEM_NAME, "briyani", 20.8, 30.1, 5.0));
+  }
+
+  @Test
+  void findsTheRestaurantsServingAnItemThroughTheView() throws Exception {
+    assertEquals(Arrays.asList("11", "12"), idsOf(restaurantRepositoryService
+        .findRestaurantsByItemName(20.0, 30.0, "briyani", EVENING, 3.0)));
+    assertEquals(Arrays.asList("13"), idsOf(restaurantRepositoryService
+        .findRestaurantsByItemAttributesMT(20.8, 30.1, "Mughal", EVENING, 5.0).get()));
+    assertEquals(Collections.emptyList(), idsOf(restaurantRepositoryService
+        .findRestaurantsByItemName(20.0, 30.0, "briyani", LocalTime.of(23, 30), 3.0)));
+  }
+
+  private List<String> idsOf(List<Restaurant> restaurants) {
+    return restaurants.stream().map(Restaurant::getRestaurantId).collect(Collectors.toList());
+  }
+
+  private <T> List<T> listOf(String fixtureName, TypeReference<List<T>> type)
+      throws IOException {
+    return objectMapper.readValue(FixtureHelpers.fixture(FIXTURES + "/" + fixtureName), type);
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest(classes = {QEatsApplication.class},
+    properties = {"qeats.nearby.backend=mongo", "qeats.nearby.cache.enabled=false"})
+@DirtiesContext
+@ActiveProfiles("test")
+class MongoGeoNearbyRestaurantsFinderTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  @Autowired
+  private MongoGeoNearbyRestaurantsFinder mongoGeoNearbyRestaurantsFinder;
+  @Autowired
+  private RestaurantRepositoryService restaurantRepositoryService;
+  @Autowired
+  private MongoTemplate mongoTemplate;
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @BeforeEach
+  void setup() throws IOException {
+    for (RestaurantEntity restaurantEntity : listOfRestaurants()) {
+      mongoTemplate.save(restaurantEntity, "restaurants");
+    }
+    mongoGeoNearbyRestaurantsFinder.backfillLocations();
+  }
+
+  @AfterEach
+  void teardown() {
+    mongoTemplate.dropCollection("restaurants");
+  }
+
+  @Test
+  void backfillAddsLocationToEveryRestaurant() {
+    for (RestaurantEntity restaurantEntity : mongoTemplate.findAll(RestaurantEntity.class)) {
+      assertNotNull(restaurantEntity.getLocation());
+      assertEquals(restaurantEntity.getLatitude().doubleValue(),
+          restaurantEntity.getLocation().getY());
+      assertEquals(restaurantEntity.getLongitude().doubleValue(),
+          restaurantEntity.getLocation().getX());
+    }
+  }
+
+  @Test
+  void backfillMovesTheLocationOfRestaurantsMovedInTheDatabase() {
+    Query restaurant11 = Query.query(Criteria.where("restaurantId").is("11"));
+    mongoTemplate.updateFirst(restaurant11, Update.update("latitude", 20.5),
+        RestaurantEntity.class);
+    assertEquals(20.0, mongoTemplate.findOne(restaurant11, RestaurantEntity.class).getLocation()
+        .getY(), 0.1);
+
+    mongoGeoNearbyRestaurantsFinder.backfillLocations();
+
+    assertEquals(20.5, mongoTemplate.findOne(restaurant11, RestaurantEntity.class).getLocation()
+        .getY());
+  }
+
+  @Test
+  void savingARestaurantSetsItsLocation() {
+    Query restaurant11 = Query.query(Criteria.where("restaurantId").is("11"));
+    RestaurantEntity restaurantEntity = mongoTemplate.findOne(restaurant11,
+        RestaurantEntity.class);
+    restaurantEntity.setLatitude(20.5);
+    restaurantEntity.setLongitude(30.5);
+    mongoTemplate.save(restaurantEntity);
+
+    GeoJsonPoint location = mongoTemplate.findOne(restaurant11, RestaurantEntity.class)
+        .getLocation();
+    assertEquals(20.5, location.getY());
+    assertEquals(30.5, location.getX());
+  }
+
+  @Test
+  void restaurantsCloseByAndOpenNow() {
+    List<Restaurant> allRestaurantsCloseBy = restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+    // $nearSphere returns the closest restaurant first.
+    assertEquals(2, allRestaurantsCloseBy.size());
+    assertEquals("12", allRestaurantsCloseBy.get(0).getRestaurantId());
+    assertEquals("11", allRestaurantsCloseBy.get(1).getRestaurantId());
+  }
+
+  @Test
+  void noRestaurantsNearBy() {
+    assertEquals(0, restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.9, 30.0, LocalTime.of(18, 1), 3.0).size());
+  }
+
+  @Test
+  void tooEarlyNoRestaurantIsOpen() {
+    assertEquals(0, restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(17, 59), 3.0).size());
+  }
+
+  private List<RestaurantEntity> listOfRestaurants() throws IOException {
+    String fixture =
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json");
+
+    return objectMapper.readValue(fixture, new TypeReference<List<RestaurantEntity>>() {
+    });
+  }
+}
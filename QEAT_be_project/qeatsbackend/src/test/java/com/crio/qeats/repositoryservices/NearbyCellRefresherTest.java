@@ -0,0 +1,93 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class NearbyCellRefresherTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final CountDownLatch running = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private NearbyCellRefresher nearbyCellRefresher;
+
+  @BeforeEach
+  void setup() {
+    nearbyCellRefresher = new NearbyCellRefresher();
+    ReflectionTestUtils.setField(nearbyCellRefresher, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(nearbyCellRefresher, "refreshThreads", 1);
+    ReflectionTestUtils.setField(nearbyCellRefresher, "refreshQueueSize", 1);
+    nearbyCellRefresher.initExecutor();
+  }
+
+  @AfterEach
+  void teardown() {
+    release.countDown();
+    nearbyCellRefresher.shutdownRefreshes();
+  }
+
+  @Test
+  void refreshesACellOnceAtATime() throws Exception {
+    AtomicInteger refreshes = new AtomicInteger();
+    nearbyCellRefresher.refresh("tdr1y0c", () -> {
+      refreshes.incrementAndGet();
+      running.countDown();
+      await(release);
+    });
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+
+    nearbyCellRefresher.refresh("tdr1y0c", refreshes::incrementAndGet);
+    assertEquals(1, nearbyCellRefresher.refreshesInFlight());
+    release.countDown();
+    for (int i = 0; i < 50 && nearbyCellRefresher.refreshesInFlight() > 0; i++) {
+      Thread.sleep(100);
+    }
+
+    assertEquals(1, refreshes.get());
+    assertEquals(0, nearbyCellRefresher.refreshesInFlight());
+  }
+
+  @Test
+  void dropsRefreshesThatDoNotFitInTheQueue() throws Exception {
+    nearbyCellRefresher.refresh("tdr1y0c", () -> {
+      running.countDown();
+      await(release);
+    });
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+
+    nearbyCellRefresher.refresh("tdr1y0d", () -> { });
+    nearbyCellRefresher.refresh("tdr1y0e", () -> { });
+
+    assertEquals(2, count("queued"));
+    assertEquals(1, count("rejected"));
+    assertEquals(2, nearbyCellRefresher.refreshesInFlight());
+  }
+
+  private double count(String result) {
+    return meterRegistry.get("qeats.nearby.cache.refreshes").tag("result", result).counter()
+        .count();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
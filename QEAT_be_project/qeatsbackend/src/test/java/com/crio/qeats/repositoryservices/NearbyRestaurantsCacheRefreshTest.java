@@ -0,0 +1,103 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest(classes = {QEatsApplication.class})
+@TestPropertySource(properties = {"qeats.nearby.cache.soft-ttl-seconds=0"})
+@DirtiesContext
+@ActiveProfiles("test")
+class NearbyRestaurantsCacheRefreshTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  @Autowired
+  private RestaurantRepositoryService restaurantRepositoryService;
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+  @Autowired
+  private NearbyRestaurantsCache nearbyRestaurantsCache;
+  @Autowired
+  private NearbyCellRefresher nearbyCellRefresher;
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @MockBean
+  private RestaurantRepository mockRestaurantRepository;
+
+  @BeforeEach
+  void setup() {
+    redisConfiguration.initCache();
+  }
+
+  @AfterEach
+  void teardown() throws InterruptedException {
+    // A refresh still running would store into the next test.
+    for (int i = 0; i < 50 && nearbyCellRefresher.refreshesInFlight() > 0; i++) {
+      Thread.sleep(100);
+    }
+    assertEquals(0, nearbyCellRefresher.refreshesInFlight());
+    nearbyRestaurantsCache.invalidateLocal();
+    redisConfiguration.destroyCache();
+  }
+
+  @Test
+  void staleCellsAreServedWhileRefreshedInBackground() throws Exception {
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+    CountDownLatch refreshing = new CountDownLatch(1);
+    when(mockRestaurantRepository.findAll())
+        .thenReturn(restaurants)
+        .thenAnswer(invocation -> {
+          // The refresh is held until the stale cell has been served.
+          refreshing.await(5, TimeUnit.SECONDS);
+          return restaurants;
+        });
+
+    restaurantRepositoryService.findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+    List<Restaurant> allRestaurantsCloseBy = restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+    assertEquals(2, allRestaurantsCloseBy.size());
+    refreshing.countDown();
+
+    verify(mockRestaurantRepository, timeout(5000).times(2)).findAll();
+  }
+
+  private List<RestaurantEntity> listOfRestaurants() throws IOException {
+    String fixture =
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json");
+
+    return objectMapper.readValue(fixture, new TypeReference<List<RestaurantEntity>>() {
+    });
+  }
+}
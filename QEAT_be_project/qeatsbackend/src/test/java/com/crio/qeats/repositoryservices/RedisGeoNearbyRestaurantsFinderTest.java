@@ -0,0 +1,191 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.crio.qeats.utils.GeoUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import redis.clients.jedis.Jedis;
+
+@SpringBootTest(classes = {QEatsApplication.class},
+    properties = {"qeats.nearby.backend=redis-geo", "qeats.nearby.cache.enabled=false"})
+@DirtiesContext
+@ActiveProfiles("test")
+class RedisGeoNearbyRestaurantsFinderTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  @Autowired
+  private RedisGeoNearbyRestaurantsFinder redisGeoNearbyRestaurantsFinder;
+  @Autowired
+  private RestaurantRepositoryService restaurantRepositoryService;
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+  @Autowired
+  private MongoTemplate mongoTemplate;
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${spring.redis.port}")
+  private int redisPort;
+
+  @BeforeEach
+  void setup() throws IOException {
+    redisConfiguration.initCache();
+    for (RestaurantEntity restaurantEntity : listOfRestaurants()) {
+      mongoTemplate.save(restaurantEntity, "restaurants");
+    }
+    redisGeoNearbyRestaurantsFinder.syncIndex();
+  }
+
+  @AfterEach
+  void teardown() {
+    mongoTemplate.dropCollection("restaurants");
+    redisConfiguration.destroyCache();
+  }
+
+  @Test
+  void scoresMatchGeoadd() {
+    // From the GEOADD documentation, ZRANGE Sicily 0 -1 WITHSCORES.
+    assertEquals(3479099956230698L, RedisGeoNearbyRestaurantsFinder.score(38.115556, 13.361389));
+    assertEquals(3479447370796909L, RedisGeoNearbyRestaurantsFinder.score(37.502669, 15.087269));
+  }
+
+  @Test
+  void scoreRangesCoverEveryLocationWithinRadius() {
+    Random random = new Random(42);
+    double[][] queries = {{12.97, 77.59}, {-16.5, 179.99}, {60.0, 10.0}};
+    for (double[] query : queries) {
+      for (double radiusInKms : new double[] {0.1, 3, 50}) {
+        List<long[]> ranges = RedisGeoNearbyRestaurantsFinder.findScoreRanges(query[0],
+            query[1], radiusInKms);
+        assertTrue(ranges.size() <= 9, "ranges: " + ranges.size());
+
+        for (int i = 0; i < 2000; i++) {
+          double latitude = query[0] - 0.5 + random.nextDouble();
+          double longitude = query[1] - 1 + 2 * random.nextDouble();
+          if (longitude > 180) {
+            longitude -= 360;
+          }
+          if (GeoUtils.findDistanceInKm(query[0], query[1], latitude, longitude)
+              < radiusInKms) {
+            long score = RedisGeoNearbyRestaurantsFinder.score(latitude, longitude);
+            assertTrue(ranges.stream().anyMatch(range -> range[0] <= score && score < range[1]));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void restaurantsCloseByAndOpenNow() {
+    assertEquals(ids("11", "12"), idsOf(restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0)));
+    assertEquals(ids("10", "11", "12"), idsOf(restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 5.0)));
+    assertEquals(ids(), idsOf(restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.9, 30.0, LocalTime.of(18, 1), 3.0)));
+    assertEquals(ids(), idsOf(restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(17, 59), 3.0)));
+  }
+
+  @Test
+  void writesOnlyChangedRestaurants() {
+    mongoTemplate.updateFirst(new Query(Criteria.where("restaurantId").is("12")),
+        new Update().set("latitude", 20.9).set("longitude", 30.0), RestaurantEntity.class);
+    mongoTemplate.remove(new Query(Criteria.where("restaurantId").is("11")),
+        RestaurantEntity.class);
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      // Left alone, since the restaurant did not change.
+      jedis.hset(RedisGeoNearbyRestaurantsFinder.DETAILS_KEY, "10", "unchanged");
+    }
+
+    redisGeoNearbyRestaurantsFinder.syncIndex();
+
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      assertEquals(4, jedis.zcard(RedisGeoNearbyRestaurantsFinder.GEO_KEY).longValue());
+      assertEquals("unchanged", jedis.hget(RedisGeoNearbyRestaurantsFinder.DETAILS_KEY, "10"));
+    }
+    assertEquals(ids("12"), idsOf(redisGeoNearbyRestaurantsFinder
+        .findRestaurantsCloseBy(20.9, 30.0, 3.0)));
+    assertEquals(ids(), idsOf(redisGeoNearbyRestaurantsFinder
+        .findRestaurantsCloseBy(20.0, 30.0, 3.0)));
+  }
+
+  @Test
+  void reloadsTheIndexOnceRedisLostIt() {
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      jedis.flushAll();
+    }
+
+    redisGeoNearbyRestaurantsFinder.syncIndex();
+
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      assertEquals(5, jedis.zcard(RedisGeoNearbyRestaurantsFinder.GEO_KEY).longValue());
+    }
+  }
+
+  @Test
+  void scansTheDatabaseWhileRedisIsDown() {
+    // Nothing listens on this port.
+    redisConfiguration.setRedisPort(redisPort + 1);
+    redisConfiguration.initCache();
+    try {
+      assertEquals(ids("11", "12"), idsOf(redisGeoNearbyRestaurantsFinder
+          .findRestaurantsCloseBy(20.0, 30.0, 3.0)));
+    } finally {
+      redisConfiguration.setRedisPort(redisPort);
+      redisConfiguration.initCache();
+    }
+  }
+
+  private Set<String> ids(String... restaurantIds) {
+    return new HashSet<>(Arrays.asList(restaurantIds));
+  }
+
+  private Set<String> idsOf(List<Restaurant> restaurants) {
+    return restaurants.stream().map(Restaurant::getRestaurantId)
+        .collect(Collectors.toCollection(TreeSet::new));
+  }
+
+  private List<RestaurantEntity> listOfRestaurants() throws IOException {
+    String fixture =
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json");
+
+    return objectMapper.readValue(fixture, new TypeReference<List<RestaurantEntity>>() {
+    });
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.dto.Restaurant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import redis.clients.jedis.Jedis;
+
+@SpringBootTest(classes = {QEatsApplication.class})
+@DirtiesContext
+@ActiveProfiles("test")
+class RestaurantCellStoreTest {
+
+  @Autowired
+  private RestaurantCellStore restaurantCellStore;
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+
+  private final Restaurant dosaPlaza = restaurant("1", "Dosa Plaza", 12.9121, 77.6446,
+      List.of("South Indian"));
+  private final Restaurant biryaniHouse = restaurant("2", "Biryani House", 12.9122, 77.6447,
+      null);
+  private String storageKey;
+
+  @BeforeEach
+  void setup() {
+    redisConfiguration.initCache();
+    storageKey = restaurantCellStore.storageKey(dosaPlaza);
+  }
+
+  @AfterEach
+  void teardown() {
+    redisConfiguration.destroyCache();
+  }
+
+  @Test
+  void readsBackTheStorageCellsItStored() {
+    Map<String, RestaurantCell> cells = redisConfiguration.execute(jedis -> {
+      restaurantCellStore.storeAll(jedis, Map.of(storageKey,
+          RestaurantCell.ofStorageCell(List.of(dosaPlaza, biryaniHouse), 1234L)));
+      return restaurantCellStore.readAll(jedis, List.of(storageKey, "tdr1y0"));
+    });
+
+    assertEquals(Collections.singleton(storageKey), cells.keySet());
+    RestaurantCell cell = cells.get(storageKey);
+    assertEquals(Arrays.asList(dosaPlaza, biryaniHouse), cell.getRestaurants());
+    assertEquals(1234L, cell.getRefreshAt());
+    assertArrayEquals(new int[] {10 * 60, 22 * 60}, cell.getOpensAt());
+  }
+
+  @Test
+  void leavesOutStorageCellsWithARestaurantMissing() {
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      restaurantCellStore.storeAll(jedis, Map.of(storageKey,
+          RestaurantCell.ofStorageCell(List.of(dosaPlaza, biryaniHouse), 1234L)));
+      jedis.del("restaurant:2");
+
+      assertTrue(restaurantCellStore.readAll(jedis, List.of(storageKey)).isEmpty());
+    }
+  }
+
+  @Test
+  void dropsTheStorageCellsOfMovedRestaurantsOnly() {
+    Restaurant moved = restaurant("2", "Biryani House", 12.97, 77.59, null);
+    String movedKey = restaurantCellStore.storageKey(moved);
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      restaurantCellStore.storeAll(jedis, Map.of(
+          storageKey, RestaurantCell.ofStorageCell(List.of(dosaPlaza, biryaniHouse), 1234L),
+          movedKey, RestaurantCell.ofStorageCell(Collections.emptyList(), 1234L)));
+
+      Restaurant renamed = restaurant("1", "Dosa Plaza Express", 12.9121, 77.6446, null);
+      restaurantCellStore.updateRestaurants(jedis, List.of(dosaPlaza),
+          List.of(renamed));
+      assertEquals("Dosa Plaza Express", jedis.hget("restaurant:1", "name"));
+      assertFalse(restaurantCellStore.readAll(jedis, List.of(storageKey)).isEmpty());
+
+      restaurantCellStore.updateRestaurants(jedis, List.of(biryaniHouse), List.of(moved));
+      assertTrue(restaurantCellStore.readAll(jedis, List.of(storageKey, movedKey)).isEmpty());
+    }
+  }
+
+  private static Restaurant restaurant(String restaurantId, String name, double latitude,
+      double longitude, List<String> attributes) {
+    return new Restaurant(null, restaurantId, name, "Bangalore", "www.google.com", latitude,
+        longitude, restaurantId.equals("1") ? "10:00" : "22:00", "23:00", attributes, null);
+  }
+}
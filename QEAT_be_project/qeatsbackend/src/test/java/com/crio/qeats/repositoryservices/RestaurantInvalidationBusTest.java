@@ -0,0 +1,210 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.repositoryservices;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import ch.hsr.geohash.GeoHash;
+import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.repositoryservices.RestaurantInvalidationBus.Invalidation;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+@SpringBootTest(classes = {QEatsApplication.class},
+    properties = {"qeats.invalidation.reconnect-delay-ms=50"})
+@DirtiesContext
+@ActiveProfiles("test")
+class RestaurantInvalidationBusTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+  private static final String CHANNEL = "qeats:invalidations";
+
+  @Autowired
+  private RestaurantInvalidationBus restaurantInvalidationBus;
+  @Autowired
+  private NearbyRestaurantsCache nearbyRestaurantsCache;
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+  @Autowired
+  private ApplicationEventPublisher applicationEventPublisher;
+  @Autowired
+  private ObjectMapper objectMapper;
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${spring.redis.port}")
+  private int redisPort;
+
+  @MockBean
+  private RestaurantRepository mockRestaurantRepository;
+
+  @BeforeEach
+  void setup() throws Exception {
+    redisConfiguration.initCache();
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+    waitFor(restaurantInvalidationBus::isSubscribed);
+  }
+
+  @AfterEach
+  void teardown() {
+    nearbyRestaurantsCache.invalidateLocal();
+    redisConfiguration.destroyCache();
+  }
+
+  @Test
+  void publishesRestaurantsChangedHere() throws Exception {
+    BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+    JedisPubSub listener = new JedisPubSub() {
+      @Override
+      public void onMessage(String channel, String message) {
+        messages.add(message);
+      }
+    };
+    Thread thread = new Thread(() -> {
+      try (Jedis jedis = new Jedis(RedisConfiguration.redisHost, redisPort)) {
+        jedis.subscribe(listener, CHANNEL);
+      }
+    });
+    thread.start();
+    try {
+      waitFor(listener::isSubscribed);
+      double received = receivedCount();
+
+      Restaurant previous = restaurant("11", 20.0269, 30.0);
+      Restaurant current = restaurant("11", 20.8, 30.1);
+      applicationEventPublisher.publishEvent(new RestaurantsChangedEvent(this,
+          Collections.singletonList(previous), Collections.singletonList(current)));
+
+      String message = messages.poll(5, TimeUnit.SECONDS);
+      assertNotNull(message);
+      Invalidation invalidation = objectMapper.readValue(message, Invalidation.class);
+      assertEquals(Collections.singletonList("11"), invalidation.getRestaurantIds());
+      assertEquals(Arrays.asList(geoHash(20.0269, 30.0), geoHash(20.8, 30.1)),
+          invalidation.getGeoHashes());
+      // Our own invalidations are not applied again.
+      Thread.sleep(100);
+      assertEquals(received, receivedCount());
+    } finally {
+      listener.unsubscribe();
+      thread.join();
+    }
+  }
+
+  @Test
+  void dropsLocalEntriesInvalidatedByAnotherInstance() throws Exception {
+    nearbyRestaurantsCache.findCell(20.0, 30.0, 3.0);
+    nearbyRestaurantsCache.findCell(20.8, 30.1, 3.0);
+    Cache<String, RestaurantCell> localCache = localCache();
+    assertEquals(2, localCache.size());
+    double received = receivedCount();
+    long lags = meterRegistry.get("qeats.invalidation.lag").timer().count();
+
+    Invalidation invalidation = new Invalidation("other", System.currentTimeMillis(),
+        Collections.singletonList("11"), Collections.singletonList(geoHash(20.0269, 30.0)));
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      jedis.publish(CHANNEL, objectMapper.writeValueAsString(invalidation));
+    }
+
+    waitFor(() -> localCache.getIfPresent(geoHash(20.0, 30.0)) == null);
+    assertNotNull(localCache.getIfPresent(geoHash(20.8, 30.1)));
+    assertEquals(received + 1, receivedCount());
+    assertEquals(lags + 1, meterRegistry.get("qeats.invalidation.lag").timer().count());
+  }
+
+  @Test
+  void dropsEverythingOnceSubscribedAgain() throws Exception {
+    nearbyRestaurantsCache.findCell(20.0, 30.0, 3.0);
+    Cache<String, RestaurantCell> localCache = localCache();
+    assertEquals(1, localCache.size());
+    double resubscriptions =
+        meterRegistry.get("qeats.invalidation.resubscriptions").counter().count();
+
+    // Invalidations published until the bus subscribes again are missed.
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      for (String client : jedis.clientList().split("\n")) {
+        if (client.contains("cmd=subscribe")) {
+          jedis.clientKill(client.replaceAll(".*addr=(\\S+).*", "$1").trim());
+        }
+      }
+    }
+
+    waitFor(() -> meterRegistry.get("qeats.invalidation.resubscriptions").counter().count()
+        > resubscriptions);
+    waitFor(restaurantInvalidationBus::isSubscribed);
+    assertEquals(0, localCache.size());
+  }
+
+  @SuppressWarnings("unchecked")
+  private Cache<String, RestaurantCell> localCache() {
+    return (Cache<String, RestaurantCell>) ReflectionTestUtils.getField(nearbyRestaurantsCache,
+        "localCache");
+  }
+
+  private double receivedCount() {
+    return meterRegistry.get("qeats.invalidation.messages").tag("result", "received")
+        .counter().count();
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(50);
+    }
+    assertTrue(condition.getAsBoolean());
+  }
+
+  private static String geoHash(double latitude, double longitude) {
+    return GeoHash.geoHashStringWithCharacterPrecision(latitude, longitude,
+        NearbyRestaurantsCache.GEOHASH_PRECISION);
+  }
+
+  private Restaurant restaurant(String restaurantId, double latitude, double longitude) {
+    Restaurant restaurant = new Restaurant();
+    restaurant.setRestaurantId(restaurantId);
+    restaurant.setLatitude(latitude);
+    restaurant.setLongitude(longitude);
+    return restaurant;
+  }
+
+  private List<RestaurantEntity> listOfRestaurants() throws IOException {
+    String fixture =
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json");
+
+    return objectMapper.readValue(fixture, new TypeReference<List<RestaurantEntity>>() {
+    });
+  }
+}
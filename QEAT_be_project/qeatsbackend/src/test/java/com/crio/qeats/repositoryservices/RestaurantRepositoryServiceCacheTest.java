@@ -1,7 +1,12 @@
 package com.crio.qeats.repositoryservices;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -10,14 +15,23 @@ import ch.hsr.geohash.GeoHash;
 import com.crio.qeats.QEatsApplication;
 import com.crio.qeats.configs.RedisConfiguration;
 import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.globals.GlobalConstants;
 import com.crio.qeats.models.RestaurantEntity;
 import com.crio.qeats.repositories.RestaurantRepository;
 import com.crio.qeats.utils.FixtureHelpers;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.io.IOException;
 import java.time.LocalTime;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.inject.Provider;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -27,10 +41,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.embedded.RedisServer;
 
 @SpringBootTest(classes = {QEatsApplication.class})
@@ -39,6 +56,10 @@ import redis.embedded.RedisServer;
 class RestaurantRepositoryServiceCacheTest {
 
   private static final String FIXTURES = "fixtures/exchanges";
+  // Storage cell of the location looked up in these tests, and its Redis key.
+  private static final String STORAGE_CELL = GeoHash.geoHashStringWithCharacterPrecision(
+      20.0, 30.0, 6);
+  private static final String STORAGE_CELL_KEY = "cell:" + STORAGE_CELL;
 
   @Autowired
   private RestaurantRepositoryService restaurantRepositoryService;
@@ -47,9 +68,17 @@ class RestaurantRepositoryServiceCacheTest {
   @Autowired
   private RedisConfiguration redisConfiguration;
   @Autowired
+  private NearbyRestaurantsCache nearbyRestaurantsCache;
+  @Autowired
+  private StorageCellLeases storageCellLeases;
+  @Autowired
   private ObjectMapper objectMapper;
   @Autowired
   private Provider<ModelMapper> modelMapperProvider;
+  @Autowired
+  private MeterRegistry meterRegistry;
+  @Autowired
+  private ApplicationEventPublisher applicationEventPublisher;
 
   @Value("${spring.redis.port}")
   private int redisPort;
@@ -59,8 +88,15 @@ class RestaurantRepositoryServiceCacheTest {
   @MockBean
   private RestaurantRepository mockRestaurantRepository;
 
+  @BeforeEach
+  void setup() {
+    redisConfiguration.initCache();
+  }
+
   @AfterEach
   void teardown() {
+    ReflectionTestUtils.setField(storageCellLeases, "leaseEnabled", false);
+    nearbyRestaurantsCache.invalidateLocal();
     redisConfiguration.destroyCache();
   }
 
@@ -79,15 +115,295 @@ class RestaurantRepositoryServiceCacheTest {
         .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
     allRestaurantsCloseBy = restaurantRepositoryService
         .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
-    GeoHash geoHash = GeoHash.withCharacterPrecision(20.0, 30.0, 7);
 
     verify(mockRestaurantRepository, times(1)).findAll();
-    assertNotNull(jedis.get(geoHash.toBase32()));
+    assertNotNull(jedis.get(STORAGE_CELL_KEY));
     assertEquals(2, allRestaurantsCloseBy.size());
     assertEquals("11", allRestaurantsCloseBy.get(0).getRestaurantId());
     assertEquals("12", allRestaurantsCloseBy.get(1).getRestaurantId());
   }
 
+  @Test
+  void cachedCellServesOtherTimesAndRadii() throws IOException {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+
+    assertEquals(2, restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0).size());
+    List<Restaurant> allRestaurantsCloseBy = restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(22, 59), 5.0);
+    assertEquals(0, restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(17, 0), 5.0).size());
+
+    verify(mockRestaurantRepository, times(1)).findAll();
+    assertEquals(3, allRestaurantsCloseBy.size());
+    assertEquals("10", allRestaurantsCloseBy.get(0).getRestaurantId());
+    assertEquals("11", allRestaurantsCloseBy.get(1).getRestaurantId());
+    assertEquals("12", allRestaurantsCloseBy.get(2).getRestaurantId());
+  }
+
+  @Test
+  void localCacheServesWithoutRedis() throws IOException {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+
+    restaurantRepositoryService.findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      jedis.flushAll();
+    }
+    List<Restaurant> allRestaurantsCloseBy = restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+    verify(mockRestaurantRepository, times(1)).findAll();
+    assertEquals(2, allRestaurantsCloseBy.size());
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      assertNull(jedis.get(STORAGE_CELL_KEY));
+    }
+
+    // Callers get their own copies of the cached restaurants.
+    allRestaurantsCloseBy.get(0).setName("changed");
+    assertNotEquals("changed", restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0).get(0).getName());
+  }
+
+  @Test
+  void reloadsUnreadableCacheEntries() throws IOException {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      jedis.set(STORAGE_CELL_KEY, "[]");
+    }
+
+    List<Restaurant> allRestaurantsCloseBy = restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+    verify(mockRestaurantRepository, times(1)).findAll();
+    assertEquals(2, allRestaurantsCloseBy.size());
+  }
+
+  @Test
+  void neighbouringCellsShareStorageCells() throws IOException {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+
+    restaurantRepositoryService.findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+    double hits = meterRegistry.get("qeats.nearby.cache.redis").tag("result", "hit")
+        .counter().count();
+    // A few hundred meters away, in another precision 7 cell.
+    assertNotEquals(GeoHash.geoHashStringWithCharacterPrecision(20.0, 30.0, 7),
+        GeoHash.geoHashStringWithCharacterPrecision(20.003, 30.003, 7));
+    restaurantRepositoryService.findAllRestaurantsCloseBy(20.003, 30.003, LocalTime.of(18, 1),
+        3.0);
+
+    // Only the storage cells on the far side of the second circle had to be loaded.
+    verify(mockRestaurantRepository, times(2)).findAll();
+    assertTrue(meterRegistry.get("qeats.nearby.cache.redis").tag("result", "hit")
+        .counter().count() > hits);
+  }
+
+  @Test
+  void restaurantsUpdatedInPlaceRewriteOneKey() throws IOException {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+    restaurantRepositoryService.findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+    Restaurant previous = restaurant("11");
+    Restaurant current = new Restaurant(previous);
+    current.setName("Renamed");
+    applicationEventPublisher.publishEvent(new RestaurantsChangedEvent(this,
+        Collections.singletonList(previous), Collections.singletonList(current)));
+
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      assertEquals("Renamed", jedis.hget("restaurant:11", "name"));
+      assertNotNull(jedis.get(STORAGE_CELL_KEY));
+    }
+    List<Restaurant> allRestaurantsCloseBy = restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+    verify(mockRestaurantRepository, times(1)).findAll();
+    assertEquals("11", allRestaurantsCloseBy.get(0).getRestaurantId());
+    assertEquals("Renamed", allRestaurantsCloseBy.get(0).getName());
+    assertEquals(previous.getAttributes(), allRestaurantsCloseBy.get(0).getAttributes());
+  }
+
+  @Test
+  void restaurantsUpdatedInPlaceKeepTheirHashAndDropRemovedFields() throws IOException {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+    restaurantRepositoryService.findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+    Restaurant previous = restaurant("11");
+    Restaurant current = new Restaurant(previous);
+    current.setAttributes(null);
+    applicationEventPublisher.publishEvent(new RestaurantsChangedEvent(this,
+        Collections.singletonList(previous), Collections.singletonList(current)));
+
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      assertNull(jedis.hget("restaurant:11", "attributes"));
+      assertEquals(previous.getName(), jedis.hget("restaurant:11", "name"));
+      long ttl = jedis.ttl("restaurant:11");
+      assertTrue(ttl > 0 && ttl <= GlobalConstants.REDIS_ENTRY_EXPIRY_IN_SECONDS);
+    }
+  }
+
+  @Test
+  void restaurantsExpireWithTheirStorageCell() throws IOException {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+    restaurantRepositoryService.findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      for (String restaurantId : new String[] {"11", "12"}) {
+        Restaurant restaurant = restaurant(restaurantId);
+        long cellTtl = jedis.ttl("cell:" + GeoHash.geoHashStringWithCharacterPrecision(
+            restaurant.getLatitude(), restaurant.getLongitude(), 6));
+        assertTrue(cellTtl > 0 && cellTtl <= GlobalConstants.REDIS_ENTRY_EXPIRY_IN_SECONDS);
+        assertTrue(Math.abs(jedis.ttl("restaurant:" + restaurantId) - cellTtl) <= 1);
+      }
+    }
+  }
+
+  @Test
+  void restaurantsMovedToAnotherCellReloadBothCells() throws IOException {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+    restaurantRepositoryService.findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+    Restaurant previous = restaurant("12");
+    Restaurant current = new Restaurant(previous);
+    current.setLatitude(20.0);
+    current.setLongitude(30.0);
+    String previousCellKey = "cell:" + GeoHash.geoHashStringWithCharacterPrecision(
+        previous.getLatitude(), previous.getLongitude(), 6);
+    applicationEventPublisher.publishEvent(new RestaurantsChangedEvent(this,
+        Collections.singletonList(previous), Collections.singletonList(current)));
+
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      assertNull(jedis.get(STORAGE_CELL_KEY));
+      assertNull(jedis.get(previousCellKey));
+    }
+    restaurantRepositoryService.findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+    verify(mockRestaurantRepository, times(2)).findAll();
+  }
+
+  @Test
+  void concurrentMissesShareOneLoad() throws Exception {
+    List<RestaurantEntity> restaurants = listOfRestaurants();
+    when(mockRestaurantRepository.findAll()).thenAnswer(invocation -> {
+      Thread.sleep(200);
+      return restaurants;
+    });
+
+    int threads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<List<Restaurant>>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          return restaurantRepositoryService
+              .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+        }));
+      }
+      start.countDown();
+      for (Future<List<Restaurant>> result : results) {
+        assertEquals(2, result.get().size());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verify(mockRestaurantRepository, times(1)).findAll();
+  }
+
+  @Test
+  void waitsForTheLeaseHolderToStoreTheCell() throws Exception {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+    ReflectionTestUtils.setField(storageCellLeases, "leaseEnabled", true);
+
+    restaurantRepositoryService.findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+    byte[] key = STORAGE_CELL_KEY.getBytes(StandardCharsets.UTF_8);
+    byte[] cell;
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      cell = jedis.get(key);
+      jedis.del(key);
+      // Another instance is loading the storage cell.
+      jedis.set("lease:" + STORAGE_CELL, "other");
+    }
+    nearbyRestaurantsCache.invalidateLocal();
+
+    Thread holder = new Thread(() -> {
+      try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+        Thread.sleep(200);
+        jedis.setex(key, 60, cell);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    holder.start();
+    List<Restaurant> allRestaurantsCloseBy = restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+    holder.join();
+
+    verify(mockRestaurantRepository, times(1)).findAll();
+    assertEquals(2, allRestaurantsCloseBy.size());
+  }
+
+  @Test
+  void loadsOnceTheLeaseExpires() throws IOException {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+    ReflectionTestUtils.setField(storageCellLeases, "leaseEnabled", true);
+
+    String leaseKey = "lease:" + STORAGE_CELL;
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      // Left behind by an instance that died while loading the storage cell.
+      jedis.set(leaseKey, "other", "NX", "PX", 200);
+    }
+
+    List<Restaurant> allRestaurantsCloseBy = restaurantRepositoryService
+        .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+    // The storage cells around it are loaded right away, the leased one once the lease expired.
+    verify(mockRestaurantRepository, times(2)).findAll();
+    assertEquals(2, allRestaurantsCloseBy.size());
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      assertNull(jedis.get(leaseKey));
+    }
+  }
+
+  @Test
+  void fallsBackToTheDatabaseWhileRedisIsDown() throws IOException {
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+    double circuitOpenings = meterRegistry.get("qeats.redis.circuit.openings").counter().count();
+
+    // Nothing listens on this port.
+    redisConfiguration.setRedisPort(redisPort + 1);
+    redisConfiguration.initCache();
+    try {
+      assertFalse(redisConfiguration.isCacheAvailable());
+      List<Restaurant> allRestaurantsCloseBy = restaurantRepositoryService
+          .findAllRestaurantsCloseBy(20.0, 30.0, LocalTime.of(18, 1), 3.0);
+
+      verify(mockRestaurantRepository, times(1)).findAll();
+      assertEquals(2, allRestaurantsCloseBy.size());
+
+      for (int i = 0; i < 5; i++) {
+        assertThrows(JedisConnectionException.class,
+            () -> redisConfiguration.execute(jedis -> jedis.get("key")));
+      }
+      assertEquals(circuitOpenings + 1,
+          meterRegistry.get("qeats.redis.circuit.openings").counter().count());
+      // Rejected without going to Redis while the breaker is open.
+      assertEquals("Redis circuit breaker is open", assertThrows(JedisConnectionException.class,
+          () -> redisConfiguration.execute(jedis -> jedis.get("key"))).getMessage());
+    } finally {
+      redisConfiguration.setRedisPort(redisPort);
+      redisConfiguration.initCache();
+    }
+  }
+
+  private Restaurant restaurant(String restaurantId) throws IOException {
+    return listOfRestaurants().stream()
+        .filter(restaurant -> restaurant.getRestaurantId().equals(restaurantId))
+        .map(restaurant -> modelMapperProvider.get().map(restaurant, Restaurant.class))
+        .findFirst().get();
+  }
+
   private List<RestaurantEntity> listOfRestaurants() throws IOException {
     String fixture =
         FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json");
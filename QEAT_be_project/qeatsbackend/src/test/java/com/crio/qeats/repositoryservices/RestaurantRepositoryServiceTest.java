@@ -18,6 +18,8 @@ import static org.mockito.Mockito.when;
 import com.crio.qeats.QEatsApplication;
 import com.crio.qeats.configs.RedisConfiguration;
 import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.ItemEntity;
+import com.crio.qeats.models.MenuEntity;
 import com.crio.qeats.models.RestaurantEntity;
 import com.crio.qeats.repositories.RestaurantRepository;
 import com.crio.qeats.utils.FixtureHelpers;
@@ -26,8 +28,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import javax.inject.Provider;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -88,6 +93,8 @@ public class RestaurantRepositoryServiceTest {
   @AfterEach
   void teardown() {
     mongoTemplate.dropCollection("restaurants");
+    mongoTemplate.dropCollection("menus");
+    mongoTemplate.dropCollection("items");
     redisConfiguration.destroyCache();
   }
 
@@ -177,6 +184,70 @@ public class RestaurantRepositoryServiceTest {
   }
 
 
+  @Test
+  void findRestaurantsByItemNameInOneAggregation() throws IOException {
+    saveMenusAndItems();
+
+    List<Restaurant> foundRestaurantsList = restaurantRepositoryService
+        .findRestaurantsByItemName(20.0, 30.0, "Briyani", LocalTime.of(20, 0), 3.0);
+
+    assertEquals(2, foundRestaurantsList.size());
+    assertEquals("11", foundRestaurantsList.get(0).getRestaurantId());
+    assertEquals("12", foundRestaurantsList.get(1).getRestaurantId());
+    assertEquals("A2B", foundRestaurantsList.get(0).getName());
+    assertEquals(Arrays.asList("Tamil", "South Indian"),
+        foundRestaurantsList.get(0).getAttributes());
+    assertEquals(0, restaurantRepositoryService
+        .findRestaurantsByItemName(20.0, 30.0, "Dosa", LocalTime.of(20, 0), 3.0).size());
+  }
+
+  @Test
+  void itemSearchesKeepTheOrderOfTheRestaurantsCollection() throws IOException {
+    saveMenusAndItems();
+    mongoTemplate.dropCollection("restaurants");
+    List<RestaurantEntity> reversedRestaurants = new ArrayList<>(allRestaurants);
+    Collections.reverse(reversedRestaurants);
+    for (RestaurantEntity restaurantEntity : reversedRestaurants) {
+      restaurantEntity.setId(null);
+      mongoTemplate.save(restaurantEntity, "restaurants");
+    }
+
+    List<Restaurant> foundRestaurantsList = restaurantRepositoryService
+        .findRestaurantsByItemName(20.0, 30.0, "Briyani", LocalTime.of(20, 0), 3.0);
+
+    assertEquals(Arrays.asList("12", "11"), foundRestaurantsList.stream()
+        .map(Restaurant::getRestaurantId).collect(Collectors.toList()));
+  }
+
+  @Test
+  void findRestaurantsByItemAttributesInOneAggregation() throws Exception {
+    saveMenusAndItems();
+
+    List<Restaurant> foundRestaurantsList = restaurantRepositoryService
+        .findRestaurantsByItemAttributesMT(20.8, 30.1, "Mughal", LocalTime.of(20, 0), 5.0).get();
+
+    // Restaurant 14, close by as well, has no menu.
+    assertEquals(1, foundRestaurantsList.size());
+    assertEquals("13", foundRestaurantsList.get(0).getRestaurantId());
+    assertEquals(0, restaurantRepositoryService
+        .findRestaurantsByItemAttributes(20.8, 30.1, "Mughal", LocalTime.of(17, 0), 5.0).size());
+  }
+
+  private void saveMenusAndItems() throws IOException {
+    String fixture = FixtureHelpers.fixture(FIXTURES + "/initial_data_set_menus.json");
+    List<MenuEntity> menuEntities = objectMapper.readValue(fixture,
+        new TypeReference<List<MenuEntity>>() {
+        });
+    for (MenuEntity menuEntity : menuEntities) {
+      mongoTemplate.save(menuEntity, "menus");
+    }
+    // Every fixture menu lists its item under item id 1.
+    ItemEntity itemEntity = new ItemEntity();
+    itemEntity.setItemId("1");
+    itemEntity.setName("Briyani");
+    itemEntity.setAttributes(Arrays.asList("Mughal"));
+    mongoTemplate.save(itemEntity, "items");
+  }
 
   void searchedAttributesIsSubsetOfRetrievedRestaurantAttributes() {
   }
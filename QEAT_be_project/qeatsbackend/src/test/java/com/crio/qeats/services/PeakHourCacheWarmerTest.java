@@ -0,0 +1,116 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import ch.hsr.geohash.GeoHash;
+import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositoryservices.AccessFrequencyTracker;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.repositoryservices.NearbyRestaurantsCache;
+import com.crio.qeats.utils.FixtureHelpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import redis.clients.jedis.Jedis;
+
+@SpringBootTest(classes = {QEatsApplication.class})
+@DirtiesContext
+@ActiveProfiles("test")
+class PeakHourCacheWarmerTest {
+
+  private static final String FIXTURES = "fixtures/exchanges";
+
+  @Autowired
+  private PeakHourCacheWarmer peakHourCacheWarmer;
+  @Autowired
+  private AccessFrequencyTracker accessFrequencyTracker;
+  @Autowired
+  private NearbyRestaurantsCache nearbyRestaurantsCache;
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+  @Autowired
+  private MeterRegistry meterRegistry;
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @MockBean
+  private RestaurantRepository mockRestaurantRepository;
+
+  // Storage cells of the busy and quiet locations.
+  private final String busyCell = "cell:"
+      + GeoHash.geoHashStringWithCharacterPrecision(20.0, 30.0, 6);
+  private final String quietCell = "cell:"
+      + GeoHash.geoHashStringWithCharacterPrecision(20.8, 30.1, 6);
+
+  @BeforeEach
+  void setup() throws IOException {
+    redisConfiguration.initCache();
+    when(mockRestaurantRepository.findAll()).thenReturn(listOfRestaurants());
+  }
+
+  @AfterEach
+  void teardown() {
+    nearbyRestaurantsCache.invalidateLocal();
+    redisConfiguration.destroyCache();
+  }
+
+  @Test
+  void warmsTheBusiestCellsBeforePeakHoursStartAndEnd() {
+    for (int i = 0; i < 3; i++) {
+      accessFrequencyTracker.recordLookup(20.0, 30.0);
+    }
+    accessFrequencyTracker.recordLookup(20.8, 30.1);
+
+    assertEquals(0, peakHourCacheWarmer.warmIfServingRadiusChanges(LocalTime.of(18, 30)));
+    assertEquals(0, peakHourCacheWarmer.warmIfServingRadiusChanges(LocalTime.of(19, 30)));
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      assertNull(jedis.get(busyCell));
+    }
+    verify(mockRestaurantRepository, times(0)).findAll();
+
+    // The radius shrinks at 19:00 and grows back after 21:00.
+    assertEquals(2, peakHourCacheWarmer.warmIfServingRadiusChanges(LocalTime.of(18, 55)));
+    try (Jedis jedis = redisConfiguration.getJedisPool().getResource()) {
+      assertNotNull(jedis.get(busyCell));
+      assertNotNull(jedis.get(quietCell));
+    }
+    verify(mockRestaurantRepository, times(2)).findAll();
+    assertEquals(1.0, meterRegistry.get("qeats.nearby.prewarm.coverage").gauge().value());
+
+    // Cells that are still fresh are not loaded again.
+    assertEquals(2, peakHourCacheWarmer.warmIfServingRadiusChanges(LocalTime.of(20, 56)));
+    verify(mockRestaurantRepository, times(2)).findAll();
+  }
+
+  private List<RestaurantEntity> listOfRestaurants() throws IOException {
+    String fixture =
+        FixtureHelpers.fixture(FIXTURES + "/initial_data_set_restaurants.json");
+
+    return objectMapper.readValue(fixture, new TypeReference<List<RestaurantEntity>>() {
+    });
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import com.crio.qeats.QEatsApplication;
+import com.crio.qeats.configs.RedisConfiguration;
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.models.RestaurantEntity;
+import com.crio.qeats.repositories.RestaurantRepository;
+import com.crio.qeats.repositoryservices.NearbyRestaurantsCache;
+import com.crio.qeats.repositoryservices.RestaurantsChangedEvent;
+import com.crio.qeats.utils.GeoUtils;
+import com.crio.qeats.utils.OpeningHours;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@SpringBootTest(classes = {QEatsApplication.class},
+    properties = {"qeats.search.cache.enabled=true", "qeats.search.cache.max-searches-per-cell=2"})
+@DirtiesContext
+@ActiveProfiles("test")
+class RestaurantSearchCacheTest {
+
+  private static final LocalTime EVENING = LocalTime.of(19, 0, 30);
+
+  @Autowired
+  private RestaurantSearchCache restaurantSearchCache;
+  @Autowired
+  private NearbyRestaurantsCache nearbyRestaurantsCache;
+  @Autowired
+  private RedisConfiguration redisConfiguration;
+  @Autowired
+  private MeterRegistry meterRegistry;
+  @Autowired
+  private ApplicationEventPublisher applicationEventPublisher;
+
+  @MockBean
+  private RestaurantRepository mockRestaurantRepository;
+
+  private final List<Restaurant> restaurants = new ArrayList<>();
+  private final AtomicInteger searches = new AtomicInteger();
+
+  @BeforeEach
+  void setup() {
+    redisConfiguration.initCache();
+    Random random = new Random(42);
+    List<RestaurantEntity> restaurantEntities = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      RestaurantEntity restaurantEntity = new RestaurantEntity();
+      restaurantEntity.setRestaurantId(String.valueOf(i));
+      restaurantEntity.setName(i % 3 == 0 ? "Dosa Plaza" : "A2B");
+      restaurantEntity.setCity("Hsr Layout");
+      restaurantEntity.setImageUrl("www.google.com");
+      restaurantEntity.setLatitude(12.0 + random.nextDouble() / 10);
+      restaurantEntity.setLongitude(77.0 + random.nextDouble() / 10);
+      restaurantEntity.setOpensAt(time(random.nextInt(24 * 4) * 15));
+      restaurantEntity.setClosesAt(time(random.nextInt(24 * 4) * 15));
+      restaurantEntity.setAttributes(List.of("South Indian"));
+      restaurantEntities.add(restaurantEntity);
+      restaurants.add(new Restaurant(null, restaurantEntity.getRestaurantId(),
+          restaurantEntity.getName(), restaurantEntity.getCity(), restaurantEntity.getImageUrl(),
+          restaurantEntity.getLatitude(), restaurantEntity.getLongitude(),
+          restaurantEntity.getOpensAt(), restaurantEntity.getClosesAt(),
+          restaurantEntity.getAttributes(), null));
+    }
+    when(mockRestaurantRepository.findAll()).thenReturn(restaurantEntities);
+  }
+
+  @AfterEach
+  void teardown() {
+    nearbyRestaurantsCache.invalidateLocal();
+    redisConfiguration.destroyCache();
+  }
+
+  @Test
+  void matchesSearchesFromTheLocationAndTimeOfTheRequest() {
+    Random random = new Random(7);
+    for (int i = 0; i < 500; i++) {
+      // Requests close to each other share cells.
+      double latitude = 12.05 + random.nextInt(10) / 1000.0 + random.nextDouble() / 10000;
+      double longitude = 77.05 + random.nextInt(10) / 1000.0 + random.nextDouble() / 10000;
+      double servingRadiusInKms = random.nextBoolean() ? 3.0 : 5.0;
+      // Opening hours change on the quarter, and restaurants opening at a minute are only open
+      // from its first instant on.
+      LocalTime currentTime = LocalTime.ofSecondOfDay(random.nextInt(24 * 4) * 15 * 60
+          + (random.nextInt(4) == 0 ? 0 : random.nextInt(60)));
+
+      assertEquals(idsOf(search(latitude, longitude, currentTime, servingRadiusInKms)),
+          idsOf(restaurantSearchCache.findRestaurants("a2b", latitude, longitude, currentTime,
+              servingRadiusInKms, this::search)));
+    }
+  }
+
+  @Test
+  void servesRepeatedSearchesFromTheCellUntilItIsDropped() {
+    WGS84Point center = GeoHash.withCharacterPrecision(12.05, 77.05,
+        NearbyRestaurantsCache.GEOHASH_PRECISION).getBoundingBoxCenterPoint();
+    double latitude = center.getLatitude();
+    double longitude = center.getLongitude();
+    double hits = count("hit");
+    double misses = count("miss");
+
+    assertEquals(idsOf(search(latitude, longitude, EVENING, 3.0)),
+        idsOf(find("a2b", latitude, longitude, EVENING)));
+    assertEquals(1, searches.get());
+    assertEquals(misses + 1, count("miss"));
+    // Another point of the same cell, at another time.
+    LocalTime later = LocalTime.of(22, 15);
+    assertEquals(idsOf(search(latitude + 0.0003, longitude - 0.0003, later, 3.0)),
+        idsOf(find("a2b", latitude + 0.0003, longitude - 0.0003, later)));
+    assertEquals(1, searches.get());
+    assertEquals(hits + 1, count("hit"));
+
+    applicationEventPublisher.publishEvent(new RestaurantsChangedEvent(this));
+    find("a2b", latitude, longitude, EVENING);
+    assertEquals(2, searches.get());
+    assertEquals(misses + 2, count("miss"));
+  }
+
+  @Test
+  void concurrentMissesShareOneSearch() throws Exception {
+    RestaurantSearchCache.Search slowSearch = (latitude, longitude, radiusInKms) -> {
+      try {
+        Thread.sleep(200);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      searches.incrementAndGet();
+      return search(latitude, longitude, radiusInKms);
+    };
+    List<String> expected = idsOf(search(12.05, 77.05, EVENING, 3.0));
+
+    int threads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<List<Restaurant>>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          return restaurantSearchCache.findRestaurants("a2b", 12.05, 77.05, EVENING, 3.0,
+              slowSearch);
+        }));
+      }
+      start.countDown();
+      for (Future<List<Restaurant>> result : results) {
+        assertEquals(expected, idsOf(result.get()));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, searches.get());
+  }
+
+  @Test
+  void keepsALimitedNumberOfSearchesPerCell() {
+    find("a2b", 12.05, 77.05, EVENING);
+    find("dosa", 12.05, 77.05, EVENING);
+    assertEquals(2, searches.get());
+    double directSearches = count("miss", "direct");
+
+    find("plaza", 12.05, 77.05, EVENING);
+    find("plaza", 12.05, 77.05, EVENING);
+    find("a2b", 12.05, 77.05, EVENING);
+    assertEquals(4, searches.get());
+    assertEquals(directSearches + 2, count("miss", "direct"));
+  }
+
+  @Test
+  void searchesThatMatchedNothingAgainAfterTheNegativeTtl() {
+    assertEquals(0, find("pizza", 12.05, 77.05, EVENING).size());
+    find("pizza", 12.05, 77.05, EVENING);
+    assertEquals(1, searches.get());
+
+    ReflectionTestUtils.setField(restaurantSearchCache, "negativeTtlInSeconds", 0L);
+    try {
+      // Drops the cell, and the matches kept on it.
+      nearbyRestaurantsCache.invalidateLocal();
+      find("pizza", 12.05, 77.05, EVENING);
+      find("pizza", 12.05, 77.05, EVENING);
+      assertEquals(3, searches.get());
+      // Searches that matched something are kept.
+      find("a2b", 12.05, 77.05, EVENING);
+      find("a2b", 12.05, 77.05, EVENING);
+      assertEquals(4, searches.get());
+    } finally {
+      ReflectionTestUtils.setField(restaurantSearchCache, "negativeTtlInSeconds", 30L);
+    }
+  }
+
+  @Test
+  void normalizesTokenizedSearchesOnly() {
+    assertEquals("chicken biryani",
+        RestaurantSearchCache.normalize(" Chicken  BIRYANI ", true));
+    assertEquals(" Chicken  BIRYANI ",
+        RestaurantSearchCache.normalize(" Chicken  BIRYANI ", false));
+  }
+
+  private List<Restaurant> find(String query, double latitude, double longitude,
+      LocalTime currentTime) {
+    return restaurantSearchCache.findRestaurants(query, latitude, longitude, currentTime, 3.0,
+        (cellLatitude, cellLongitude, radiusInKms) -> {
+          searches.incrementAndGet();
+          return search(query, cellLatitude, cellLongitude, radiusInKms);
+        });
+  }
+
+  private List<Restaurant> search(double latitude, double longitude, double radiusInKms) {
+    return search("a2b", latitude, longitude, radiusInKms);
+  }
+
+  // Restaurants whose name contains the query, within the radius and open or not.
+  private List<Restaurant> search(String query, double latitude, double longitude,
+      double radiusInKms) {
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(latitude, longitude,
+        radiusInKms);
+    return restaurants.stream()
+        .filter(restaurant -> restaurant.getName().toLowerCase().contains(query)
+            && radiusFilter.contains(restaurant.getLatitude(), restaurant.getLongitude()))
+        .collect(Collectors.toList());
+  }
+
+  private List<Restaurant> search(double latitude, double longitude, LocalTime currentTime,
+      double servingRadiusInKms) {
+    return search(latitude, longitude, servingRadiusInKms).stream()
+        .filter(restaurant -> OpeningHours.parse(restaurant.getOpensAt(),
+            restaurant.getClosesAt()).isOpenAt(currentTime))
+        .collect(Collectors.toList());
+  }
+
+  private double count(String result) {
+    return count(result, "cell");
+  }
+
+  private double count(String result, String source) {
+    return meterRegistry.get("qeats.search.cache").tag("result", result).tag("source", source)
+        .counter().count();
+  }
+
+  private static List<String> idsOf(List<Restaurant> restaurants) {
+    return restaurants.stream().map(Restaurant::getRestaurantId).collect(Collectors.toList());
+  }
+
+  private static String time(int minuteOfDay) {
+    return String.format("%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+  }
+}
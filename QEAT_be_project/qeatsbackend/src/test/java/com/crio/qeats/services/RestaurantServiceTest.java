@@ -8,7 +8,11 @@
 package com.crio.qeats.services;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -19,6 +23,7 @@ import com.crio.qeats.exchanges.GetRestaurantsRequest;
 import com.crio.qeats.exchanges.GetRestaurantsResponse;
 import com.crio.qeats.repositoryservices.RestaurantRepositoryService;
 import com.crio.qeats.utils.FixtureHelpers;
+import com.crio.qeats.utils.NearestRestaurants;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
@@ -94,6 +99,39 @@ class RestaurantServiceTest {
 
 
 
+  @Test
+  void paginatedRequestReturnsClosestRestaurantsFirst() throws IOException {
+    List<Restaurant> restaurants = loadRestaurantsDuringPeakHours();
+    doAnswer(invocation -> {
+      NearestRestaurants nearestRestaurants = invocation.getArgument(4);
+      nearestRestaurants.offerAll(20.0, 30.0, restaurants);
+      return null;
+    }).when(restaurantRepositoryServiceMock).findNearestRestaurantsCloseBy(any(Double.class),
+        any(Double.class), any(LocalTime.class), any(Double.class),
+        any(NearestRestaurants.class));
+
+    GetRestaurantsRequest getRestaurantsRequest = new GetRestaurantsRequest(20.0, 30.0);
+    getRestaurantsRequest.setLimit(1);
+    GetRestaurantsResponse firstPage = restaurantService
+        .findAllRestaurantsCloseBy(getRestaurantsRequest, LocalTime.of(19, 0));
+
+    assertEquals(1, firstPage.getRestaurants().size());
+    assertEquals("12", firstPage.getRestaurants().get(0).getRestaurantId());
+    assertNotNull(firstPage.getRestaurants().get(0).getDistance());
+    assertNotNull(firstPage.getNextCursor());
+
+    getRestaurantsRequest.setCursor(firstPage.getNextCursor());
+    GetRestaurantsResponse secondPage = restaurantService
+        .findAllRestaurantsCloseBy(getRestaurantsRequest, LocalTime.of(19, 0));
+
+    assertEquals(1, secondPage.getRestaurants().size());
+    assertEquals("11", secondPage.getRestaurants().get(0).getRestaurantId());
+    assertNull(secondPage.getNextCursor());
+    verify(restaurantRepositoryServiceMock, never())
+        .findAllRestaurantsCloseBy(any(Double.class), any(Double.class), any(LocalTime.class),
+            any(Double.class));
+  }
+
   @Test
   void normalHourFindRestaurantsSearchQuery() throws IOException {
     when(restaurantRepositoryServiceMock.findRestaurantsByName(any(Double.class),
@@ -174,6 +212,34 @@ class RestaurantServiceTest {
     assertEquals(servingRadiusInKms.getValue().toString(), "3.0");
   }
 
+  @Test
+  void rankedSearchReplacesTheSeparateSearches() throws IOException {
+    List<Restaurant> ranked = loadRestaurantsSearchedByAttributes();
+    when(restaurantRepositoryServiceMock.isRankedSearchAvailable()).thenReturn(true);
+    when(restaurantRepositoryServiceMock.findRankedRestaurants(any(Double.class),
+        any(Double.class), any(String.class), any(LocalTime.class), any(Double.class)))
+        .thenReturn(ranked);
+
+    GetRestaurantsRequest getRestaurantsRequest = new GetRestaurantsRequest(20.0, 30.0);
+    getRestaurantsRequest.setSearchFor("Test");
+
+    GetRestaurantsResponse allRestaurantsSearchResults = restaurantService
+        .findRestaurantsBySearchQuery(getRestaurantsRequest, LocalTime.of(20, 0));
+
+    assertEquals(ranked, allRestaurantsSearchResults.getRestaurants());
+    ArgumentCaptor<Double> servingRadiusInKms = ArgumentCaptor.forClass(Double.class);
+    verify(restaurantRepositoryServiceMock, times(1))
+        .findRankedRestaurants(any(Double.class), any(Double.class), any(String.class),
+            any(LocalTime.class), servingRadiusInKms.capture());
+    assertEquals("3.0", servingRadiusInKms.getValue().toString());
+    verify(restaurantRepositoryServiceMock, never())
+        .findRestaurantsByName(any(Double.class), any(Double.class), any(String.class),
+            any(LocalTime.class), any(Double.class));
+    verify(restaurantRepositoryServiceMock, never())
+        .findRestaurantsByItemAttributes(any(Double.class), any(Double.class), any(String.class),
+            any(LocalTime.class), any(Double.class));
+  }
+
   @Test
   void findRestaurantsSearchQueryIsEmpty() {
     GetRestaurantsRequest getRestaurantsRequest = new GetRestaurantsRequest(20.0, 30.0);
@@ -0,0 +1,119 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import com.crio.qeats.dto.Restaurant;
+import com.crio.qeats.exchanges.GetRestaurantsResponse;
+import com.crio.qeats.repositoryservices.RestaurantCell;
+import com.crio.qeats.repositoryservices.RestaurantsChangedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class RestaurantsResponseCacheTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private RestaurantsResponseCache restaurantsResponseCache;
+  private RestaurantCell cell;
+
+  @BeforeEach
+  void setup() {
+    restaurantsResponseCache = new RestaurantsResponseCache();
+    ReflectionTestUtils.setField(restaurantsResponseCache, "objectMapper", objectMapper);
+    ReflectionTestUtils.setField(restaurantsResponseCache, "meterRegistry",
+        new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(restaurantsResponseCache, "maximumSize", 100L);
+    ReflectionTestUtils.setField(restaurantsResponseCache, "ttlInSeconds", 60L);
+    restaurantsResponseCache.initCache();
+
+    Random random = new Random(42);
+    List<Restaurant> restaurants = new ArrayList<>();
+    int[] opensAt = new int[100];
+    int[] closesAt = new int[100];
+    for (int i = 0; i < 100; i++) {
+      opensAt[i] = random.nextInt(24 * 4) * 15;
+      closesAt[i] = random.nextInt(24 * 4) * 15;
+      restaurants.add(new Restaurant(null, String.valueOf(i), i % 10 == 0 ? "Café" : "A2B",
+          "Hsr Layout", "www.google.com", 12.0 + random.nextDouble() / 10,
+          77.0 + random.nextDouble() / 10, time(opensAt[i]), time(closesAt[i]),
+          List.of("South Indian"), null));
+    }
+    cell = new RestaurantCell(10.0, restaurants, opensAt, closesAt);
+  }
+
+  @Test
+  void matchesResponsesBuiltFromRestaurants() throws Exception {
+    Random random = new Random(7);
+    for (int i = 0; i < 500; i++) {
+      double latitude = 12.0 + random.nextDouble() / 10;
+      double longitude = 77.0 + random.nextDouble() / 10;
+      double servingRadiusInKms = random.nextBoolean() ? 3.0 : 5.0;
+      LocalTime currentTime = random.nextBoolean()
+          ? LocalTime.ofSecondOfDay(random.nextInt(24 * 4) * 15 * 60)
+          : LocalTime.ofSecondOfDay(random.nextInt(24 * 60 * 60));
+
+      List<Restaurant> restaurants = cell.findOpenRestaurantsCloseBy(latitude, longitude,
+          currentTime, servingRadiusInKms);
+      restaurants.forEach(restaurant ->
+          restaurant.setName(GetRestaurantsResponse.sanitizeName(restaurant.getName())));
+      String expected = objectMapper.writeValueAsString(new GetRestaurantsResponse(restaurants));
+
+      assertEquals(expected, new String(restaurantsResponseCache.getResponse(cell, latitude,
+          longitude, currentTime, servingRadiusInKms), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  void sameOpenWindowMeansSameOpenRestaurants() {
+    Random random = new Random(7);
+    for (int i = 0; i < 2000; i++) {
+      LocalTime first = LocalTime.ofSecondOfDay(random.nextInt(24 * 60 * 60));
+      LocalTime second = random.nextBoolean()
+          ? LocalTime.ofSecondOfDay(random.nextInt(24 * 4) * 15 * 60)
+          : first.plusMinutes(random.nextInt(30));
+
+      if (cell.openWindowAt(first) == cell.openWindowAt(second)) {
+        assertEquals(openRestaurants(first), openRestaurants(second));
+      }
+    }
+  }
+
+  @Test
+  void rebuildsResponsesOfReloadedCells() {
+    LocalTime currentTime = LocalTime.of(19, 0);
+    String before = new String(restaurantsResponseCache.getResponse(cell, 12.05, 77.05,
+        currentTime, 5.0), StandardCharsets.UTF_8);
+
+    RestaurantCell reloaded = new RestaurantCell(cell.getRadiusInKms(),
+        cell.getRestaurants().subList(0, 1), cell.getOpensAt(), cell.getClosesAt());
+    restaurantsResponseCache.onRestaurantsChanged(new RestaurantsChangedEvent(this));
+
+    assertNotEquals(before, new String(restaurantsResponseCache.getResponse(reloaded, 12.05,
+        77.05, currentTime, 5.0), StandardCharsets.UTF_8));
+  }
+
+  private List<String> openRestaurants(LocalTime currentTime) {
+    return cell.findOpenRestaurantsCloseBy(12.05, 77.05, currentTime, 50.0).stream()
+        .map(Restaurant::getRestaurantId)
+        .collect(Collectors.toList());
+  }
+
+  private String time(int minuteOfDay) {
+    return LocalTime.of(minuteOfDay / 60 % 24, minuteOfDay % 60).toString();
+  }
+}
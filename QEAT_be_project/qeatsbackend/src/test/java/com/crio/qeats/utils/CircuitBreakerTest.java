@@ -0,0 +1,95 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+  private final AtomicLong now = new AtomicLong(1000);
+  private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, 100, now::get);
+
+  @Test
+  void opensAfterFailuresInARow() {
+    assertFalse(circuitBreaker.recordFailure());
+    assertFalse(circuitBreaker.recordFailure());
+    circuitBreaker.recordSuccess();
+    assertFalse(circuitBreaker.recordFailure());
+    assertFalse(circuitBreaker.recordFailure());
+    assertTrue(circuitBreaker.allowsRequest());
+
+    assertTrue(circuitBreaker.recordFailure());
+
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.allowsRequest());
+  }
+
+  @Test
+  void letsOneTrialThroughOnceTheOpenDurationPassed() {
+    openCircuitBreaker();
+    now.addAndGet(99);
+    assertFalse(circuitBreaker.allowsRequest());
+    assertFalse(circuitBreaker.tryAcquirePermission());
+
+    now.addAndGet(1);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    assertTrue(circuitBreaker.tryAcquirePermission());
+    assertFalse(circuitBreaker.tryAcquirePermission());
+    assertFalse(circuitBreaker.allowsRequest());
+
+    // The trial failed.
+    assertTrue(circuitBreaker.recordFailure());
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+    now.addAndGet(100);
+    assertTrue(circuitBreaker.tryAcquirePermission());
+    circuitBreaker.recordSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertTrue(circuitBreaker.tryAcquirePermission());
+    assertTrue(circuitBreaker.tryAcquirePermission());
+  }
+
+  @Test
+  void checkingDoesNotClaimTheTrial() {
+    openCircuitBreaker();
+    now.addAndGet(100);
+
+    assertTrue(circuitBreaker.allowsRequest());
+    assertTrue(circuitBreaker.allowsRequest());
+    assertTrue(circuitBreaker.tryAcquirePermission());
+  }
+
+  @Test
+  void letsAnotherTrialThroughIfTheFirstNeverReported() {
+    openCircuitBreaker();
+    now.addAndGet(100);
+    assertTrue(circuitBreaker.tryAcquirePermission());
+
+    now.addAndGet(99);
+    assertFalse(circuitBreaker.tryAcquirePermission());
+    now.addAndGet(1);
+    assertTrue(circuitBreaker.tryAcquirePermission());
+  }
+
+  @Test
+  void rejectsInvalidSettings() {
+    assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(0, 100));
+    assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(1, -1));
+  }
+
+  private void openCircuitBreaker() {
+    for (int i = 0; i < 3; i++) {
+      circuitBreaker.recordFailure();
+    }
+  }
+}
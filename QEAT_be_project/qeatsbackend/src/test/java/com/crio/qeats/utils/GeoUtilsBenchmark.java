@@ -0,0 +1,124 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.utils;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares radius filtering of a city sized catalog with the previous per candidate distance
+ * computation, {@link GeoUtils#findDistanceInKm} and the batch {@link GeoUtils.RadiusFilter}.
+ * Run with {@code ./gradlew :qeatsbackend:jmh} or the main method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoUtilsBenchmark {
+
+  @Param({"10000", "100000"})
+  private int restaurants;
+
+  @Param({"3.0", "5.0"})
+  private double radiusInKms;
+
+  private final double latitude = 12.9716;
+  private final double longitude = 77.5946;
+  private double[] latitudes;
+  private double[] longitudes;
+  private int[] candidates;
+
+  @Setup
+  public void setup() {
+    // Restaurants spread over a square of about 110 km around the query.
+    Random random = new Random(42);
+    latitudes = new double[restaurants];
+    longitudes = new double[restaurants];
+    candidates = new int[restaurants];
+    for (int i = 0; i < restaurants; i++) {
+      latitudes[i] = latitude - 0.5 + random.nextDouble();
+      longitudes[i] = longitude - 0.5 + random.nextDouble();
+    }
+  }
+
+  @Benchmark
+  public int legacyDistance() {
+    int matches = 0;
+    for (int i = 0; i < restaurants; i++) {
+      if (legacyDistanceInKm(latitude, latitudes[i], longitude, longitudes[i], 0, 0)
+          < radiusInKms) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  @Benchmark
+  public int findDistanceInKm() {
+    int matches = 0;
+    for (int i = 0; i < restaurants; i++) {
+      if (GeoUtils.findDistanceInKm(latitude, longitude, latitudes[i], longitudes[i])
+          < radiusInKms) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  @Benchmark
+  public int radiusFilter() {
+    for (int i = 0; i < restaurants; i++) {
+      candidates[i] = i;
+    }
+    return new GeoUtils.RadiusFilter(latitude, longitude, radiusInKms)
+        .retainWithinRadius(latitudes, longitudes, candidates, restaurants);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(GeoUtilsBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+
+  // GeoUtils.distance as it was before the batch API, kept here as the baseline.
+  private static double legacyDistanceInKm(
+      double lat1, double lat2, double lon1, double lon2, double el1, double el2) {
+    final int R = 6371;
+
+    double latDistance = Math.toRadians(lat2 - lat1);
+    double lonDistance = Math.toRadians(lon2 - lon1);
+    double a =
+        Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+            + Math.cos(Math.toRadians(lat1))
+            * Math.cos(Math.toRadians(lat2))
+            * Math.sin(lonDistance / 2)
+            * Math.sin(lonDistance / 2);
+    double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    double distance = R * c;
+
+    double height = el1 - el2;
+
+    distance = Math.pow(distance, 2) + Math.pow(height, 2);
+
+    return Math.sqrt(distance);
+  }
+}
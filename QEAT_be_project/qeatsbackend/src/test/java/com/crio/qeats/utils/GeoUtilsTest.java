@@ -9,8 +9,16 @@
 
 package com.crio.qeats.utils;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import ch.hsr.geohash.GeoHash;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 
 class GeoUtilsTest {
@@ -29,4 +37,76 @@ class GeoUtilsTest {
     assertEquals(3.04, distanceBetweenA2bHsrAndA2bBtm, 0.1);
   }
 
+  @Test
+  public void findWithinRadiusMatchesFindDistanceInKm() {
+    Random random = new Random(42);
+    double[][] queries = {{12.97, 77.59}, {-16.5, 179.99}, {89.99, 10.0}, {-89.5, -120.0}};
+    for (double[] query : queries) {
+      double[] latitudes = new double[2000];
+      double[] longitudes = new double[2000];
+      for (int i = 0; i < latitudes.length; i++) {
+        latitudes[i] = Math.max(-90, Math.min(90, query[0] - 1 + 2 * random.nextDouble()));
+        longitudes[i] = query[1] - 2 + 4 * random.nextDouble();
+        if (longitudes[i] > 180) {
+          longitudes[i] -= 360;
+        }
+      }
+
+      for (double radiusInKms : new double[] {0, 1, 5, 50, 500, 25000}) {
+        int[] expected = IntStream.range(0, latitudes.length)
+            .filter(i -> GeoUtils.findDistanceInKm(query[0], query[1], latitudes[i],
+                longitudes[i]) < radiusInKms)
+            .toArray();
+
+        assertArrayEquals(expected, GeoUtils.findWithinRadius(query[0], query[1], radiusInKms,
+            latitudes, longitudes));
+      }
+    }
+  }
+
+  @Test
+  public void radiusFilterReportsExactDistance() {
+    GeoUtils.RadiusFilter radiusFilter = new GeoUtils.RadiusFilter(12.9168585, 77.6072902, 5);
+
+    assertEquals(GeoUtils.findDistanceInKm(12.9168585, 77.6072902, 12.9138172, 77.63517),
+        radiusFilter.distanceInKm(12.9138172, 77.63517));
+  }
+
+  @Test
+  public void coveringGeoHashesContainEveryLocationWithinRadius() {
+    Random random = new Random(42);
+    double[][] queries = {{12.97, 77.59}, {-16.5, 179.99}, {20.0, 30.0}};
+    for (double[] query : queries) {
+      for (double radiusInKms : new double[] {0.5, 3, 5.1}) {
+        List<String> geoHashes = GeoUtils.findCoveringGeoHashes(query[0], query[1], radiusInKms,
+            6);
+        Set<String> covering = new HashSet<>(geoHashes);
+        assertEquals(geoHashes.size(), covering.size());
+
+        for (int i = 0; i < 2000; i++) {
+          double latitude = query[0] - 0.1 + 0.2 * random.nextDouble();
+          double longitude = query[1] - 0.1 + 0.2 * random.nextDouble();
+          if (longitude > 180) {
+            longitude -= 360;
+          }
+          if (GeoUtils.findDistanceInKm(query[0], query[1], latitude, longitude)
+              < radiusInKms) {
+            assertTrue(covering.contains(
+                GeoHash.geoHashStringWithCharacterPrecision(latitude, longitude, 6)));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void coveringGeoHashesSkipCellsOutsideTheCircle() {
+    // Precision 6 cells are about 1.2 by 0.6 km here, so a 5 km circle spans at least a 9 by 17
+    // grid, whose corners lie outside of it.
+    List<String> geoHashes = GeoUtils.findCoveringGeoHashes(20.0, 30.0, 5, 6);
+
+    assertTrue(geoHashes.contains(GeoHash.geoHashStringWithCharacterPrecision(20.0, 30.0, 6)));
+    assertTrue(geoHashes.size() < 9 * 17, "cells: " + geoHashes.size());
+  }
+
 }
@@ -0,0 +1,105 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.crio.qeats.dto.Restaurant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class NearestRestaurantsTest {
+
+  @Test
+  void keepsTheClosestRestaurantsInOrder() {
+    List<Restaurant> restaurants = randomRestaurants(1000);
+
+    NearestRestaurants nearestRestaurants = new NearestRestaurants(10, null);
+    nearestRestaurants.offerAll(12.0, 77.0, restaurants);
+
+    List<Restaurant> expected = restaurants.stream()
+        .sorted(Comparator.comparingDouble(Restaurant::getDistance)
+            .thenComparing(Restaurant::getRestaurantId))
+        .limit(10)
+        .collect(Collectors.toList());
+    assertEquals(ids(expected), ids(nearestRestaurants.getRestaurants()));
+  }
+
+  @Test
+  void pagesThroughEveryRestaurantOnce() {
+    List<Restaurant> restaurants = randomRestaurants(95);
+    // Ties on distance are broken by restaurant id.
+    restaurants.add(restaurant("tie-b", 12.01, 77.01));
+    restaurants.add(restaurant("tie-a", 12.01, 77.01));
+
+    List<String> paged = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      NearestRestaurants nearestRestaurants = new NearestRestaurants(10, cursor);
+      nearestRestaurants.offerAll(12.0, 77.0, restaurants);
+      paged.addAll(ids(nearestRestaurants.getRestaurants()));
+      cursor = nearestRestaurants.getNextCursor();
+      pages++;
+    } while (cursor != null);
+
+    assertEquals(10, pages);
+    List<String> expected = ids(restaurants.stream()
+        .sorted(Comparator.comparingDouble(Restaurant::getDistance)
+            .thenComparing(Restaurant::getRestaurantId))
+        .collect(Collectors.toList()));
+    assertEquals(expected, paged);
+  }
+
+  @Test
+  void noCursorWhenEverythingFits() {
+    NearestRestaurants nearestRestaurants = new NearestRestaurants(10, null);
+    nearestRestaurants.offerAll(12.0, 77.0, randomRestaurants(10));
+
+    assertEquals(10, nearestRestaurants.getRestaurants().size());
+    assertNull(nearestRestaurants.getNextCursor());
+  }
+
+  @Test
+  void rejectsInvalidCursors() {
+    assertFalse(NearestRestaurants.isValidCursor("not a cursor"));
+    assertFalse(NearestRestaurants.isValidCursor("bm90LWEtY3Vyc29y"));
+    assertTrue(NearestRestaurants.isValidCursor("MS41OjEx"));
+    assertThrows(IllegalArgumentException.class, () -> new NearestRestaurants(0, null));
+  }
+
+  private List<Restaurant> randomRestaurants(int count) {
+    Random random = new Random(42);
+    List<Restaurant> restaurants = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      restaurants.add(restaurant(String.valueOf(i), 12.0 + random.nextDouble() / 10,
+          77.0 + random.nextDouble() / 10));
+    }
+    return restaurants;
+  }
+
+  private Restaurant restaurant(String restaurantId, double latitude, double longitude) {
+    Restaurant restaurant = new Restaurant();
+    restaurant.setRestaurantId(restaurantId);
+    restaurant.setLatitude(latitude);
+    restaurant.setLongitude(longitude);
+    restaurant.setDistance(GeoUtils.findDistanceInKm(12.0, 77.0, latitude, longitude));
+    return restaurant;
+  }
+
+  private List<String> ids(List<Restaurant> restaurants) {
+    return restaurants.stream().map(Restaurant::getRestaurantId).collect(Collectors.toList());
+  }
+}
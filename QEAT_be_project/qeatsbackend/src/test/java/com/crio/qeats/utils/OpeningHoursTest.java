@@ -0,0 +1,100 @@
+/*
+ *
+ *  * Copyright (c) Crio.Do 2019. All rights reserved
+ *
+ */
+
+package com.crio.qeats.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import org.junit.jupiter.api.Test;
+
+class OpeningHoursTest {
+
+  @Test
+  void parsesMinuteOfDay() {
+    OpeningHours openingHours = OpeningHours.parse("18:00", "23:30");
+
+    assertEquals(18 * 60, openingHours.getOpensAt());
+    assertEquals(23 * 60 + 30, openingHours.getClosesAt());
+    assertFalse(openingHours.isOvernight());
+  }
+
+  @Test
+  void openStrictlyBetweenOpeningAndClosing() {
+    OpeningHours openingHours = OpeningHours.parse("18:00", "23:00");
+
+    assertFalse(openingHours.isOpenAt(LocalTime.of(17, 59, 59)));
+    assertFalse(openingHours.isOpenAt(LocalTime.of(18, 0)));
+    assertTrue(openingHours.isOpenAt(LocalTime.of(18, 0, 0, 1)));
+    assertTrue(openingHours.isOpenAt(LocalTime.of(22, 59, 59)));
+    assertFalse(openingHours.isOpenAt(LocalTime.of(23, 0)));
+    assertFalse(openingHours.isOpenAt(LocalTime.of(1, 0)));
+  }
+
+  @Test
+  void openOvernight() {
+    OpeningHours openingHours = OpeningHours.parse("18:00", "02:00");
+
+    assertTrue(openingHours.isOvernight());
+    assertFalse(openingHours.isOpenAt(LocalTime.of(18, 0)));
+    assertTrue(openingHours.isOpenAt(LocalTime.of(23, 30)));
+    assertTrue(openingHours.isOpenAt(LocalTime.MIDNIGHT));
+    assertTrue(openingHours.isOpenAt(LocalTime.of(1, 59, 59)));
+    assertFalse(openingHours.isOpenAt(LocalTime.of(2, 0)));
+    assertFalse(openingHours.isOpenAt(LocalTime.NOON));
+  }
+
+  @Test
+  void neverOpenWhenOpeningEqualsClosing() {
+    OpeningHours openingHours = OpeningHours.parse("10:00", "10:00");
+
+    assertFalse(openingHours.isOpenAt(LocalTime.of(10, 0, 30)));
+    assertFalse(openingHours.isOpenAt(LocalTime.of(22, 0)));
+  }
+
+  @Test
+  void slotChecksAgreeWithIsOpen() {
+    int[][] hours = {{18 * 60, 23 * 60}, {22 * 60, 2 * 60}, {7 * 60 + 10, 9 * 60 + 50},
+        {0, 24 * 60 - 1}, {600, 600}};
+    for (int[] openClose : hours) {
+      for (int from = 0; from < OpeningHours.MINUTES_PER_DAY; from += 15) {
+        boolean throughout = true;
+        boolean during = false;
+        for (int minute = from; minute < from + 15; minute++) {
+          for (boolean onTheMinute : new boolean[] {true, false}) {
+            boolean open = OpeningHours.isOpen(openClose[0], openClose[1], minute, onTheMinute);
+            throughout &= open;
+            during |= open;
+          }
+        }
+
+        assertEquals(throughout,
+            OpeningHours.isOpenThroughout(openClose[0], openClose[1], from, from + 15));
+        assertEquals(during,
+            OpeningHours.isOpenDuring(openClose[0], openClose[1], from, from + 15));
+      }
+    }
+  }
+
+  @Test
+  void reusesParsedOpeningHours() {
+    OpeningHours openingHours = OpeningHours.of("18:00", "02:00");
+
+    assertEquals(OpeningHours.parse("18:00", "02:00"), openingHours);
+    assertSame(openingHours, OpeningHours.of(new String("18:00"), new String("02:00")));
+  }
+
+  @Test
+  void rejectsInvalidTimes() {
+    assertThrows(DateTimeParseException.class, () -> OpeningHours.parse("6pm", "23:00"));
+    assertThrows(DateTimeParseException.class, () -> OpeningHours.of("6pm", "23:00"));
+  }
+}